@@ -0,0 +1,82 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Random;
+
+/* Plays free-for-all arenas of more and more ships on random input, starting
+ * a new round whenever one ends, and reports the time a tick takes against
+ * the 16.7 ms a tick has at TICKS_PER_SECOND.  Build it along with the game
+ * sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   java -cp out spacewar.ArenaBenchmark [ticks]
+ */
+public class ArenaBenchmark
+{
+	private static final int[] COUNTS = {2, 16, 64, 256};
+
+	public static void main(String[] args)
+	{
+		int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+		double budget = 1e6 / GameWorld.TICKS_PER_SECOND;
+
+		System.out.println(String.format("%6s %8s %12s %12s %10s %8s", "ships", "rounds", "us/tick", "worst us", "budget %", "bodies"));
+		for (int n : COUNTS)
+		{
+			GameWorld world = new GameWorld(GameMap.CLASSIC, 42, n, n);
+			Random random = new Random(n);
+			int[] input = new int[n];
+			int rounds = 0;
+			long bodies = 0, worst = 0, total = 0;
+			// the first pass warms the JIT up, the second is timed
+			for (int pass = 0; pass < 2; pass++)
+			{
+				rounds = 0;
+				bodies = 0;
+				worst = 0;
+				total = 0;
+				for (int t = 0; t < ticks; t++)
+				{
+					if (world.getGameState() != GameWorld.GameState.RUNNING)
+					{
+						world.resumeGame();
+						rounds++;
+					}
+					// no hyperspace, or half the field is forever jumping about
+					for (int j = 0; j < n; j++)
+						input[j] = random.nextInt(1 << 9) & random.nextInt(1 << 9) & ~GameWorld.Action.HYPERSPACE.mask();
+					long start = System.nanoTime();
+					world.tick(input);
+					long took = System.nanoTime() - start;
+					total += took;
+					worst = Math.max(worst, took);
+					bodies += n + world.getProjectiles().size();
+				}
+			}
+			double perTick = total / 1e3 / ticks;
+			System.out.println(String.format("%6d %8d %12.1f %12.1f %10.1f %8d",
+				n, rounds, perTick, worst / 1e3, 100 * perTick / budget, bodies / ticks));
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Random;
+
+/* Checks CollisionResponse against the polar-coordinate bounce math it
+ * replaced and then times both.  For a few thousand random ship-ship and
+ * ship-planet contacts, the velocities from both must agree to within
+ * TOLERANCE, or this throws before timing anything.  Build it along with the
+ * game sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   java -cp out spacewar.CollisionResponseBenchmark
+ */
+public class CollisionResponseBenchmark
+{
+	private static final int CONTACTS = 4096;
+	private static final double TOLERANCE = 1e-4;
+	private static final long RUN_NANOS = 500000000L;
+
+	public static void main(String[] args)
+	{
+		Random random = new Random(42);
+		float[][] contacts = new float[CONTACTS][];
+		for (int i = 0; i < CONTACTS; i++)
+		{
+			// a at the origin, b somewhere it overlaps, both at or under top speed
+			double angle = random.nextDouble() * 2 * Math.PI, distance = 1 + random.nextDouble() * 19;
+			contacts[i] = new float[] {0, 0, (float)(Math.cos(angle) * distance), (float)(Math.sin(angle) * distance),
+				(float)(random.nextDouble() * 8 - 4), (float)(random.nextDouble() * 8 - 4),
+				(float)(random.nextDouble() * 8 - 4), (float)(random.nextDouble() * 8 - 4)};
+		}
+		IntelligentSprite a = ship(), b = ship(), olda = ship(), oldb = ship();
+		StaticSprite planet = new StaticSprite();
+		planet.setWidth(100);
+		planet.setHeight(100);
+
+		// golden test: the new response must give the velocities the old one did
+		for (float[] c : contacts)
+		{
+			set(a, b, c);
+			set(olda, oldb, c);
+			CollisionResponse.bounce(a, b);
+			polar(olda, oldb);
+			check("ship-ship", a, olda);
+			check("ship-ship", b, oldb);
+
+			set(a, b, c);
+			set(olda, oldb, c);
+			planet.setX(b.getX());
+			planet.setY(b.getY());
+			CollisionResponse.bounce(a, planet);
+			polar(olda, planet);
+			check("ship-planet", a, olda);
+		}
+		System.out.println(CONTACTS + " ship-ship and ship-planet contacts match to within " + TOLERANCE);
+
+		System.out.println(String.format("%12s %14s %14s", "contact", "polar ns", "vector ns"));
+		for (int pass = 0; pass < 2; pass++) // the first pass is warm-up
+		{
+			double polarShips = time(contacts, a, b, planet, false, false);
+			double vectorShips = time(contacts, a, b, planet, true, false);
+			double polarPlanet = time(contacts, a, b, planet, false, true);
+			double vectorPlanet = time(contacts, a, b, planet, true, true);
+			if (pass == 1)
+			{
+				System.out.println(String.format("%12s %14.1f %14.1f", "ship-ship", polarShips, vectorShips));
+				System.out.println(String.format("%12s %14.1f %14.1f", "ship-planet", polarPlanet, vectorPlanet));
+			}
+		}
+	}
+
+	// average ns per contact, including resetting the two ships
+	private static double time(float[][] contacts, IntelligentSprite a, IntelligentSprite b, StaticSprite planet, boolean vector, boolean withPlanet)
+	{
+		long contactsRun = 0, start = System.nanoTime(), elapsed;
+		do
+		{
+			for (float[] c : contacts)
+			{
+				set(a, b, c);
+				if (withPlanet)
+				{
+					planet.setX(c[2]);
+					planet.setY(c[3]);
+					if (vector)
+						CollisionResponse.bounce(a, planet);
+					else
+						polar(a, planet);
+				}
+				else if (vector)
+					CollisionResponse.bounce(a, b);
+				else
+					polar(a, b);
+			}
+			contactsRun += contacts.length;
+		} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+		return (double)elapsed / contactsRun;
+	}
+
+	private static IntelligentSprite ship()
+	{
+		IntelligentSprite i = new IntelligentSprite();
+		i.setWidth(20);
+		i.setHeight(20);
+		i.setTopSpeed(GameWorld.SHIP_TOP_SPEED);
+		return i;
+	}
+
+	private static void set(IntelligentSprite a, IntelligentSprite b, float[] c)
+	{
+		a.setX(c[0]);
+		a.setY(c[1]);
+		b.setX(c[2]);
+		b.setY(c[3]);
+		a.setHVelocity(c[4]);
+		a.setVVelocity(c[5]);
+		b.setHVelocity(c[6]);
+		b.setVVelocity(c[7]);
+	}
+
+	private static void check(String contact, IntelligentSprite actual, IntelligentSprite expected)
+	{
+		if (Math.abs(actual.getHVelocity() - expected.getHVelocity()) > TOLERANCE || Math.abs(actual.getVVelocity() - expected.getVVelocity()) > TOLERANCE)
+			throw new IllegalStateException(contact + " velocity " + actual.getHVelocity() + ", " + actual.getVVelocity()
+				+ " but the polar math gives " + expected.getHVelocity() + ", " + expected.getVVelocity());
+	}
+
+	// the ship with ship bounce GameWorld used before CollisionResponse
+	private static void polar(IntelligentSprite a, IntelligentSprite b)
+	{
+		double a_dir_before = Math.atan2(a.getVVelocity(),a.getHVelocity());
+		double b_dir_before = Math.atan2(b.getVVelocity(),b.getHVelocity());
+		double a_vel_before = Math.pow(a.getHVelocity() * a.getHVelocity() + a.getVVelocity() * a.getVVelocity(), 0.5);
+		double b_vel_before = Math.pow(b.getHVelocity() * b.getHVelocity() + b.getVVelocity() * b.getVVelocity(), 0.5);
+		double normal = Math.atan2(b.getY() - a.getY(), b.getX() - a.getX());
+		double a_dir_normal_before = a_dir_before - normal;
+		double b_dir_normal_before = b_dir_before - normal;
+		double a_vel_nor_before = a_vel_before * Math.cos(a_dir_normal_before);
+		double a_vel_tan_before = a_vel_before * Math.sin(a_dir_normal_before);
+		double b_vel_nor_before = b_vel_before * Math.cos(b_dir_normal_before);
+		double b_vel_tan_before = b_vel_before * Math.sin(b_dir_normal_before);
+		double a_vel_nor_after = b_vel_nor_before;
+		double a_vel_tan_after = a_vel_tan_before;
+		double b_vel_nor_after = a_vel_nor_before;
+		double b_vel_tan_after = b_vel_tan_before;
+		double a_vel_after = Math.pow(a_vel_nor_after * a_vel_nor_after + a_vel_tan_after * a_vel_tan_after, 0.5);
+		double b_vel_after = Math.pow(b_vel_nor_after * b_vel_nor_after + b_vel_tan_after * b_vel_tan_after, 0.5);
+		if (a_vel_after > a.getTopSpeed()) a_vel_after = a.getTopSpeed();
+		if (b_vel_after > b.getTopSpeed()) b_vel_after = b.getTopSpeed();
+		double a_dir_after = Math.atan2(a_vel_tan_after, a_vel_nor_after) + normal;
+		double b_dir_after = Math.atan2(b_vel_tan_after, b_vel_nor_after) + normal;
+		a.setHVelocity((float)(a_vel_after * Math.cos(a_dir_after)));
+		a.setVVelocity((float)(a_vel_after * Math.sin(a_dir_after)));
+		b.setHVelocity((float)(b_vel_after * Math.cos(b_dir_after)));
+		b.setVVelocity((float)(b_vel_after * Math.sin(b_dir_after)));
+	}
+
+	// the ship with planet bounce GameWorld used before CollisionResponse
+	private static void polar(IntelligentSprite a, StaticSprite b)
+	{
+		double a_dir_before = Math.atan2(a.getVVelocity(),a.getHVelocity());
+		double a_vel_before = Math.pow(a.getHVelocity() * a.getHVelocity() + a.getVVelocity() * a.getVVelocity(), 0.5);
+		double normal = Math.atan2(b.getY() - a.getY(), b.getX() - a.getX());
+		double a_dir_normal_before = a_dir_before - normal;
+		double a_vel_nor_after = -a_vel_before * Math.cos(a_dir_normal_before);
+		double a_vel_tan_after = a_vel_before * Math.sin(a_dir_normal_before);
+		double a_vel_after = Math.pow(a_vel_nor_after * a_vel_nor_after + a_vel_tan_after * a_vel_tan_after, 0.5);
+		double a_dir_after = Math.atan2(a_vel_tan_after, a_vel_nor_after) + normal;
+		a.setHVelocity((float)(a_vel_after * Math.cos(a_dir_after)));
+		a.setVVelocity((float)(a_vel_after * Math.sin(a_dir_after)));
+	}
+}
@@ -0,0 +1,182 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Random;
+
+/* Times gravity on a tick's worth of ships and torpedoes from 10, 100 and 1000
+ * planets, by the Barnes-Hut tree (build included) and by summing over every
+ * planet, and reports the tree's worst error against the exact sum.  Where
+ * the two cross sets BarnesHut.DIRECT_BODIES.  The
+ * opening angle can be given as the first argument.  Then it does the same
+ * for a GravityField baked from maps of 1 to 10 static planets at a few
+ * spacings, against summing over their planets, with the field's worst error
+ * in pixels a tick squared over a million points; GameMap.GRAVITY_SPACING
+ * and GameMap.BAKE_PLANETS come from there.  Build it along with the game sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   java -cp out spacewar.GravityBenchmark [theta]
+ */
+public class GravityBenchmark
+{
+	private static final int[] ATTRACTORS = {10, 100, 1000};
+	private static final int[] STATIC_PLANETS = {1, 2, 3, 10};
+	private static final int[] SPACINGS = {2, 4, 8};
+	private static final int ERROR_POINTS = 1000000;
+	private static final int POINTS = 1000;
+	private static final long RUN_NANOS = 500000000L;
+
+	public static void main(String[] args)
+	{
+		BarnesHut gravity = new BarnesHut();
+		if (args.length > 0)
+			gravity.setTheta(Double.parseDouble(args[0]));
+		Random random = new Random(42);
+		double[] out = new double[2];
+
+		float[] px = new float[POINTS], py = new float[POINTS];
+		for (int i = 0; i < POINTS; i++)
+		{
+			px[i] = random.nextFloat() * GameWorld.PWIDTH;
+			py[i] = random.nextFloat() * GameWorld.PHEIGHT;
+		}
+
+		System.out.println("theta " + gravity.getTheta() + ", " + POINTS + " points pulled per tick");
+		System.out.println(String.format("%10s %14s %14s %10s", "planets", "direct us/tick", "tree us/tick", "max error"));
+		for (int n : ATTRACTORS)
+		{
+			float[] x = new float[n], y = new float[n], m = new float[n];
+			for (int i = 0; i < n; i++)
+			{
+				x[i] = random.nextFloat() * GameWorld.PWIDTH;
+				y[i] = random.nextFloat() * GameWorld.PHEIGHT;
+				m[i] = 6.25f / n * (0.5f + random.nextFloat());
+			}
+
+			// the tree against the exact sum, relative to the size of the pull
+			gravity.build(x, y, m, n);
+			double maxError = 0;
+			for (int i = 0; i < POINTS; i++)
+			{
+				out[0] = out[1] = 0;
+				gravity.accelerateDirect(px[i], py[i], out);
+				double ex = out[0], ey = out[1];
+				out[0] = out[1] = 0;
+				gravity.accelerateTree(px[i], py[i], out);
+				maxError = Math.max(maxError, Math.hypot(out[0] - ex, out[1] - ey) / Math.hypot(ex, ey));
+			}
+
+			double direct = 0, tree = 0;
+			for (int pass = 0; pass < 2; pass++) // the first pass is warm-up
+			{
+				long ticks = 0, start = System.nanoTime(), elapsed;
+				do
+				{
+					for (int i = 0; i < POINTS; i++)
+						gravity.accelerateDirect(px[i], py[i], out);
+					ticks++;
+				} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+				direct = elapsed / 1e3 / ticks;
+
+				ticks = 0;
+				start = System.nanoTime();
+				do
+				{
+					gravity.build(x, y, m, n);
+					for (int i = 0; i < POINTS; i++)
+						gravity.accelerateTree(px[i], py[i], out);
+					ticks++;
+				} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+				tree = elapsed / 1e3 / ticks;
+			}
+			System.out.println(String.format("%10d %14.1f %14.1f %10.4f", n, direct, tree, maxError));
+		}
+
+		System.out.println();
+		System.out.println(String.format("%10s %8s %14s %14s %14s", "planets", "spacing", "direct us/tick", "field us/tick", "max error"));
+		for (int n : STATIC_PLANETS)
+		{
+			GameMap map = n == 1 ? GameMap.CLASSIC : new GameMap(n + " planets");
+			for (int i = 0; n > 1 && i < n; i++)
+			{
+				int size = 30 + random.nextInt(70);
+				map.addPlanet(size + random.nextFloat() * (GameWorld.PWIDTH - 2 * size), size + random.nextFloat() * (GameWorld.PHEIGHT - 2 * size),
+					size, 6.25f / n * (0.5f + random.nextFloat()));
+			}
+			for (int spacing : SPACINGS)
+			{
+				GravityField field = new GravityField(map.getPlanets(), GameWorld.PWIDTH, GameWorld.PHEIGHT, spacing);
+
+				// outside the planets themselves, where nothing can be and still be pulled
+				double maxError = 0;
+				for (int k = 0; k < ERROR_POINTS; k++)
+				{
+					double X = random.nextDouble() * GameWorld.PWIDTH, Y = random.nextDouble() * GameWorld.PHEIGHT;
+					if (inside(map, X, Y))
+						continue;
+					out[0] = out[1] = 0;
+					field.accelerateExact(X, Y, out);
+					double ex = out[0], ey = out[1];
+					out[0] = out[1] = 0;
+					field.accelerate(X, Y, out);
+					maxError = Math.max(maxError, Math.hypot(out[0] - ex, out[1] - ey));
+				}
+
+				double direct = 0, sampled = 0;
+				for (int pass = 0; pass < 2; pass++) // the first pass is warm-up
+				{
+					long ticks = 0, start = System.nanoTime(), elapsed;
+					do
+					{
+						for (int i = 0; i < POINTS; i++)
+							field.accelerateExact(px[i], py[i], out);
+						ticks++;
+					} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+					direct = elapsed / 1e3 / ticks;
+
+					ticks = 0;
+					start = System.nanoTime();
+					do
+					{
+						for (int i = 0; i < POINTS; i++)
+							field.accelerate(px[i], py[i], out);
+						ticks++;
+					} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+					sampled = elapsed / 1e3 / ticks;
+				}
+				System.out.println(String.format("%10d %8d %14.1f %14.1f %14.2e", n, spacing, direct, sampled, maxError));
+			}
+		}
+	}
+
+	private static boolean inside(GameMap map, double X, double Y)
+	{
+		for (GameMap.Planet p : map.getPlanets())
+		{
+			double dx = X - p.getX(), dy = Y - p.getY(), r = p.getSize() / 2.0;
+			if (dx * dx + dy * dy < r * r)
+				return true;
+		}
+		return false;
+	}
+}
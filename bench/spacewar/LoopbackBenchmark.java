@@ -0,0 +1,103 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.net.InetSocketAddress;
+import java.util.Random;
+
+/* Plays a match between a GameServer and two GameClients over loopback, with
+ * every packet in both directions going through a LinkConditioner, and
+ * reports what got through: how many snapshots each client saw, how much of
+ * its input the server acknowledged, whether any snapshot failed its hash,
+ * how big the deltas were next to whole GameWorld snapshots, how far behind
+ * the jitter buffer showed the world, and how far the prediction of each
+ * client's own ship had to be corrected.  Build it along with the game sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   java -cp out spacewar.LoopbackBenchmark [loss] [latency ms] [jitter ms] [seconds] [snapshots a second]
+ */
+public class LoopbackBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		double loss = args.length > 0 ? Double.parseDouble(args[0]) : 0.1;
+		long latency = args.length > 1 ? Long.parseLong(args[1]) : 40;
+		long jitter = args.length > 2 ? Long.parseLong(args[2]) : 10;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		int rate = args.length > 4 ? Integer.parseInt(args[4]) : GameServer.DEFAULT_BROADCAST_RATE;
+
+		GameServer server = new GameServer(GameMap.CLASSIC, 42, new InetSocketAddress("127.0.0.1", 0), rate);
+		server.setConditioner(new LinkConditioner(loss, latency, jitter, 1));
+		Thread serverThread = new Thread(server, "server");
+		serverThread.start();
+
+		GameClient[] clients = new GameClient[2];
+		for (int j = 0; j < clients.length; j++)
+		{
+			clients[j] = new GameClient(GameMap.CLASSIC, server.getLocalAddress());
+			clients[j].setConditioner(new LinkConditioner(loss, latency, jitter, 2 + j));
+		}
+
+		// a client's frame loop, 60 times a second
+		Random random = new Random(7);
+		long[] states = new long[clients.length];
+		long period = 1000000000L / GameWorld.TICKS_PER_SECOND;
+		long start = System.nanoTime(), next = start;
+		while (System.nanoTime() - start < seconds * 1000000000L)
+		{
+			for (int j = 0; j < clients.length; j++)
+			{
+				clients[j].sendInput(random.nextInt(8) == 0 ? 1 << random.nextInt(9) : 0);
+				long seen = clients[j].getStateTick();
+				clients[j].poll();
+				if (clients[j].getStateTick() != seen)
+					states[j]++;
+			}
+			next += period;
+			long sleep = next - System.nanoTime();
+			if (sleep > 0)
+				Thread.sleep(sleep / 1000000L, (int)(sleep % 1000000L));
+		}
+		for (GameClient c : clients)
+			c.close();
+		server.stop();
+		serverThread.join();
+
+		System.out.println(String.format("loss %.0f%%, latency %d+%d ms each way, %d snapshots a second, %d s", loss * 100, latency, jitter, rate, seconds));
+		System.out.println(String.format("server: %d ticks, %d deltas averaging %d bytes (a whole snapshot is %d), %d too big to send",
+			server.getWorld().getTicks(), server.getDeltas(), server.getDeltaBytes() / Math.max(1, server.getDeltas()), server.getWorld().snapshotSize(), server.getOversized()));
+		for (int j = 0; j < clients.length; j++)
+		{
+			GameClient c = clients[j];
+			System.out.println(String.format("client %d: seat %d, %d snapshots (last of tick %d), input %d of %d acknowledged, %d unreadable, %d against a lost baseline",
+				j, c.getPlayer(), states[j], c.getStateTick(), c.getAckedSequence(), c.getSequence(), c.getBadStates(), c.getLostBaselines()));
+			System.out.println(String.format("          shown %.1f ticks behind the newest snapshot, own ship corrected %d times, by %.2f px on average and %.1f at most",
+				c.getBufferTicks(), c.getCorrections(), c.getCorrectionTotal() / Math.max(1, c.getCorrections()), c.getCorrectionMax()));
+		}
+		for (GameClient c : clients)
+		{
+			if (c.getBadStates() != 0 || c.getPlayer() == -1)
+				throw new IllegalStateException("loopback match failed");
+		}
+	}
+}
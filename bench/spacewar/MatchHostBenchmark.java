@@ -0,0 +1,107 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/* Hosts a growing number of matches on one MatchHost for a few seconds each,
+ * most of them idle between rounds and some of them playing, and reports how
+ * many ticks were run against how many were due, how late they were released
+ * and how many overran.  Build it along with the game sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   java -cp out spacewar.MatchHostBenchmark [percent busy] [seconds]
+ *
+ * On a JVM with virtual threads every match gets one; otherwise the ticks run
+ * on a pool of one thread per core.
+ */
+public class MatchHostBenchmark
+{
+	private static final int[] COUNTS = {100, 1000, 10000};
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int busyPercent = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		System.out.println(String.format("%d%% of matches playing, %d s each, %d cores", busyPercent, seconds, cores));
+		System.out.println(String.format("%8s %8s %10s %10s %8s %8s %12s %12s %8s", "matches", "virtual", "ticks/s", "due/s", "late %", "overruns", "avg late us", "max late ms", "heap MB"));
+		for (int n : COUNTS)
+		{
+			MatchHost host = new MatchHost(n, cores);
+			ArrayList<MatchHost.Match> matches = new ArrayList<MatchHost.Match>();
+			Random random = new Random(n);
+			for (int j = 0; j < n; j++)
+			{
+				GameWorld world = new GameWorld(GameMap.CLASSIC, j);
+				final Random input = new Random(j);
+				// an idle match is between rounds and its tick does nothing; a busy one plays
+				if (random.nextInt(100) < busyPercent)
+					world.resumeGame();
+				MatchHost.Match match = host.admit(world, w ->
+				{
+					if (w.getGameState() == GameWorld.GameState.PRE && w.getTicks() > 0)
+						w.resumeGame();
+					w.tick(new int[] {input.nextInt(8) == 0 ? 1 << input.nextInt(9) : 0, input.nextInt(8) == 0 ? 1 << input.nextInt(9) : 0});
+				});
+				if (match == null)
+					break;
+				matches.add(match);
+			}
+			Thread.sleep(1000); // settle in
+			long ticks = 0, late = 0, overruns = 0, maxLateness = 0;
+			for (MatchHost.Match m : matches)
+			{
+				ticks -= m.getTicks();
+				late -= m.getLate();
+				overruns -= m.getOverruns();
+			}
+			long start = System.nanoTime();
+			Thread.sleep(seconds * 1000L);
+			double elapsed = (System.nanoTime() - start) / 1e9;
+			for (MatchHost.Match m : matches)
+			{
+				ticks += m.getTicks();
+				late += m.getLate();
+				overruns += m.getOverruns();
+				maxLateness = Math.max(maxLateness, m.getMaxLateness());
+			}
+			long averageLateness = host.getAverageLateness();
+			Runtime rt = Runtime.getRuntime();
+			long heap = (rt.totalMemory() - rt.freeMemory()) >> 20;
+			host.shutdown();
+			System.out.println(String.format("%8d %8s %10.0f %10d %8.2f %8d %12.1f %12.2f %8d", matches.size(), host.getVirtualThreads(),
+				ticks / elapsed, matches.size() * GameWorld.TICKS_PER_SECOND, 100.0 * late / Math.max(ticks, 1), overruns,
+				averageLateness / 1e3, maxLateness / 1e6, heap));
+		}
+
+		// one over the limit is turned away
+		MatchHost host = new MatchHost(1, 1);
+		host.admit(new GameWorld(GameMap.CLASSIC, 0), w -> w.tick(null));
+		if (host.admit(new GameWorld(GameMap.CLASSIC, 1), w -> w.tick(null)) != null || host.getRejected() != 1)
+			throw new IllegalStateException("admission control let a match past the limit");
+		host.shutdown();
+	}
+}
@@ -0,0 +1,161 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/* Times one tick of a world full of slugs and torpedoes with everything on one
+ * thread against the same tick split across the common ForkJoinPool, to find
+ * where GameWorld should start splitting (PARALLEL_PROJECTILES).  Before
+ * timing, it checks that both leave every projectile in the same place and
+ * report the same explosions in the same order.  Every timed tick starts from
+ * a snapshot of the same match, ships and all.  Build it along with the game
+ * sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   java -Djava.awt.headless=true -cp out spacewar.ParallelBenchmark
+ */
+public class ParallelBenchmark
+{
+	private static final int[] COUNTS = {1024, 4096, 16384, 65536};
+	private static final long RUN_NANOS = 500000000L;
+
+	// a running hash of everything the world reports, in order
+	private static class Recorder implements GameListener
+	{
+		long hash = 17;
+
+		public void torpedoExploded(float X, float Y)
+		{
+			hash = hash * 31 + Float.floatToIntBits(X);
+			hash = hash * 31 + Float.floatToIntBits(Y);
+		}
+
+		public void shipExploded(IntelligentSprite ship)
+		{
+			hash = hash * 31 + 1;
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		Clock clock = () -> 0L;
+		System.out.println("common pool parallelism " + java.util.concurrent.ForkJoinPool.getCommonPoolParallelism());
+		System.out.println(String.format("%10s %16s %16s %8s", "projectiles", "serial ns/tick", "forked ns/tick", "speedup"));
+		for (int n : COUNTS)
+		{
+			ProjectileStore template = new ProjectileStore(n);
+			Random random = new Random(42);
+			for (int i = 0; i < n; i++)
+			{
+				// mostly slugs, which pass through each other, so most survive the tick
+				byte kind = random.nextInt(16) == 0 ? ProjectileStore.TORPEDO : ProjectileStore.SLUG;
+				double angle = random.nextDouble() * 2 * Math.PI;
+				template.add(kind, random.nextInt(2), random.nextFloat() * GameWorld.PWIDTH, random.nextFloat() * GameWorld.PHEIGHT,
+					(float)(Math.cos(angle) * GameWorld.SLUG_SPEED), (float)(Math.sin(angle) * GameWorld.SLUG_SPEED), random.nextInt(16));
+			}
+
+			GameWorld serial = new GameWorld(clock);
+			serial.setParallelProjectiles(Integer.MAX_VALUE);
+			GameWorld forked = new GameWorld(clock);
+			forked.setParallelProjectiles(1);
+			Recorder serialEvents = new Recorder(), forkedEvents = new Recorder();
+			serial.setListener(serialEvents);
+			forked.setListener(forkedEvents);
+			serial.resumeGame();
+			forked.resumeGame();
+			ByteBuffer start = start(serial, template);
+			start(forked, template);
+
+			reset(serial, start);
+			reset(forked, start);
+			serial.tick(null);
+			forked.tick(null);
+			check(serial, forked, serialEvents, forkedEvents);
+
+			double serialNanos = 0, forkedNanos = 0;
+			for (int pass = 0; pass < 2; pass++) // the first pass is warm-up
+			{
+				serialNanos = time(serial, start);
+				forkedNanos = time(forked, start);
+			}
+			System.out.println(String.format("%10d %16.0f %16.0f %8.2f", n, serialNanos, forkedNanos, serialNanos / forkedNanos));
+		}
+	}
+
+	/* Fill a running world with the template's projectiles and snapshot all
+	 * of it, ships and round included, so that every timed tick starts from
+	 * the same match rather than from whatever the last one left.
+	 */
+	private static ByteBuffer start(GameWorld world, ProjectileStore template)
+	{
+		ProjectileStore ps = world.getProjectiles();
+		ps.clear();
+		for (int i = 0; i < template.size(); i++)
+			ps.add(template.getKind(i), template.getOwner(i), template.getX(i), template.getY(i), template.getHVelocity(i), template.getVVelocity(i), template.getRotation(i));
+		world.getSpriteAnimations().clear();
+		ByteBuffer snapshot = ByteBuffer.allocate(world.snapshotSize());
+		world.snapshot(snapshot);
+		snapshot.flip();
+		return snapshot;
+	}
+
+	private static void reset(GameWorld world, ByteBuffer start)
+	{
+		start.rewind();
+		world.restore(start);
+	}
+
+	private static double time(GameWorld world, ByteBuffer start)
+	{
+		long iterations = 0, elapsed = 0, started = System.nanoTime();
+		do
+		{
+			reset(world, start);
+			long ticks = world.getTicks();
+			long began = System.nanoTime();
+			world.tick(null);
+			elapsed += System.nanoTime() - began;
+			iterations++;
+			// a tick of a round that is over does nothing, and would be timed as nothing
+			if (world.getTicks() != ticks + 1 || world.getGameState() != GameWorld.GameState.RUNNING)
+				throw new IllegalStateException("the world stopped playing");
+		} while (System.nanoTime() - started < RUN_NANOS);
+		return (double)elapsed / iterations;
+	}
+
+	private static void check(GameWorld a, GameWorld b, Recorder aEvents, Recorder bEvents)
+	{
+		ProjectileStore pa = a.getProjectiles(), pb = b.getProjectiles();
+		if (pa.size() != pb.size())
+			throw new IllegalStateException(pa.size() + " projectiles left serially but " + pb.size() + " forked");
+		for (int i = 0; i < pa.size(); i++)
+		{
+			if (pa.getX(i) != pb.getX(i) || pa.getY(i) != pb.getY(i) || pa.getHVelocity(i) != pb.getHVelocity(i) || pa.getVVelocity(i) != pb.getVVelocity(i) || pa.getKind(i) != pb.getKind(i))
+				throw new IllegalStateException("projectile " + i + " differs");
+		}
+		if (aEvents.hash != bEvents.hash)
+			throw new IllegalStateException("events differ");
+	}
+}
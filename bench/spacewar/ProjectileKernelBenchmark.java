@@ -0,0 +1,114 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/* Times ProjectileKernel.SCALAR against ProjectileKernel.fastest() over 1k,
+ * 10k and 100k projectiles, in projectiles (lanes) moved per second, after
+ * checking that both leave them in the same place.  Without the Vector API
+ * kernel both columns are the scalar loop; to include it:
+ *
+ *   javac --add-modules jdk.incubator.vector -d out src/spacewar/*.java src-vector/spacewar/*.java bench/spacewar/*.java
+ *   java --add-modules jdk.incubator.vector -cp out spacewar.ProjectileKernelBenchmark
+ */
+public class ProjectileKernelBenchmark
+{
+	private static final int[] COUNTS = {1000, 10000, 100000};
+	private static final long RUN_NANOS = 500000000L;
+
+	private static class Projectiles
+	{
+		final float[] x, y, vx, vy, ax, ay, lifetime;
+
+		Projectiles(int n, long seed)
+		{
+			Random random = new Random(seed);
+			x = new float[n];
+			y = new float[n];
+			vx = new float[n];
+			vy = new float[n];
+			ax = new float[n];
+			ay = new float[n];
+			lifetime = new float[n];
+			for (int i = 0; i < n; i++)
+			{
+				x[i] = random.nextFloat() * GameWorld.PWIDTH;
+				y[i] = random.nextFloat() * GameWorld.PHEIGHT;
+				vx[i] = (random.nextFloat() * 2 - 1) * GameWorld.TORPEDO_SPEED;
+				vy[i] = (random.nextFloat() * 2 - 1) * GameWorld.TORPEDO_SPEED;
+				ax[i] = (random.nextFloat() * 2 - 1) * 0.01f;
+				ay[i] = (random.nextFloat() * 2 - 1) * 0.01f;
+			}
+		}
+
+		void integrate(ProjectileKernel kernel)
+		{
+			kernel.integrate(x, y, vx, vy, ax, ay, lifetime, 0, x.length, GameWorld.PWIDTH, GameWorld.PHEIGHT);
+		}
+
+		boolean matches(Projectiles o)
+		{
+			return Arrays.equals(x, o.x) && Arrays.equals(y, o.y) && Arrays.equals(vx, o.vx) && Arrays.equals(vy, o.vy) && Arrays.equals(lifetime, o.lifetime);
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		ProjectileKernel fastest = ProjectileKernel.fastest();
+		System.out.println("fastest kernel: " + (fastest == ProjectileKernel.SCALAR ? "scalar" : fastest.getClass().getSimpleName()));
+		System.out.println(String.format("%11s %18s %18s %8s", "projectiles", "scalar lanes/s", "fastest lanes/s", "speedup"));
+		for (int n : COUNTS)
+		{
+			// a thousand ticks is plenty to send projectiles over every edge
+			Projectiles a = new Projectiles(n, 42), b = new Projectiles(n, 42);
+			for (int tick = 0; tick < 1000; tick++)
+			{
+				a.integrate(ProjectileKernel.SCALAR);
+				b.integrate(fastest);
+			}
+			if (!a.matches(b))
+				throw new IllegalStateException("kernels disagree at " + n + " projectiles");
+
+			double scalarRate = 0, fastestRate = 0;
+			for (int pass = 0; pass < 2; pass++) // the first pass is warm-up
+			{
+				scalarRate = time(a, ProjectileKernel.SCALAR);
+				fastestRate = time(b, fastest);
+			}
+			System.out.println(String.format("%11d %18.3e %18.3e %8.2f", n, scalarRate, fastestRate, fastestRate / scalarRate));
+		}
+	}
+
+	private static double time(Projectiles p, ProjectileKernel kernel)
+	{
+		long iterations = 0, start = System.nanoTime(), elapsed;
+		do
+		{
+			p.integrate(kernel);
+			iterations++;
+		} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+		return (double)iterations * p.x.length / elapsed * 1e9;
+	}
+}
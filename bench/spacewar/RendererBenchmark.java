@@ -0,0 +1,169 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/* Draws the same frames of a match and of an arena through Java2D and with
+ * a SoftwareRenderer, both into an 800x600 TYPE_INT_ARGB_PRE image with no
+ * screen, and reports frames a second for each and how many pixels of the
+ * last frame the two disagree on.  The frames are captured and drawn the
+ * way GamePanel does it.  Build it along with the game sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   cp -r src/spacewar/Images out/spacewar
+ *   java -Djava.awt.headless=true -cp out spacewar.RendererBenchmark [frames]
+ */
+public class RendererBenchmark
+{
+	private static final int[] COUNTS = {2, 64};
+
+	private static final ImagesLoader il = new ImagesLoader();
+	private static final BufferedImage imgShip1 = il.loadImage("Ship1.png");
+	private static final BufferedImage imgShip2 = il.loadImage("Ship2.png");
+	private static final BufferedImage imgSlug = il.loadImage("Slug.png");
+	private static final BufferedImage imgTorpedo = il.loadImage("Torpedo.png");
+	private static final BufferedImage imgPlanet = il.loadImage("Planet.png");
+	private static final BufferedImage imgStarfield = il.loadImage("Starfield.png");
+	private static final BufferedImage imgExplosion = il.loadImage("Explosion.png");
+	private static final BufferedImage imgShield = il.loadImage("Shield.png");
+	private static final SpriteAtlas atlas = new SpriteAtlas();
+
+	public static void main(String[] args)
+	{
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		atlas.addRotations(imgShip1);
+		atlas.addRotations(imgShip2);
+		atlas.addRotations(imgSlug);
+		atlas.addRotations(imgTorpedo);
+		atlas.add(imgPlanet);
+		atlas.addStrip(imgExplosion, SpriteAnimation.Effect.EXPLOSION.getFrameCount());
+		atlas.addStrip(imgShield, SpriteAnimation.Effect.SHIELD.getFrameCount());
+		atlas.pack();
+
+		System.out.println(String.format("%6s %10s %12s %12s %12s %10s", "ships", "sprites", "Java2D fps", "nearest fps", "bilinear fps", "differ"));
+		for (int n : COUNTS)
+		{
+			GameWorld world = new GameWorld(GameMap.CLASSIC, 42, n, n);
+			for (StaticSprite planet : world.getPlanets())
+				planet.setBufImg(imgPlanet);
+			for (IntelligentSprite i : world.getShips())
+				i.setBufImg(i.getTeam() % 2 == 0 ? imgShip1 : imgShip2);
+			Random random = new Random(n);
+			int[] input = new int[n];
+			// a second of play between frames, so there are shots and explosions to draw
+			for (int t = 0; t < GameWorld.TICKS_PER_SECOND; t++)
+				tick(world, random, input);
+
+			BufferedImage java2d = new BufferedImage(GameWorld.PWIDTH, GameWorld.PHEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+			Graphics2D g = java2d.createGraphics();
+			BackgroundLayer background = new BackgroundLayer(imgStarfield);
+			Hud hud = new Hud();
+			SoftwareRenderer r = new SoftwareRenderer(GameWorld.PWIDTH, GameWorld.PHEIGHT);
+			RenderFrame frame = new RenderFrame(imgSlug, imgTorpedo);
+			double[] fps = new double[3];
+			long sprites = 0;
+			// the first pass warms the JIT up, the second is timed
+			for (int pass = 0; pass < 2; pass++)
+			{
+				long[] nanos = new long[3];
+				sprites = 0;
+				for (int f = 0; f < frames; f++)
+				{
+					tick(world, random, input);
+					frame.capture(world, 1, null);
+					sprites += frame.getSpriteCount() + frame.getAnimationCount();
+					long start = System.nanoTime();
+					render(g, background, hud, frame);
+					long java2dDone = System.nanoTime();
+					r.setBilinear(false);
+					render(r, background, hud, frame);
+					long nearestDone = System.nanoTime();
+					r.setBilinear(true);
+					render(r, background, hud, frame);
+					long bilinearDone = System.nanoTime();
+					nanos[0] += java2dDone - start;
+					nanos[1] += nearestDone - java2dDone;
+					nanos[2] += bilinearDone - nearestDone;
+				}
+				for (int k = 0; k < fps.length; k++)
+					fps[k] = frames * 1e9 / nanos[k];
+			}
+			r.setBilinear(false);
+			render(r, background, hud, frame);
+			int differ = 0;
+			int[] pixels = r.getPixels();
+			for (int y = 0; y < GameWorld.PHEIGHT; y++)
+			{
+				for (int x = 0; x < GameWorld.PWIDTH; x++)
+				{
+					if (java2d.getRGB(x, y) != pixels[y * GameWorld.PWIDTH + x])
+						differ++;
+				}
+			}
+			g.dispose();
+			System.out.println(String.format("%6d %10d %12.0f %12.0f %12.0f %10d",
+				n, sprites / frames, fps[0], fps[1], fps[2], differ));
+		}
+	}
+
+	// a tick of random input, starting the round again if it is over
+	private static void tick(GameWorld world, Random random, int[] input)
+	{
+		if (world.getGameState() != GameWorld.GameState.RUNNING)
+			world.resumeGame();
+		for (int j = 0; j < input.length; j++)
+			input[j] = random.nextInt(1 << 9) & random.nextInt(1 << 9) & ~GameWorld.Action.HYPERSPACE.mask();
+		world.tick(input);
+	}
+
+	// GamePanel.gameRender()'s frame for a running game
+	private static void render(Graphics2D g, BackgroundLayer background, Hud hud, RenderFrame frame)
+	{
+		background.draw(g, g.getDeviceConfiguration(), frame, GameWorld.PWIDTH, GameWorld.PHEIGHT, null);
+		for (int i = 0; i < frame.getSpriteCount(); i++)
+			frame.getSprite(i).draw(g, atlas, 0, null);
+		for (int i = 0; i < frame.getAnimationCount(); i++)
+		{
+			RenderFrame.Animation a = frame.getAnimation(i);
+			a.draw(g, atlas, atlas.getStrip(a.effect == SpriteAnimation.Effect.SHIELD ? imgShield : imgExplosion), 0, null);
+		}
+		hud.drawEnergy(g, frame, null);
+	}
+
+	// GamePanel.softwareRender()'s
+	private static void render(SoftwareRenderer r, BackgroundLayer background, Hud hud, RenderFrame frame)
+	{
+		background.draw(r, frame);
+		for (int i = 0; i < frame.getSpriteCount(); i++)
+			frame.getSprite(i).draw(r, atlas, 0);
+		for (int i = 0; i < frame.getAnimationCount(); i++)
+		{
+			RenderFrame.Animation a = frame.getAnimation(i);
+			a.draw(r, atlas, atlas.getStrip(a.effect == SpriteAnimation.Effect.SHIELD ? imgShield : imgExplosion), 0);
+		}
+		hud.drawEnergy(r, frame);
+	}
+}
@@ -0,0 +1,117 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Random;
+
+/* Times GameWorld.snapshot() and restore() into a SnapshotRing with a growing
+ * number of projectiles in play, after checking that a match rolled back a
+ * few seconds and given the same input again ends up in the same state.
+ * Build it along with the game sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   java -cp out spacewar.SnapshotBenchmark
+ */
+public class SnapshotBenchmark
+{
+	private static final int[] COUNTS = {0, 100, 1000, 10000};
+	private static final int REWIND_TICKS = 300;
+	private static final long RUN_NANOS = 500000000L;
+
+	public static void main(String[] args)
+	{
+		checkRollback();
+
+		System.out.println(String.format("%11s %8s %16s %16s", "projectiles", "bytes", "snapshot ns", "restore ns"));
+		for (int n : COUNTS)
+		{
+			GameWorld world = new GameWorld(GameMap.CLASSIC, 42);
+			Random random = new Random(42);
+			for (int i = 0; i < n; i++)
+				world.getProjectiles().add(ProjectileStore.SLUG, random.nextInt(2), random.nextFloat() * GameWorld.PWIDTH, random.nextFloat() * GameWorld.PHEIGHT, 1, 1, 0);
+			SnapshotRing ring = new SnapshotRing(8);
+
+			double saveNanos = 0, restoreNanos = 0;
+			for (int pass = 0; pass < 2; pass++) // the first pass is warm-up
+			{
+				long iterations = 0, start = System.nanoTime(), elapsed;
+				do
+				{
+					ring.save(world);
+					iterations++;
+				} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+				saveNanos = (double)elapsed / iterations;
+
+				iterations = 0;
+				start = System.nanoTime();
+				do
+				{
+					ring.restore(world, world.getTicks());
+					iterations++;
+				} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+				restoreNanos = (double)elapsed / iterations;
+			}
+			System.out.println(String.format("%11d %8d %16.0f %16.0f", n, world.snapshotSize(), saveNanos, restoreNanos));
+		}
+	}
+
+	// play on, roll back, play the same again, and compare
+	private static void checkRollback()
+	{
+		GameWorld world = new GameWorld(GameMap.CLASSIC, 7);
+		world.resumeGame();
+		SnapshotRing ring = new SnapshotRing(REWIND_TICKS + 1);
+		Random random = new Random(7);
+		int[][] inputs = new int[REWIND_TICKS * 100][];
+		for (int t = 0; t < inputs.length; t++)
+			inputs[t] = new int[] {random.nextInt(8) == 0 ? 1 << random.nextInt(9) : 0, random.nextInt(8) == 0 ? 1 << random.nextInt(9) : 0};
+
+		long[] hashes = new long[inputs.length];
+		long rolledBackAt = 0;
+		while (world.getTicks() < inputs.length)
+		{
+			if (world.getGameState() != GameWorld.GameState.RUNNING)
+				world.resumeGame();
+			ring.save(world);
+			world.tick(inputs[(int)world.getTicks()]);
+			hashes[(int)world.getTicks() - 1] = world.stateHash();
+			if (world.getTicks() % REWIND_TICKS == 0 && world.getTicks() > rolledBackAt)
+			{
+				// back REWIND_TICKS, and forward again over the same input
+				rolledBackAt = world.getTicks();
+				long back = rolledBackAt - REWIND_TICKS;
+				if (!ring.restore(world, back))
+					throw new IllegalStateException("tick " + back + " not held");
+				while (world.getTicks() < rolledBackAt)
+				{
+					if (world.getGameState() != GameWorld.GameState.RUNNING)
+						world.resumeGame();
+					world.tick(inputs[(int)world.getTicks()]);
+					if (world.stateHash() != hashes[(int)world.getTicks() - 1])
+						throw new IllegalStateException("replay after rollback differs at tick " + world.getTicks());
+				}
+			}
+		}
+		System.out.println("rolled back every " + REWIND_TICKS + " ticks through " + world.getTicks() + " ticks, wins " + world.getWins(0) + ":" + world.getWins(1) + ", no differences");
+	}
+}
@@ -0,0 +1,130 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/* Plays a match with a given number of projectiles kept in flight, captures
+ * a frame every BROADCAST_TICKS ticks as GameServer does, and encodes each
+ * against the one ACK_LAG snapshots before it, the way a client's acks
+ * trail behind.  Reports the bytes of a whole frame and of a delta, the
+ * delta's bytes per tick, and encode and decode time per entity, after
+ * checking that every frame decodes to exactly what was captured.  Build it
+ * along with the game sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   java -cp out spacewar.SnapshotCodecBenchmark [position bits] [velocity bits]
+ */
+public class SnapshotCodecBenchmark
+{
+	private static final int[] COUNTS = {10, 1000, 10000};
+	private static final int BROADCAST_TICKS = GameWorld.TICKS_PER_SECOND / GameServer.DEFAULT_BROADCAST_RATE;
+	private static final int ACK_LAG = 2;
+	private static final int SNAPSHOTS = 40;
+	private static final long RUN_NANOS = 500000000L;
+
+	public static void main(String[] args)
+	{
+		int positionBits = args.length > 0 ? Integer.parseInt(args[0]) : SnapshotCodec.DEFAULT_POSITION_BITS;
+		int velocityBits = args.length > 1 ? Integer.parseInt(args[1]) : SnapshotCodec.DEFAULT_VELOCITY_BITS;
+		SnapshotCodec codec = new SnapshotCodec(positionBits, velocityBits);
+		System.out.println(String.format("%d position bits, %d velocity bits, a snapshot every %d ticks against the one %d before",
+			positionBits, velocityBits, BROADCAST_TICKS, ACK_LAG));
+		System.out.println(String.format("%11s %12s %10s %10s %10s %13s %13s", "projectiles", "raw bytes", "whole", "delta", "per tick", "encode ns/e", "decode ns/e"));
+		for (int n : COUNTS)
+		{
+			// the match, with slugs topped up to n as they hit things; slugs don't hit each other
+			GameWorld world = new GameWorld(GameMap.CLASSIC, 42);
+			world.resumeGame();
+			Random random = new Random(42);
+			SnapshotCodec.Frame[] frames = new SnapshotCodec.Frame[SNAPSHOTS];
+			for (int s = 0; s < SNAPSHOTS; s++)
+			{
+				for (int t = 0; t < BROADCAST_TICKS; t++)
+				{
+					ProjectileStore ps = world.getProjectiles();
+					while (ps.size() < n)
+					{
+						double angle = random.nextDouble() * 2 * Math.PI;
+						ps.add(ProjectileStore.SLUG, random.nextInt(2),
+							random.nextFloat() * GameWorld.PWIDTH, random.nextFloat() * GameWorld.PHEIGHT,
+							(float)Math.cos(angle) * GameWorld.SLUG_SPEED, (float)Math.sin(angle) * GameWorld.SLUG_SPEED, random.nextInt(16));
+					}
+					if (world.getGameState() != GameWorld.GameState.RUNNING)
+						world.resumeGame();
+					world.tick(null);
+				}
+				frames[s] = codec.newFrame();
+				codec.capture(world, frames[s]);
+			}
+			int entities = world.getProjectiles().size() + world.getShips().size() + world.getPlanets().size();
+			int raw = world.snapshotSize();
+
+			ByteBuffer[] packets = new ByteBuffer[SNAPSHOTS];
+			for (int s = 0; s < SNAPSHOTS; s++)
+				packets[s] = ByteBuffer.allocate(GameServer.MAX_PACKET * 4);
+			long deltaBytes = 0;
+			int wholeBytes = 0;
+			double encodeNanos = 0, decodeNanos = 0;
+			for (int pass = 0; pass < 3; pass++) // the first is a check, the second warm-up
+			{
+				long iterations = 0, start = System.nanoTime(), elapsed;
+				do
+				{
+					deltaBytes = 0;
+					for (int s = 0; s < SNAPSHOTS; s++)
+					{
+						packets[s].clear();
+						codec.encode(s < ACK_LAG ? null : frames[s - ACK_LAG], frames[s], packets[s]);
+						packets[s].flip();
+						if (s == 0)
+							wholeBytes = packets[s].remaining();
+						else if (s >= ACK_LAG)
+							deltaBytes += packets[s].remaining();
+					}
+					iterations++;
+				} while ((elapsed = System.nanoTime() - start) < RUN_NANOS && pass > 0);
+				encodeNanos = (double)elapsed / iterations / SNAPSHOTS / entities;
+
+				SnapshotCodec.History history = codec.newHistory();
+				iterations = 0;
+				start = System.nanoTime();
+				do
+				{
+					for (int s = 0; s < SNAPSHOTS; s++)
+					{
+						SnapshotCodec.Frame frame = codec.decode(packets[s].duplicate(), history);
+						if (pass == 0 && (frame == null || !frame.sameAs(frames[s])))
+							throw new IllegalStateException("snapshot " + s + " did not come back the same");
+					}
+					iterations++;
+				} while ((elapsed = System.nanoTime() - start) < RUN_NANOS && pass > 0);
+				decodeNanos = (double)elapsed / iterations / SNAPSHOTS / entities;
+			}
+			long delta = deltaBytes / (SNAPSHOTS - ACK_LAG);
+			System.out.println(String.format("%11d %12d %10d %10d %10d %13.1f %13.1f",
+				n, raw, wholeBytes, delta, delta / BROADCAST_TICKS, encodeNanos, decodeNanos));
+		}
+	}
+}
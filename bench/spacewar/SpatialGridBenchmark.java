@@ -0,0 +1,99 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Random;
+
+import spacewar.StaticSprite.Level;
+
+/* Times one tick's worth of collision tests, every pair against the grid, for
+ * a planet, two ships and a growing number of slugs and torpedoes, to find
+ * where GameWorld should start using the grid (BROAD_PHASE_BODIES).  Build it
+ * along with the game sources:
+ *
+ *   javac -d out src/spacewar/*.java bench/spacewar/*.java
+ *   java -cp out spacewar.SpatialGridBenchmark
+ */
+public class SpatialGridBenchmark
+{
+	private static final int[] COUNTS = {2, 4, 8, 16, 32, 64, 128, 256, 1024, 4096};
+	private static final long RUN_NANOS = 200000000L;
+
+	public static void main(String[] args)
+	{
+		final int[] hits = new int[1];
+		Collisions collisions = new Collisions(GameWorld.PWIDTH, GameWorld.PHEIGHT, GameWorld.GRID_CELL_SIZE, GameWorld.GRID_CELL_SIZE / 2f, 0);
+		Collisions.Handler counter = (a, b) -> hits[0]++;
+		collisions.register(Level.SHIP, Level.PLANET, counter);
+		collisions.register(Level.SHIP, Level.SLUG, counter);
+		collisions.register(Level.SHIP, Level.TORPEDO, counter);
+		collisions.register(Level.SHIP, Level.SHIP, counter);
+		collisions.register(Level.SLUG, Level.PLANET, counter);
+		collisions.register(Level.TORPEDO, Level.PLANET, counter);
+		collisions.register(Level.SLUG, Level.TORPEDO, counter);
+		Random random = new Random(42);
+
+		System.out.println(String.format("%8s %14s %14s %8s", "bodies", "brute ns/tick", "grid ns/tick", "hits"));
+		for (int n : COUNTS)
+		{
+			collisions.clear();
+			collisions.add(Level.PLANET, GameWorld.TORPEDO_COLLIDES, GameWorld.PWIDTH/2, GameWorld.PHEIGHT/2, 50, 0);
+			collisions.add(Level.SHIP, GameWorld.SHIP_COLLIDES, random.nextFloat() * GameWorld.PWIDTH, random.nextFloat() * GameWorld.PHEIGHT, 10, 0);
+			collisions.add(Level.SHIP, GameWorld.SHIP_COLLIDES, random.nextFloat() * GameWorld.PWIDTH, random.nextFloat() * GameWorld.PHEIGHT, 10, 1);
+			for (int i = 0; i < n / 2; i++)
+			{
+				collisions.add(Level.SLUG, GameWorld.SLUG_COLLIDES, random.nextFloat() * GameWorld.PWIDTH, random.nextFloat() * GameWorld.PHEIGHT, 1, i);
+				collisions.add(Level.TORPEDO, GameWorld.TORPEDO_COLLIDES, random.nextFloat() * GameWorld.PWIDTH, random.nextFloat() * GameWorld.PHEIGHT, 4, i);
+			}
+
+			int bruteHits = 0, gridHits = 0;
+			double bruteNanos = 0, gridNanos = 0;
+			for (int pass = 0; pass < 2; pass++) // the first pass is warm-up
+			{
+				long iterations = 0, start = System.nanoTime(), elapsed;
+				do
+				{
+					hits[0] = 0;
+					collisions.runBruteForce();
+					bruteHits = hits[0];
+					iterations++;
+				} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+				bruteNanos = (double)elapsed / iterations;
+
+				iterations = 0;
+				start = System.nanoTime();
+				do
+				{
+					hits[0] = 0;
+					collisions.runGrid();
+					gridHits = hits[0];
+					iterations++;
+				} while ((elapsed = System.nanoTime() - start) < RUN_NANOS);
+				gridNanos = (double)elapsed / iterations;
+			}
+			if (bruteHits != gridHits)
+				throw new IllegalStateException("grid found " + gridHits + " hits but brute force found " + bruteHits);
+			System.out.println(String.format("%8d %14.0f %14.0f %8d", collisions.size(), bruteNanos, gridNanos, bruteHits));
+		}
+	}
+}
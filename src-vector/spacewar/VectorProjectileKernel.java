@@ -0,0 +1,69 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/* ProjectileKernel over as many floats at a time as the CPU has lanes for.
+ * The wrap-around branches become masks: the lanes that went off an edge are
+ * found from the moved positions and blended with the far edge.  The tail
+ * that doesn't fill a vector goes through the scalar loop.  This needs the
+ * incubator module to compile and run:
+ *
+ *   javac --add-modules jdk.incubator.vector -d out src/spacewar/*.java src-vector/spacewar/*.java
+ *   java --add-modules jdk.incubator.vector -cp out spacewar.GamePanel
+ */
+public class VectorProjectileKernel implements ProjectileKernel
+{
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	public void integrate(float[] x, float[] y, float[] vx, float[] vy, float[] ax, float[] ay, float[] lifetime, int from, int to, float width, float height)
+	{
+		int i = from;
+		for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length())
+		{
+			FloatVector h = FloatVector.fromArray(SPECIES, vx, i).add(FloatVector.fromArray(SPECIES, ax, i));
+			FloatVector v = FloatVector.fromArray(SPECIES, vy, i).add(FloatVector.fromArray(SPECIES, ay, i));
+			FloatVector px = FloatVector.fromArray(SPECIES, x, i).add(h);
+			FloatVector py = FloatVector.fromArray(SPECIES, y, i).add(v);
+
+			// both masks come from the moved position, as the else-ifs test it
+			VectorMask<Float> left = px.compare(VectorOperators.LE, 0f);
+			VectorMask<Float> right = px.compare(VectorOperators.GE, width);
+			VectorMask<Float> top = py.compare(VectorOperators.LT, 0f);
+			VectorMask<Float> bottom = py.compare(VectorOperators.GE, height);
+			px = px.blend(width, left).blend(0f, right);
+			py = py.blend(height, top).blend(0f, bottom);
+
+			h.intoArray(vx, i);
+			v.intoArray(vy, i);
+			px.intoArray(x, i);
+			py.intoArray(y, i);
+			FloatVector.fromArray(SPECIES, lifetime, i).add(1f).intoArray(lifetime, i);
+		}
+		SCALAR.integrate(x, y, vx, vy, ax, ay, lifetime, i, to, width, height);
+	}
+}
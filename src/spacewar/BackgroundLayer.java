@@ -0,0 +1,156 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.awt.image.VolatileImage;
+
+/* The parts of a frame that never move: the starfield and the planets that
+ * stay put.  They are composited once into an opaque accelerated image, and
+ * each frame starts with a single copy of it instead of the full-screen
+ * starfield and a scaled draw of every planet.  It is made again only when
+ * the map or the size of the surface changes, or when the image is lost.
+ * A planet that moves is a DynamicSprite, and is left for the frame to draw.
+ * A SoftwareRenderer gets a layer of its own, kept as plain pixels.
+ */
+public class BackgroundLayer
+{
+	private final BufferedImage starfield;
+	private VolatileImage image;
+	private GameMap map;
+	private long planets; // where the still planets were, when it was made
+	private long composites; // how many times it has been made
+	private int[] pixels; // the same for a SoftwareRenderer
+	private GameMap pixelsMap;
+	private long pixelsPlanets;
+
+	public BackgroundLayer(BufferedImage starfield)
+	{
+		this.starfield = starfield;
+	}
+
+	// accessors
+	public long getComposites() { return this.composites; }
+
+	// whether a planet belongs in the layer rather than being drawn every frame
+	public static boolean isStill(StaticSprite planet)
+	{
+		return (planet instanceof DynamicSprite) == false;
+	}
+
+	/* Copy the layer for a frame onto g at its top left, width by height,
+	 * making it first if need be.  gc is the configuration of the surface
+	 * being drawn on; with none the layer is drawn straight onto g.
+	 */
+	public void draw(Graphics2D g, GraphicsConfiguration gc, RenderFrame frame, int width, int height, ImageObserver observer)
+	{
+		if (gc == null)
+		{
+			composite(g, frame, observer);
+			return;
+		}
+		// a client's planets come from snapshots, so check where they are rather than trusting the map
+		long key = stillPlanets(frame);
+		do
+		{
+			int valid = image == null ? VolatileImage.IMAGE_INCOMPATIBLE : image.validate(gc);
+			if (valid == VolatileImage.IMAGE_INCOMPATIBLE || image.getWidth() != width || image.getHeight() != height)
+			{
+				if (image != null)
+					image.flush();
+				image = gc.createCompatibleVolatileImage(width, height, Transparency.OPAQUE);
+				valid = VolatileImage.IMAGE_RESTORED;
+			}
+			if (valid == VolatileImage.IMAGE_RESTORED || map != frame.getMap() || planets != key)
+			{
+				Graphics2D ig = image.createGraphics();
+				ig.setComposite(AlphaComposite.Src);
+				ig.setColor(Color.BLACK);
+				ig.fillRect(0, 0, width, height);
+				ig.setComposite(AlphaComposite.SrcOver);
+				composite(ig, frame, observer);
+				ig.dispose();
+				map = frame.getMap();
+				planets = key;
+				composites++;
+			}
+			g.drawImage(image, 0, 0, observer);
+		}
+		while (image.contentsLost());
+	}
+
+	// the same, into a SoftwareRenderer's frame
+	public void draw(SoftwareRenderer r, RenderFrame frame)
+	{
+		long key = stillPlanets(frame);
+		if (pixels == null || pixels.length != r.getPixels().length || pixelsMap != frame.getMap() || pixelsPlanets != key)
+		{
+			r.clear(0xFF000000);
+			r.drawImage(starfield, 0, 0);
+			for (int i = 0; i < frame.getStillCount(); i++)
+			{
+				RenderFrame.Sprite p = frame.getStill(i);
+				if (p.visible)
+					r.drawImage(p.image, p.left(0), p.top(0), p.width, p.height);
+			}
+			pixels = r.getPixels().clone();
+			pixelsMap = frame.getMap();
+			pixelsPlanets = key;
+			composites++;
+			return;
+		}
+		r.copy(pixels);
+	}
+
+	private void composite(Graphics2D g, RenderFrame frame, ImageObserver observer)
+	{
+		g.drawImage(starfield, 0, 0, observer);
+		for (int i = 0; i < frame.getStillCount(); i++)
+		{
+			RenderFrame.Sprite p = frame.getStill(i);
+			if (p.visible)
+				g.drawImage(p.image, p.left(0), p.top(0), p.width, p.height, observer);
+		}
+	}
+
+	// where the still planets are drawn, to the pixel, hashed
+	private static long stillPlanets(RenderFrame frame)
+	{
+		long h = frame.getStillCount();
+		for (int i = 0; i < frame.getStillCount(); i++)
+		{
+			RenderFrame.Sprite p = frame.getStill(i);
+			h = h * 31 + p.left(0);
+			h = h * 31 + p.top(0);
+			h = h * 31 + p.width;
+			h = h * 31 + (p.visible ? 1 : 0);
+		}
+		return h;
+	}
+}
@@ -0,0 +1,237 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Arrays;
+
+/* Gravity from any number of planets, by the Barnes-Hut method.  Each tick
+ * build() sorts the planets into a quadtree whose every node knows the total
+ * mass and centre of mass below it.  accelerate() then walks the tree from the
+ * top, and treats any node that is small enough as seen from where it is, its
+ * size under theta times its distance, as a single planet at its centre of
+ * mass rather than opening it up.  That makes the pull on one point cost
+ * O(log n) rather than O(n); theta 0 opens every node and gives the exact sum.
+ *
+ * The pull of each planet is its mass (G already folded in) times the
+ * displacement to it over the squared distance, as the single planet always
+ * pulled.  Up to DIRECT_BODIES planets the plain sum is quicker than the walk,
+ * so that is what accelerate() does.  The nodes live in parallel arrays that are reused from tick to
+ * tick, and accelerate() only reads them, so any number of threads can ask
+ * for gravity at once between builds.
+ */
+public class BarnesHut
+{
+	private static final int MAX_DEPTH = 32; // below this, planets on top of each other share a leaf
+	static final int DIRECT_BODIES = 128; // see GravityBenchmark
+
+	private double theta = 0.5;
+
+	// the nodes; children are four consecutive nodes starting at child[node], or -1 for a leaf
+	private double[] originX = new double[64];
+	private double[] originY = new double[64];
+	private double[] size = new double[64];
+	private double[] mass = new double[64];
+	private double[] centerX = new double[64];
+	private double[] centerY = new double[64];
+	private int[] child = new int[64];
+	private int[] body = new int[64]; // the planet in a leaf, -1 if none
+	private int nodes;
+
+	// the planets, as of the last build
+	private double[] bodyX = new double[16];
+	private double[] bodyY = new double[16];
+	private double[] bodyMass = new double[16];
+	private int bodies;
+
+	// accessors
+	public double getTheta() { return this.theta; }
+	public void setTheta(double theta) { this.theta = theta; }
+	public int getBodies() { return this.bodies; }
+
+	public void build(float[] x, float[] y, float[] m, int n)
+	{
+		if (n > bodyX.length)
+		{
+			bodyX = new double[n];
+			bodyY = new double[n];
+			bodyMass = new double[n];
+		}
+		bodies = n;
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+		{
+			bodyX[i] = x[i];
+			bodyY[i] = y[i];
+			bodyMass[i] = m[i];
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+
+		nodes = 0;
+		if (n == 0)
+			return;
+		newNode(minX, minY, Math.max(Math.max(maxX - minX, maxY - minY), 1));
+		for (int i = 0; i < n; i++)
+			insert(0, i, 0);
+	}
+
+	/* Add the acceleration at X, Y to out[0] and out[1].  A planet exactly at
+	 * X, Y, like a moving planet asking about itself, doesn't pull at all.
+	 */
+	public void accelerate(double X, double Y, double[] out)
+	{
+		if (bodies <= DIRECT_BODIES)
+			accelerateDirect(X, Y, out);
+		else
+			accelerate(0, X, Y, out);
+	}
+
+	// the walk down the tree, whatever the number of planets
+	public void accelerateTree(double X, double Y, double[] out)
+	{
+		if (nodes > 0)
+			accelerate(0, X, Y, out);
+	}
+
+	// the plain sum over every planet
+	public void accelerateDirect(double X, double Y, double[] out)
+	{
+		for (int i = 0; i < bodies; i++)
+			pull(bodyMass[i], bodyX[i], bodyY[i], X, Y, out);
+	}
+
+	private void accelerate(int node, double X, double Y, double[] out)
+	{
+		if (mass[node] == 0)
+			return;
+		if (child[node] == -1)
+		{ // a leaf, which may hold several planets if they sat on top of each other
+			pull(mass[node], centerX[node], centerY[node], X, Y, out);
+			return;
+		}
+		double dx = centerX[node] - X, dy = centerY[node] - Y;
+		if (size[node] * size[node] < theta * theta * (dx * dx + dy * dy))
+			pull(mass[node], centerX[node], centerY[node], X, Y, out);
+		else
+		{
+			for (int c = child[node], end = c + 4; c < end; c++)
+				accelerate(c, X, Y, out);
+		}
+	}
+
+	private static void pull(double m, double fromX, double fromY, double X, double Y, double[] out)
+	{
+		double dx = fromX - X, dy = fromY - Y;
+		double rsq = dx * dx + dy * dy;
+		if (rsq > 0)
+		{
+			out[0] += m * dx / rsq;
+			out[1] += m * dy / rsq;
+		}
+	}
+
+	private void insert(int node, int i, int depth)
+	{
+		double m = bodyMass[i];
+		if (child[node] == -1)
+		{
+			if (body[node] == -1 && mass[node] == 0)
+			{ // an empty leaf
+				body[node] = i;
+				mass[node] = m;
+				centerX[node] = bodyX[i];
+				centerY[node] = bodyY[i];
+				return;
+			}
+			if (depth >= MAX_DEPTH)
+			{ // too close to split, so the leaf just gets heavier
+				addMass(node, i);
+				return;
+			}
+			// split the leaf and push its planet down a level
+			int old = body[node];
+			body[node] = -1;
+			split(node);
+			if (old >= 0)
+				insert(child[node] + quadrant(node, bodyX[old], bodyY[old]), old, depth + 1);
+		}
+		addMass(node, i);
+		insert(child[node] + quadrant(node, bodyX[i], bodyY[i]), i, depth + 1);
+	}
+
+	private void addMass(int node, int i)
+	{
+		double m = bodyMass[i], total = mass[node] + m;
+		if (total != 0)
+		{
+			centerX[node] = (centerX[node] * mass[node] + bodyX[i] * m) / total;
+			centerY[node] = (centerY[node] * mass[node] + bodyY[i] * m) / total;
+		}
+		mass[node] = total;
+	}
+
+	private void split(int node)
+	{
+		double half = size[node] / 2;
+		child[node] = nodes;
+		newNode(originX[node], originY[node], half);
+		newNode(originX[node] + half, originY[node], half);
+		newNode(originX[node], originY[node] + half, half);
+		newNode(originX[node] + half, originY[node] + half, half);
+	}
+
+	private int quadrant(int node, double X, double Y)
+	{
+		double half = size[node] / 2;
+		return (X >= originX[node] + half ? 1 : 0) + (Y >= originY[node] + half ? 2 : 0);
+	}
+
+	private int newNode(double X, double Y, double nodeSize)
+	{
+		if (nodes == size.length)
+		{
+			int capacity = nodes * 2;
+			originX = Arrays.copyOf(originX, capacity);
+			originY = Arrays.copyOf(originY, capacity);
+			size = Arrays.copyOf(size, capacity);
+			mass = Arrays.copyOf(mass, capacity);
+			centerX = Arrays.copyOf(centerX, capacity);
+			centerY = Arrays.copyOf(centerY, capacity);
+			child = Arrays.copyOf(child, capacity);
+			body = Arrays.copyOf(body, capacity);
+		}
+		int node = nodes++;
+		originX[node] = X;
+		originY[node] = Y;
+		size[node] = nodeSize;
+		mass[node] = 0;
+		centerX[node] = 0;
+		centerY[node] = 0;
+		child[node] = -1;
+		body[node] = -1;
+		return node;
+	}
+}
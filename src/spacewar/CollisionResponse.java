@@ -0,0 +1,113 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+/* How ships bounce, worked out with dot products against the contact normal
+ * rather than by converting velocities to angles and back.  Ships bouncing off
+ * each other swap the parts of their velocities along the normal and keep the
+ * rest, as equal masses do; a ship bouncing off a planet has the part along
+ * the normal reversed.  Either way the bodies are then pushed apart until they
+ * only just touch, so a ship can't be left inside a planet or another ship and
+ * bounce off it again every tick.
+ */
+public class CollisionResponse
+{
+	// ship with ship
+	static void bounce(IntelligentSprite a, IntelligentSprite b)
+	{
+		double nx = b.getX() - a.getX(), ny = b.getY() - a.getY();
+		double distance = Math.sqrt(nx * nx + ny * ny);
+		if (distance == 0)
+		{ // right on top of each other, so any normal will do
+			nx = 1;
+			ny = 0;
+		}
+		else
+		{
+			nx /= distance;
+			ny /= distance;
+		}
+
+		// exchange the velocities along the normal
+		double avx = a.getHVelocity(), avy = a.getVVelocity();
+		double bvx = b.getHVelocity(), bvy = b.getVVelocity();
+		double exchange = (bvx * nx + bvy * ny) - (avx * nx + avy * ny);
+		setVelocity(a, avx + exchange * nx, avy + exchange * ny);
+		setVelocity(b, bvx - exchange * nx, bvy - exchange * ny);
+
+		// and push each ship half of the way out of the other
+		double overlap = (a.getWidth()/2 + b.getWidth()/2) - distance;
+		if (overlap > 0)
+		{
+			a.setX((float)(a.getX() - nx * overlap / 2));
+			a.setY((float)(a.getY() - ny * overlap / 2));
+			b.setX((float)(b.getX() + nx * overlap / 2));
+			b.setY((float)(b.getY() + ny * overlap / 2));
+		}
+	}
+
+	// ship with planet
+	static void bounce(IntelligentSprite a, StaticSprite b)
+	{
+		double nx = b.getX() - a.getX(), ny = b.getY() - a.getY();
+		double distance = Math.sqrt(nx * nx + ny * ny);
+		if (distance == 0)
+		{
+			nx = 1;
+			ny = 0;
+		}
+		else
+		{
+			nx /= distance;
+			ny /= distance;
+		}
+
+		// reverse the velocity along the normal, the ship can't speed up doing it
+		double avx = a.getHVelocity(), avy = a.getVVelocity();
+		double normal = avx * nx + avy * ny;
+		a.setHVelocity((float)(avx - 2 * normal * nx));
+		a.setVVelocity((float)(avy - 2 * normal * ny));
+
+		// the planet doesn't move, so the ship goes all of the way out
+		double overlap = (a.getWidth()/2 + b.getWidth()/2) - distance;
+		if (overlap > 0)
+		{
+			a.setX((float)(a.getX() - nx * overlap));
+			a.setY((float)(a.getY() - ny * overlap));
+		}
+	}
+
+	// shrink speeds to speed limit
+	private static void setVelocity(IntelligentSprite i, double vx, double vy)
+	{
+		double speedSquared = vx * vx + vy * vy;
+		if (speedSquared > i.getTopSpeed() * i.getTopSpeed())
+		{
+			double scale = i.getTopSpeed() / Math.sqrt(speedSquared);
+			vx *= scale;
+			vy *= scale;
+		}
+		i.setHVelocity((float)vx);
+		i.setVVelocity((float)vy);
+	}
+}
@@ -0,0 +1,284 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import spacewar.StaticSprite.Level;
+
+/* Finds which bodies in the world touch and hands each touching pair to the
+ * handler registered for their two levels.  Every tick the world adds each
+ * planet, ship and projectile as a body: a circle, the level it exists on, a
+ * bit mask of the levels it collides with, and a ref the handler gets back,
+ * which is just its index in whatever list it came from.
+ *
+ * Two bodies are tested only if a handler is registered for their levels,
+ * each one's mask has the other's level in it, and they are not on the same
+ * team where their two levels ignore teammates, and then only by comparing
+ * squared distances.  With enough bodies, the small ones go into a
+ * SpatialGrid so each is tested only against its neighbours, while the few
+ * large ones (planets) are still tested against everything.
+ *
+ * With more bodies still, the grid is searched by several threads at once,
+ * each taking a run of bodies and writing down the touching pairs it finds.
+ * The handlers are then called on this thread, run by run, in the same order
+ * a single thread would have found them, so the game plays out the same.
+ */
+public class Collisions
+{
+	public static interface Handler
+	{
+		void collide(int a, int b);
+	}
+
+	private static final int LEVELS = Level.values().length;
+	private final Handler[] handlers = new Handler[LEVELS * LEVELS];
+	private final int[] pairs = new int[LEVELS]; // bit j of pairs[i] is set if levels i and j have a handler
+	private final int[] friendly = new int[LEVELS]; // bit j of friendly[i] is set if levels i and j ignore teammates
+	private final SpatialGrid grid;
+	private final float largeRadius;
+	private int broadPhaseBodies;
+	private int parallelBodies = Integer.MAX_VALUE;
+	private final Partition[] partitions;
+
+	private float[] x = new float[64];
+	private float[] y = new float[64];
+	private float[] radius = new float[64];
+	private int[] level = new int[64];
+	private int[] collidesWith = new int[64];
+	private int[] team = new int[64];
+	private int[] ref = new int[64];
+	private int size;
+
+	/* Bodies with a radius over largeRadius are kept out of the grid, which
+	 * would otherwise have to widen every query to reach them.
+	 */
+	public Collisions(int width, int height, int cellSize, float largeRadius, int broadPhaseBodies)
+	{
+		this.grid = new SpatialGrid(width, height, cellSize);
+		this.largeRadius = largeRadius;
+		this.broadPhaseBodies = broadPhaseBodies;
+		this.partitions = new Partition[ForkJoinPool.getCommonPoolParallelism() * 4];
+		for (int p = 0; p < partitions.length; p++)
+			partitions[p] = new Partition();
+	}
+
+	// accessors
+	public int size() { return this.size; }
+	public int getBroadPhaseBodies() { return this.broadPhaseBodies; }
+	public void setBroadPhaseBodies(int broadPhaseBodies) { this.broadPhaseBodies = broadPhaseBodies; }
+	public int getParallelBodies() { return this.parallelBodies; }
+	public void setParallelBodies(int parallelBodies) { this.parallelBodies = parallelBodies; }
+
+	// handler is called as handler.collide(ref of the a body, ref of the b body)
+	public void register(Level a, Level b, final Handler handler)
+	{
+		handlers[a.ordinal() * LEVELS + b.ordinal()] = handler;
+		if (a != b)
+			handlers[b.ordinal() * LEVELS + a.ordinal()] = (p, q) -> handler.collide(q, p);
+		pairs[a.ordinal()] |= b.mask();
+		pairs[b.ordinal()] |= a.mask();
+	}
+
+	// bodies on levels a and b that are on the same team pass through each other
+	public void ignoreTeammates(Level a, Level b)
+	{
+		friendly[a.ordinal()] |= b.mask();
+		friendly[b.ordinal()] |= a.mask();
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public void add(Level level, int collidesWith, float X, float Y, float radius, int ref)
+	{
+		add(level, collidesWith, -1, X, Y, radius, ref);
+	}
+
+	// a body on a team; -1 is on no team at all
+	public void add(Level level, int collidesWith, int team, float X, float Y, float radius, int ref)
+	{
+		if (size == x.length)
+		{
+			int capacity = size * 2;
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			this.radius = Arrays.copyOf(this.radius, capacity);
+			this.level = Arrays.copyOf(this.level, capacity);
+			this.collidesWith = Arrays.copyOf(this.collidesWith, capacity);
+			this.team = Arrays.copyOf(this.team, capacity);
+			this.ref = Arrays.copyOf(this.ref, capacity);
+		}
+		int i = size++;
+		x[i] = X;
+		y[i] = Y;
+		this.radius[i] = radius;
+		this.level[i] = level.ordinal();
+		this.collidesWith[i] = collidesWith;
+		this.team[i] = team;
+		this.ref[i] = ref;
+	}
+
+	public void add(StaticSprite s, int ref)
+	{
+		int team = s instanceof IntelligentSprite ? ((IntelligentSprite)s).getTeam() : -1;
+		add(s.getExistsOnLevel(), s.getCollidesWithMask(), team, s.getX(), s.getY(), s.getWidth()/2, ref);
+	}
+
+	// test every pair of bodies added since clear(), calling the handler for each that touch
+	public void run()
+	{
+		if (size < broadPhaseBodies)
+			runBruteForce();
+		else
+			runGrid();
+	}
+
+	void runBruteForce()
+	{
+		for (int i = 0; i < size; i++)
+		{
+			for (int j = i + 1; j < size; j++)
+				test(i, j);
+		}
+	}
+
+	void runGrid()
+	{
+		runGrid(size >= parallelBodies ? partitions.length : 1);
+	}
+
+	void runGrid(int parts)
+	{
+		grid.clear();
+		for (int i = 0; i < size; i++)
+		{
+			if (radius[i] <= largeRadius)
+				grid.insert(i, x[i], y[i], radius[i]);
+		}
+		parts = Math.max(1, Math.min(parts, partitions.length));
+		for (int p = 0; p < parts; p++)
+		{
+			partitions[p].reinitialize();
+			partitions[p].from = (int)((long)size * p / parts);
+			partitions[p].to = (int)((long)size * (p + 1) / parts);
+		}
+		if (parts == 1)
+			partitions[0].compute();
+		else
+			ForkJoinTask.invokeAll(Arrays.copyOf(partitions, parts));
+		for (int p = 0; p < parts; p++)
+		{
+			int[] hits = partitions[p].hits;
+			for (int h = 0, n = partitions[p].hitCount; h < n; h += 2)
+				collide(hits[h], hits[h + 1]);
+		}
+	}
+
+	// write down every pair from body from up to body to that touches, in the order they're found
+	private void scan(Partition into)
+	{
+		for (int i = into.from; i < into.to; i++)
+		{
+			if (radius[i] <= largeRadius)
+			{
+				// small bodies only meet each other through the grid, each pair once
+				float reach = radius[i] + grid.getMaxRadius();
+				int n = grid.query(x[i], y[i], reach, into.found);
+				if (n > into.found.length)
+				{
+					into.found = new int[Math.max(n, into.found.length * 2)];
+					grid.query(x[i], y[i], reach, into.found);
+				}
+				for (int k = 0; k < n; k++)
+				{
+					int j = into.found[k];
+					if (j > i && touches(i, j))
+						into.add(i, j);
+				}
+			}
+			else
+			{
+				// large bodies are tested against every small body and every later large one
+				for (int j = 0; j < size; j++)
+				{
+					if (j != i && (radius[j] <= largeRadius || j > i) && touches(Math.min(i, j), Math.max(i, j)))
+						into.add(Math.min(i, j), Math.max(i, j));
+				}
+			}
+		}
+	}
+
+	private void test(int i, int j)
+	{
+		if (touches(i, j))
+			collide(i, j);
+	}
+
+	private boolean touches(int i, int j)
+	{
+		int li = level[i], lj = level[j];
+		if ((pairs[li] & (1 << lj)) == 0 || (collidesWith[i] & (1 << lj)) == 0 || (collidesWith[j] & (1 << li)) == 0)
+			return false;
+		if ((friendly[li] & (1 << lj)) != 0 && team[i] == team[j] && team[i] != -1)
+			return false;
+		float dx = x[j] - x[i], dy = y[j] - y[i], r = radius[i] + radius[j];
+		return dx * dx + dy * dy <= r * r;
+	}
+
+	private void collide(int i, int j)
+	{
+		handlers[level[i] * LEVELS + level[j]].collide(ref[i], ref[j]);
+	}
+
+	// one thread's run of bodies, and the touching pairs it found there
+	private final class Partition extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private int from;
+		private int to;
+		private int[] found = new int[64];
+		private int[] hits = new int[64]; // body indices, two to a pair
+		private int hitCount;
+
+		@Override
+		protected void compute()
+		{
+			hitCount = 0;
+			scan(this);
+		}
+
+		private void add(int i, int j)
+		{
+			if (hitCount + 2 > hits.length)
+				hits = Arrays.copyOf(hits, hits.length * 2);
+			hits[hitCount++] = i;
+			hits[hitCount++] = j;
+		}
+	}
+}
@@ -22,9 +22,7 @@
 
 package spacewar;
 
-import java.awt.Graphics;
 import java.awt.image.BufferedImage;
-import java.awt.image.ImageObserver;
 
 /* This is the next sprite class up from StaticSprite.  It moves, but does not fire, and is not controllable.  It can die.  It is used for projectiles. */
 public class DynamicSprite extends StaticSprite
@@ -44,7 +42,8 @@ public class DynamicSprite extends StaticSprite
 	public void setVVelocity(float vVelocity) { this.vVelocity = vVelocity; }
 	public int getRotation() { return this.rotation; }
 	public void setRotation(int rotation) { this.rotation = rotation; }
-	public BufferedImage getRotBufImg() { return this.rotBufImg; };
+	public void setBufImg(BufferedImage bufImg) { this.bufImg = bufImg; this.rotate(0); };
+	public BufferedImage getRotBufImg() { if (this.rotBufImg == null && this.bufImg != null) this.rotBufImg = RotationCache.getRotatedImage(this.bufImg, this.rotation * 22.5); return this.rotBufImg; };
 	public void setRotBufImg(BufferedImage imgRotatedShip) { this.rotBufImg = imgRotatedShip; };
 
 	// constructors
@@ -56,17 +55,11 @@ public class DynamicSprite extends StaticSprite
 		this.rotate(0);
 	}
 
-	// overridden draw method, draws the rotated image, not the regular one
-	void draw(Graphics g, ImageObserver imOb)
-	{
-		if (this.visible == true)
-			g.drawImage(this.rotBufImg, Math.round(this.X) - this.width/2, Math.round(this.Y) - this.height/2, this.width, this.height, imOb);
-	}
-
 	void rotate(int rotation)
 	{
 		this.rotation = this.rotation + rotation;
-		this.rotBufImg = ImagesOperator.getRotatedImage(this.bufImg, (int)(this.rotation * 22.5));
+		// the rotated image is only looked up if it is drawn without an atlas
+		this.rotBufImg = null;
 		//this.setRotBufImg(ImagesOperator.getRotatedImage(this.getBufImg(), (int)(this.getRotation() * 22.5)));
 	}
 	
@@ -0,0 +1,349 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+
+/* The player's end of a GameServer match.  Instead of ticking a world of its
+ * own, it sends the player's input to the server and shows what the server's
+ * snapshots say.  It keeps the snapshots of the last SnapshotCodec.HISTORY
+ * ticks for the server's deltas to build on, and tells the server the newest
+ * with each input.  Nothing here blocks: call sendInput() and poll() once a
+ * frame.  Until the server has given it a seat it repeats its HELLO every
+ * HELLO_INTERVAL_NANOS.
+ *
+ * So that the player's own ship answers the keys at once, it is predicted:
+ * each input moves it a tick straight away with GameWorld.predict(), and
+ * each new snapshot puts it back where the server had it and runs the
+ * inputs the server had not taken yet over it again.  Everything else is
+ * shown a little in the past, blended between the snapshots either side, so
+ * that it moves smoothly however far apart they come.  How far in the past
+ * is a jitter buffer: the gap between snapshots plus twice how much their
+ * arrival wanders.
+ */
+public class GameClient implements Closeable
+{
+	static final long HELLO_INTERVAL_NANOS = 500000000L;
+	static final int INPUT_REDUNDANCY = 8; // how many of the latest inputs go in each packet
+	static final int INPUT_HISTORY = 128; // inputs kept to run again; over two seconds' worth
+
+	private final GameWorld world;
+	private final DatagramChannel channel;
+	private final ByteBuffer in = ByteBuffer.allocateDirect(GameServer.MAX_PACKET).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer out = ByteBuffer.allocateDirect(GameServer.MAX_PACKET).order(ByteOrder.LITTLE_ENDIAN);
+	private final int[] sentSequence = new int[INPUT_REDUNDANCY];
+	private final int[] sentActions = new int[INPUT_REDUNDANCY];
+	private final int[] inputs = new int[INPUT_HISTORY]; // by sequence
+	private final SnapshotCodec codec = new SnapshotCodec();
+	private final SnapshotCodec.History history = codec.newHistory();
+	private final IntelligentSprite predicted = new IntelligentSprite();
+	private LinkConditioner conditioner;
+	private boolean prediction = true;
+	private boolean interpolation = true;
+	private int player = -1;
+	private boolean full;
+	private boolean mismatched; // the server's match has other ships or teams than our world
+	private int sequence;
+	private long lastHello;
+	private long stateTick = -1; // the tick of the newest snapshot
+	private int ackedSequence; // the newest of our inputs the server had acted on by then
+	private long stateHash;
+	private long badStates; // packets too short or garbled to read
+	private long lostBaselines; // deltas from snapshots no longer kept
+	private boolean predicting; // whether our ship is alive in a running match
+	private double clockOffset; // server ticks ahead of our clock, in ticks
+	private double jitter; // how far arrivals stray from that, on average
+	private double interval; // ticks between snapshots, on average
+	private double renderTick = -1; // the server tick on show
+	private long corrections;
+	private double correctionTotal, correctionMax; // pixels the prediction was out by
+
+	public GameClient(GameMap map, SocketAddress server) throws IOException
+	{
+		this(map, 2, 2, server);
+	}
+
+	// for a server running a match of ships ships on teams teams
+	public GameClient(GameMap map, int ships, int teams, SocketAddress server) throws IOException
+	{
+		this.world = new GameWorld(map, 0, ships, teams);
+		this.predicted.setTopSpeed(GameWorld.SHIP_TOP_SPEED);
+		this.channel = DatagramChannel.open();
+		this.channel.configureBlocking(false);
+		this.channel.connect(server);
+	}
+
+	// accessors
+	public GameWorld getWorld() { return this.world; }
+	public int getPlayer() { return this.player; }
+	public boolean getFull() { return this.full; }
+	public boolean getMismatched() { return this.mismatched; }
+	public int getSequence() { return this.sequence; }
+	public long getStateTick() { return this.stateTick; }
+	public int getAckedSequence() { return this.ackedSequence; }
+	public long getStateHash() { return this.stateHash; }
+	public long getBadStates() { return this.badStates; }
+	public long getLostBaselines() { return this.lostBaselines; }
+	public double getRenderTick() { return this.renderTick; }
+	public long getCorrections() { return this.corrections; }
+	public double getCorrectionTotal() { return this.correctionTotal; }
+	public double getCorrectionMax() { return this.correctionMax; }
+	public boolean getPrediction() { return this.prediction; }
+	public void setPrediction(boolean prediction) { this.prediction = prediction; }
+	public boolean getInterpolation() { return this.interpolation; }
+	public void setInterpolation(boolean interpolation) { this.interpolation = interpolation; }
+	public void setConditioner(LinkConditioner conditioner) { this.conditioner = conditioner; }
+
+	// ticks behind the newest snapshot that the world is shown
+	public double getBufferTicks()
+	{
+		return interpolation ? interval + 2 * jitter : 0;
+	}
+
+	// send the player's actions since the last call, along with the last few sent
+	public void sendInput(int actions) throws IOException
+	{
+		if (player == -1)
+			return;
+		sequence++;
+		inputs[sequence % INPUT_HISTORY] = actions;
+		if (predicting)
+			world.predict(predicted, actions);
+		System.arraycopy(sentSequence, 1, sentSequence, 0, INPUT_REDUNDANCY - 1);
+		System.arraycopy(sentActions, 1, sentActions, 0, INPUT_REDUNDANCY - 1);
+		sentSequence[INPUT_REDUNDANCY - 1] = sequence;
+		sentActions[INPUT_REDUNDANCY - 1] = actions;
+		int n = Math.min(sequence, INPUT_REDUNDANCY);
+		out.clear();
+		out.put(GameServer.INPUT).putLong(stateTick).put((byte)n);
+		for (int k = INPUT_REDUNDANCY - n; k < INPUT_REDUNDANCY; k++)
+			out.putInt(sentSequence[k]).putInt(sentActions[k]);
+		send();
+	}
+
+	/* Take in everything the server has sent, and show the world as of now;
+	 * true if there is anything to show.
+	 */
+	public boolean poll() throws IOException
+	{
+		if (conditioner != null)
+			conditioner.flush(channel);
+		if (player == -1 && !full && !mismatched && System.nanoTime() - lastHello > HELLO_INTERVAL_NANOS)
+		{
+			lastHello = System.nanoTime();
+			out.clear();
+			out.put(GameServer.HELLO).put((byte)GameServer.PROTOCOL_VERSION);
+			send();
+		}
+		while (receive())
+			;
+		return stateTick >= 0 && present(System.nanoTime());
+	}
+
+	// take in one packet, if there is one
+	private boolean receive() throws IOException
+	{
+		in.clear();
+		try
+		{
+			if (channel.receive(in) == null)
+				return false;
+		}
+		catch (PortUnreachableException e)
+		{
+			// nothing is listening yet; keep saying hello
+			return false;
+		}
+		in.flip();
+		if (in.remaining() == 0)
+			return true;
+		switch (in.get())
+		{
+			case GameServer.WELCOME:
+				if (in.remaining() < 6)
+				{
+					badStates++;
+					break;
+				}
+				int seat = in.getShort(), ships = in.getShort(), teams = in.getShort();
+				if (ships == world.getShips().size() && teams == world.getTeams())
+					player = seat;
+				else
+					mismatched = true;
+				break;
+			case GameServer.FULL:
+				full = true;
+				break;
+			case GameServer.DELTA:
+				if (player == -1)
+					break;
+				if (in.remaining() < 4)
+				{
+					badStates++;
+					break;
+				}
+				int acked = in.getInt();
+				SnapshotCodec.Frame frame;
+				try
+				{
+					frame = codec.decode(in, history);
+				}
+				catch (IllegalArgumentException | BufferUnderflowException e)
+				{
+					badStates++;
+					break;
+				}
+				if (frame == null)
+					lostBaselines++;
+				else if (frame.getTick() > stateTick) // else late, or out of order
+				{
+					arrived(frame.getTick(), System.nanoTime());
+					stateTick = frame.getTick();
+					stateHash = frame.getHash();
+					reconcile(frame, acked);
+				}
+				break;
+		}
+		return true;
+	}
+
+	// keep the jitter buffer's averages up to date with a snapshot that came in now
+	private void arrived(long tick, long now)
+	{
+		double sample = tick - now * (double)GameWorld.TICKS_PER_SECOND / 1e9;
+		if (stateTick < 0)
+		{
+			clockOffset = sample;
+			return;
+		}
+		double deviation = sample - clockOffset;
+		clockOffset += deviation / 16;
+		jitter += (Math.abs(deviation) - jitter) / 16;
+		interval = interval == 0 ? tick - stateTick : interval + ((tick - stateTick) - interval) / 8;
+	}
+
+	/* Put our ship where the server had it, and run it on over the inputs the
+	 * server had not acted on yet.  A hyperspace jump lands somewhere only the
+	 * server knows, so the jump to it is not counted as a correction.
+	 */
+	private void reconcile(SnapshotCodec.Frame frame, int acked)
+	{
+		float X = predicted.getX(), Y = predicted.getY();
+		boolean was = predicting;
+		for (int s = Math.max(ackedSequence, acked - INPUT_HISTORY) + 1; s <= acked; s++)
+		{
+			if ((inputs[s % INPUT_HISTORY] & GameWorld.Action.HYPERSPACE.mask()) != 0)
+				was = false;
+		}
+		ackedSequence = acked;
+		codec.ship(frame, player, predicted);
+		predicting = prediction && frame.getGameState() == GameWorld.GameState.RUNNING && predicted.getAlive();
+		if (!predicting)
+			return;
+		for (int s = Math.max(ackedSequence, sequence - INPUT_HISTORY) + 1; s <= sequence; s++)
+			world.predict(predicted, inputs[s % INPUT_HISTORY]);
+		if (was)
+		{
+			// how far off the prediction was, the short way round
+			double dx = Math.abs(predicted.getX() - X), dy = Math.abs(predicted.getY() - Y);
+			double error = Math.hypot(Math.min(dx, GameWorld.PWIDTH - dx), Math.min(dy, GameWorld.PHEIGHT - dy));
+			corrections++;
+			correctionTotal += error;
+			correctionMax = Math.max(correctionMax, error);
+		}
+	}
+
+	/* Show the world as it was getBufferTicks() behind the newest snapshot,
+	 * blended between the snapshots either side, with our ship where we
+	 * predict it is now.
+	 */
+	private boolean present(long now)
+	{
+		double target = stateTick;
+		if (interpolation)
+			target = Math.min(Math.max(now * (double)GameWorld.TICKS_PER_SECOND / 1e9 + clockOffset - getBufferTicks(), renderTick), stateTick);
+		SnapshotCodec.Frame a = null, b = null;
+		// not below tick 0, where history's frames not yet filled would pass for tick -1
+		for (long t = (long)Math.floor(target); a == null && t >= 0 && t > stateTick - SnapshotCodec.HISTORY; t--)
+			a = history.get(t);
+		if (a == null)
+			return false;
+		for (long t = a.getTick() + 1; interpolation && b == null && t <= stateTick; t++)
+			b = history.get(t);
+		renderTick = target;
+
+		codec.apply(a, world);
+		if (b != null)
+			codec.blend(a, b, (float)((target - a.getTick()) / (b.getTick() - a.getTick())), world, predicting ? player : -1);
+		if (predicting)
+		{
+			IntelligentSprite i = world.getShips().get(player);
+			i.setX(predicted.getX());
+			i.setY(predicted.getY());
+			i.setHVelocity(predicted.getHVelocity());
+			i.setVVelocity(predicted.getVVelocity());
+			if (Math.floorMod(i.getRotation(), 16) != Math.floorMod(predicted.getRotation(), 16))
+			{
+				i.setRotation(Math.floorMod(predicted.getRotation(), 16));
+				i.rotate(0); // bring the rotated image up to date
+			}
+		}
+		return true;
+	}
+
+	public void close() throws IOException
+	{
+		if (player != -1)
+		{
+			out.clear();
+			out.put(GameServer.BYE);
+			// straight out, since nothing will flush a conditioner after this
+			out.flip();
+			channel.write(out);
+		}
+		channel.close();
+	}
+
+	private void send() throws IOException
+	{
+		out.flip();
+		try
+		{
+			if (conditioner != null)
+				conditioner.send(channel, out, null);
+			else
+				channel.write(out);
+		}
+		catch (PortUnreachableException e)
+		{
+			// as good as lost; UDP promises no more
+		}
+	}
+}
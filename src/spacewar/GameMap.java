@@ -0,0 +1,136 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/* The layout of an arena: where its planets start, how big and heavy they are,
+ * and which of them move.  A map is filled in once with addPlanet() and then
+ * only read, so one map can be shared by every match played on it.  The
+ * last step of building a map is bakeGravity(), which, if enough of its
+ * planets stay put, bakes their gravity into a GravityField that every match
+ * then samples instead of summing over those planets.
+ */
+public class GameMap
+{
+	// see GravityBenchmark for both
+	public static final int GRAVITY_SPACING = 4; // pixels between a baked field's nodes
+	public static final int BAKE_PLANETS = 3; // static planets before sampling a field beats summing them
+
+	/* The original single planet in the middle of the screen.  Its mass is the
+	 * gravitational constant times the planet's mass, G = 2.5 and M = 2.5, as
+	 * GamePanel always had them.  One planet is quicker to sum than to sample,
+	 * so bakeGravity() leaves it summed.
+	 */
+	public static final GameMap CLASSIC = new GameMap("Classic")
+		.addPlanet(GameWorld.PWIDTH/2, GameWorld.PHEIGHT/2, 100, 2.5f * 2.5f)
+		.bakeGravity(GRAVITY_SPACING);
+
+	public static class Planet
+	{
+		private final float X;
+		private final float Y;
+		private final int size;
+		private final float mass;
+		private final float hVelocity;
+		private final float vVelocity;
+		private final boolean mobile;
+
+		Planet(float X, float Y, int size, float mass, float hVelocity, float vVelocity, boolean mobile)
+		{
+			this.X = X;
+			this.Y = Y;
+			this.size = size;
+			this.mass = mass;
+			this.hVelocity = hVelocity;
+			this.vVelocity = vVelocity;
+			this.mobile = mobile;
+		}
+
+		public float getX() { return this.X; }
+		public float getY() { return this.Y; }
+		public int getSize() { return this.size; }
+		public float getMass() { return this.mass; }
+		public float getHVelocity() { return this.hVelocity; }
+		public float getVVelocity() { return this.vVelocity; }
+		public boolean getMobile() { return this.mobile; }
+	}
+
+	private final String name;
+	private final ArrayList<Planet> planets = new ArrayList<Planet>();
+	private boolean baked;
+	private GravityField gravityField;
+
+	public GameMap(String name)
+	{
+		this.name = name;
+	}
+
+	public String getName() { return this.name; }
+	public List<Planet> getPlanets() { return Collections.unmodifiableList(this.planets); }
+	public GravityField getGravityField() { return this.gravityField; }
+	// pixels between the baked field's nodes, or 0 if the map has none
+	public int getGravitySpacing() { return this.gravityField == null ? 0 : this.gravityField.getSpacing(); }
+
+	/* Work out the static planets' gravity on a grid with nodes spacing pixels
+	 * apart, if there are at least BAKE_PLANETS of them; fewer are quicker to
+	 * sum.  It is the last step of building the map, after every addPlanet()
+	 * and before any match is played on it, so a match never sees the field
+	 * change under it.
+	 */
+	public GameMap bakeGravity(int spacing)
+	{
+		if (baked)
+			throw new IllegalStateException("gravity is already baked");
+		baked = true;
+		int still = 0;
+		for (Planet p : planets)
+		{
+			if (p.getMobile() == false)
+				still++;
+		}
+		if (still >= BAKE_PLANETS)
+			gravityField = new GravityField(planets, GameWorld.PWIDTH, GameWorld.PHEIGHT, spacing);
+		return this;
+	}
+
+	// a planet that never moves
+	public GameMap addPlanet(float X, float Y, int size, float mass)
+	{
+		if (baked)
+			throw new IllegalStateException("planets go in before gravity is baked");
+		planets.add(new Planet(X, Y, size, mass, 0, 0, false));
+		return this;
+	}
+
+	// a planet that drifts, and is pulled by every other planet as it goes
+	public GameMap addPlanet(float X, float Y, int size, float mass, float hVelocity, float vVelocity)
+	{
+		if (baked)
+			throw new IllegalStateException("planets go in before gravity is baked");
+		planets.add(new Planet(X, Y, size, mass, hVelocity, vVelocity, true));
+		return this;
+	}
+}
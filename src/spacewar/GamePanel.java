@@ -24,49 +24,68 @@ package spacewar;
 
 import javax.swing.*;
 
-import spacewar.StaticSprite.Level;
+import spacewar.GameWorld.Action;
+import spacewar.GameWorld.GameState;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
+import java.awt.image.VolatileImage;
+import java.io.IOException;
+import java.util.Arrays;
 
-public class GamePanel extends JApplet implements Runnable, KeyListener, MouseListener
+/* The view over a GameWorld.  It loads the images and sounds, turns key presses
+ * into per-tick input for the world, and renders and paints whatever state the
+ * world is in.  The world is always a seeded, deterministic one, so that the
+ * input can be recorded with a ReplayWriter, or a ReplayReader can stand in
+ * for the keyboard and play a recorded match back at several ticks a frame.
+ * Connected to a GameServer through a GameClient, it sends the keyboard's
+ * input to the server instead and shows the world the server sends back.
+ *
+ * As an applet it renders into an accelerated back buffer and repaint()
+ * asks the event thread to copy it to the screen, whenever it gets round
+ * to it.  With setActiveRendering() it instead draws on a Canvas through a
+ * BufferStrategy and flips or blits each frame itself, on the game thread,
+ * as soon as it is drawn; no frame waits on the event queue or gets
+ * coalesced away.  Either way it keeps count of how long a finished frame
+ * took to reach the screen.  With setSoftwareRendering() the frame is drawn
+ * by a SoftwareRenderer instead of through Java2D, and copied over whole.
+ *
+ * The world ticks on the game thread and frames are drawn on a render thread
+ * of their own, so a slow frame never holds a tick up.  After each tick the
+ * game thread captures what there is to draw into a RenderFrame and
+ * publishes it through a TripleBuffer; the render thread draws the newest
+ * one, part of the way back towards the one before, at whatever frame rate
+ * it is set to.  Keys and clicks go the other way, from the event thread to
+ * the game thread, through an InputQueue, so the world is only ever changed
+ * on the game thread.
+ */
+public class GamePanel extends JApplet implements Runnable, KeyListener, MouseListener, GameListener
 {
 	private static final long serialVersionUID = 1L;
-	private static final int PWIDTH = 800;
-	private static final int PHEIGHT = 600;
-	private static final int MAX_FRAME_SKIPS = 5;
-	private static final int MAX_FRAME_RATE = 60;
-	private static final int SHIP_TOP_SPEED = 6;
-	private static final int SHIP_TOP_ENERGY = 50;
-	private static final int SLUG_SPEED = 6;
-	private static final int TORPEDO_SPEED = 6;
-	private static final int CLOAK_SECONDS = 4;
-	private static final int TORPEDO_DAMAGE = 10;
-	private static final int SLUG_DAMAGE = 5;
-	private static final int PLANET_DAMAGE = 5;
-	private static final int SHIP_DAMAGE = 2;
+	private static final int PWIDTH = GameWorld.PWIDTH;
+	private static final int PHEIGHT = GameWorld.PHEIGHT;
+	private static final int MAX_CATCH_UP = 5; // ticks run back to back to catch up, before the time is let go
+	private static final int UPDATE_RATE = GameWorld.TICKS_PER_SECOND;
+	private static final int INPUT_CAPACITY = 256; // commands between two ticks, far more than hands can manage
 	private Thread animator; // for the animation
-	private ArrayList<SpriteAnimation> spriteAnimations = new ArrayList<SpriteAnimation>();
+	private Thread renderer; // for the frames
+	private volatile boolean running;
+	private volatile int frameRate = defaultFrameRate(); // 0 for as many as it can draw
 	private double avgups, avgfps;
-	
-	public static enum GameState
-	{
-		PRE, RUNNING, PAUSED, OVER;
-	}
-	private GameState gameState = GameState.PRE;
 
 	// global variables for off-screen rendering
-	private Graphics2D dbg;
-	private Image dbImage = null;
+	private VolatileImage dbImage = null;
+	private Canvas canvas; // only when rendering actively
+	private BufferStrategy strategy;
+	// when the newest frame was drawn, and the time from then until it was on screen
+	private volatile long frameReady;
+	private volatile long presented, presentNanos, presentMaxNanos;
+	private long rendered;
 
 	int mouseX = 0, mouseY = 0;
-	int player1Wins = 0, player2Wins = 0;
-	
-	final double G = 2.5; // 6.674e-11 // gravitational constant
-	final double M = 2.5; // 5.9722e24 // Earth mass
-	final double R = 0.0; // 6.3671e6 // Earth radius
+
 	ImagesLoader il = new ImagesLoader();
 	//BufferedImage imgShip1 = il.loadImage("Ship1.png");
 	//BufferedImage imgShip2 = il.loadImage("Ship2.png");
@@ -76,27 +95,71 @@ public class GamePanel extends JApplet implements Runnable, KeyListener, MouseLi
 	BufferedImage imgTorpedo = il.loadImage("Torpedo.png");
 	BufferedImage imgPlanet = il.loadImage("Planet.png");
 	BufferedImage imgStarfield = il.loadImage("Starfield.png");
-	BufferedImage[] imgsExplosion = il.loadStripImageArray("Explosion.png", 10);
-	BufferedImage[] imgsShield = il.loadStripImageArray("Shield.png", 1);
+	BufferedImage imgExplosion = il.loadImage("Explosion.png");
+	BufferedImage imgShield = il.loadImage("Shield.png");
+	// the sprites, their rotations and the animation frames, all on a page or two
+	private final SpriteAtlas atlas = new SpriteAtlas();
+	private SpriteAtlas.Region[] explosionFrames, shieldFrames;
+	// the starfield and the planets that never move, drawn once
+	private final BackgroundLayer background = new BackgroundLayer(imgStarfield);
+	// the title screen and the energy bars, drawn once and redrawn only when they change
+	private final Hud hud = new Hud();
+	private SoftwareRenderer software; // only when rendering in software
+	// what each tick leaves to draw, on its way from the game thread to the render thread
+	private final TripleBuffer<RenderFrame> frames = new TripleBuffer<RenderFrame>(
+		new RenderFrame(imgSlug, imgTorpedo), new RenderFrame(imgSlug, imgTorpedo), new RenderFrame(imgSlug, imgTorpedo));
+	private long publishedTick;
+	private RenderFrame published; // the game thread's last, for the next to start from
 	
 	AudioClip ship_explosion = new AudioClip("ship_explosion.wav");
 	AudioClip ship_warp = new AudioClip("ship_warp.wav");
 	AudioClip slug_launch = new AudioClip("slug_launch.wav");
 	AudioClip torpedo_explosion = new AudioClip("torpedo_explosion.wav");
 	AudioClip torpedo_launch = new AudioClip("torpedo_launch.wav");
-	
-	StaticSprite planet = new StaticSprite(imgPlanet);
-	IntelligentSprite player1 = new IntelligentSprite(imgShip1);
-	IntelligentSprite player2 = new IntelligentSprite(imgShip2);
-	
-	ArrayList<StaticSprite> planets = new ArrayList<StaticSprite>();
-	//List<DynamicSprite> slugs = Collections.synchronizedList(new ArrayList<DynamicSprite>());
-	ArrayList<DynamicSprite> slugs = new ArrayList<DynamicSprite>();
-	ArrayList<DynamicSprite> torpedoes = new ArrayList<DynamicSprite>();
-	ArrayList<IntelligentSprite> ships = new ArrayList<IntelligentSprite>();
+
+	private final long seed;
+	GameWorld world;
+	// keys and clicks from the event thread, taken at the start of each tick
+	private final InputQueue inputQueue = new InputQueue(INPUT_CAPACITY);
+	// what they came to this tick: one mask of actions per player, and the clicks, X then Y
+	private final int[] tickInput = new int[2];
+	private int[] clicks = new int[16];
+	private int clickCount;
+	private ReplayWriter recorder;
+	private final ReplayReader replay;
+	private final int replaySpeed;
+	private final GameClient client;
 
 	public GamePanel()
 	{
+		this(System.nanoTime());
+	}
+
+	private GamePanel(long seed)
+	{
+		this(new GameWorld(GameMap.CLASSIC, seed), seed, null, 1, null);
+	}
+
+	// play back a recorded match, replaySpeed ticks to a frame
+	public GamePanel(ReplayReader replay, int replaySpeed)
+	{
+		this(replay.newWorld(GameMap.CLASSIC), replay.getSeed(), replay, replaySpeed, null);
+	}
+
+	// play on a server
+	public GamePanel(GameClient client)
+	{
+		this(client.getWorld(), 0, null, 1, client);
+	}
+
+	private GamePanel(GameWorld world, long seed, ReplayReader replay, int replaySpeed, GameClient client)
+	{
+		this.world = world;
+		this.seed = seed;
+		this.replay = replay;
+		this.replaySpeed = replaySpeed;
+		this.client = client;
+
 		//String userDir = System.getProperty("user.dir");
 		//JOptionPane.showMessageDialog(null, userDir);
 		setBackground(Color.BLACK);
@@ -105,9 +168,66 @@ public class GamePanel extends JApplet implements Runnable, KeyListener, MouseLi
 		requestFocus(); // JPanel now receives key events
 		readyForTermination();
 
-		initializeGame();
+		// every rotation of the sprite images is made once, here, instead of on every turn or shot
+		atlas.addRotations(imgShip1);
+		atlas.addRotations(imgShip2);
+		atlas.addRotations(imgSlug);
+		atlas.addRotations(imgTorpedo);
+		atlas.add(imgPlanet);
+		atlas.addStrip(imgExplosion, SpriteAnimation.Effect.EXPLOSION.getFrameCount());
+		atlas.addStrip(imgShield, SpriteAnimation.Effect.SHIELD.getFrameCount());
+		atlas.pack();
+		explosionFrames = atlas.getStrip(imgExplosion);
+		shieldFrames = atlas.getStrip(imgShield);
+
+		world.setListener(this);
+		for (StaticSprite planet : world.getPlanets())
+			planet.setBufImg(imgPlanet);
+		// in an arena the teams take turns at the two ship images
+		for (IntelligentSprite i : world.getShips())
+			i.setBufImg(i.getTeam() % 2 == 0 ? imgShip1 : imgShip2);
 	} // end of GamePanel() constructor
 	
+	// accessors
+	public long getSeed() { return this.seed; }
+	public void setRecorder(ReplayWriter recorder) { this.recorder = recorder; }
+	public boolean getActiveRendering() { return this.canvas != null; }
+	public boolean getSoftwareRendering() { return this.software != null; }
+	public int getFrameRate() { return this.frameRate; }
+	public void setFrameRate(int frameRate) { this.frameRate = Math.max(frameRate, 0); }
+	public void setSoftwareRendering(boolean software) { this.software = software ? new SoftwareRenderer(PWIDTH, PHEIGHT) : null; }
+	public long getRendered() { return this.rendered; }
+	public long getPresented() { return this.presented; }
+	public double getPresentLatency() { return this.presented == 0 ? 0 : this.presentNanos / 1e6d / this.presented; }
+	public double getPresentLatencyMax() { return this.presentMaxNanos / 1e6d; }
+	public InputQueue getInputQueue() { return this.inputQueue; }
+
+	/* Draw on a Canvas of our own through a BufferStrategy instead of repainting.
+	 * Call it before the panel is added to its frame.
+	 */
+	public void setActiveRendering(boolean active)
+	{
+		if (active == (canvas != null))
+			return;
+		if (active)
+		{
+			canvas = new Canvas();
+			canvas.setIgnoreRepaint(true); // we paint it ourselves, every frame
+			canvas.setBackground(Color.BLACK);
+			canvas.setPreferredSize(new Dimension(PWIDTH, PHEIGHT));
+			canvas.setFocusable(true);
+			canvas.addKeyListener(this);
+			canvas.addMouseListener(this);
+			getContentPane().add(canvas, BorderLayout.CENTER);
+		}
+		else
+		{
+			getContentPane().remove(canvas);
+			canvas = null;
+		}
+		setIgnoreRepaint(active);
+	}
+
 	public void addNotify()
 	{
 		/* Wait for the JPanel to be added to the FRame/JApplet before starting. */
@@ -126,231 +246,250 @@ public class GamePanel extends JApplet implements Runnable, KeyListener, MouseLi
 		switch (ke.getKeyCode())
 		{
 			case KeyEvent.VK_Q:
-				if (gameState == GameState.RUNNING) shootSlug(player1);
+				press(0, Action.SLUG);
 				break;
 			case KeyEvent.VK_W:
-				if (gameState == GameState.RUNNING) cloak(player1);
+				press(0, Action.CLOAK);
 				break;
 			case KeyEvent.VK_E:
-				if (gameState == GameState.RUNNING) shootTorpedo(player1);
+				press(0, Action.TORPEDO);
 				break;
 			case KeyEvent.VK_A:
-				if (gameState == GameState.RUNNING) player1.rotate(-1); // rotate left
+				press(0, Action.ROTATE_CCW); // rotate left
 				break;
 			case KeyEvent.VK_S:
-				if (gameState == GameState.RUNNING) player1.accelerate(1); // rotate right
+				press(0, Action.THRUST);
 				break;
 			case KeyEvent.VK_D:
-				if (gameState == GameState.RUNNING) player1.rotate(1); // rotate right
+				press(0, Action.ROTATE_CW); // rotate right
 				break;
 			case KeyEvent.VK_Z:
-				if (gameState == GameState.RUNNING) player1.transferStoW(); // weapon energy
+				press(0, Action.WEAPON_ENERGY); // weapon energy
 				break;
 			case KeyEvent.VK_X:
-				if (gameState == GameState.RUNNING) hyperspace(player1);
+				press(0, Action.HYPERSPACE);
 				break;
 			case KeyEvent.VK_C:
-				if (gameState == GameState.RUNNING) player1.transferWtoS(); // shield energy
+				press(0, Action.SHIELD_ENERGY); // shield energy
 				break;
 			case KeyEvent.VK_NUMPAD7:
-				if (gameState == GameState.RUNNING) shootSlug(player2);
+				press(1, Action.SLUG);
 				break;
 			case KeyEvent.VK_NUMPAD8:
-				if (gameState == GameState.RUNNING) cloak(player2);
+				press(1, Action.CLOAK);
 				break;
 			case KeyEvent.VK_NUMPAD9:
-				if (gameState == GameState.RUNNING) shootTorpedo(player2);
+				press(1, Action.TORPEDO);
 				break;
 			case KeyEvent.VK_NUMPAD4:
-				if (gameState == GameState.RUNNING) player2.rotate(-1); // rotate left
+				press(1, Action.ROTATE_CCW); // rotate left
 				break;
 			case KeyEvent.VK_NUMPAD5:
-				if (gameState == GameState.RUNNING) player2.accelerate(1); // rotate right
+				press(1, Action.THRUST);
 				break;
 			case KeyEvent.VK_NUMPAD6:
-				if (gameState == GameState.RUNNING) player2.rotate(1); // rotate right
+				press(1, Action.ROTATE_CW); // rotate right
 				break;
 			case KeyEvent.VK_NUMPAD1:
-				if (gameState == GameState.RUNNING) player2.transferStoW(); // weapon energy
+				press(1, Action.WEAPON_ENERGY); // weapon energy
 				break;
 			case KeyEvent.VK_NUMPAD2:
-				if (gameState == GameState.RUNNING) hyperspace(player2);
+				press(1, Action.HYPERSPACE);
 				break;
 			case KeyEvent.VK_NUMPAD3:
-				if (gameState == GameState.RUNNING) player2.transferWtoS(); // shield energy
+				press(1, Action.SHIELD_ENERGY); // shield energy
 				break;
 			case KeyEvent.VK_P:
-				if (gameState == GameState.RUNNING)
-					stopGame();
-				else
-					resumeGame();
+				if (client == null) // the server decides
+					inputQueue.offer(InputQueue.PAUSE, 0, 0);
 				break;
 			case KeyEvent.VK_ESCAPE:
-				this.endGame();
+				inputQueue.offer(InputQueue.END, 0, 0);
 		}
 	}
 	public void keyReleased(KeyEvent ke) {}
 	public void keyTyped(KeyEvent ke) {}
 
+	// the world, or the server, reads it on the next tick
+	private void press(int player, Action action)
+	{
+		if (replay == null)
+			inputQueue.offer(InputQueue.ACTION, player, action.mask());
+	}
+
 	public void mouseClicked(MouseEvent e)
 	{
 		mouseX = e.getX();
 		mouseY = e.getY();
-		spriteAnimations.add(new SpriteAnimation(imgsExplosion, 1.0, false, mouseX, mouseY));
-		torpedo_explosion.play();
+		if (replay == null && client == null)
+			inputQueue.offer(InputQueue.CLICK, mouseX, mouseY);
+	}
+
+	/* Take what the event thread has queued since the last tick, in the order
+	 * it came: pause and end at once, and actions and clicks into tickInput
+	 * and clicks for the tick to use.  Only a running game takes actions.
+	 */
+	private void takeInput()
+	{
+		tickInput[0] = 0;
+		tickInput[1] = 0;
+		clickCount = 0;
+		while (inputQueue.poll())
+		{
+			switch (inputQueue.getKind())
+			{
+				case InputQueue.ACTION:
+					if (world.getGameState() == GameState.RUNNING)
+						tickInput[inputQueue.getA()] |= inputQueue.getB();
+					break;
+				case InputQueue.CLICK:
+					if (clickCount == clicks.length)
+						clicks = Arrays.copyOf(clicks, clicks.length * 2);
+					clicks[clickCount++] = inputQueue.getA();
+					clicks[clickCount++] = inputQueue.getB();
+					break;
+				case InputQueue.PAUSE:
+					if (world.getGameState() == GameState.RUNNING)
+						stopGame();
+					else
+						resumeGame();
+					break;
+				case InputQueue.END:
+					endGame();
+					break;
+			}
+		}
 	}
 	public void mouseEntered(MouseEvent e) {}
 	public void mouseExited(MouseEvent e) {}
 	public void mousePressed(MouseEvent e) {}
 	public void mouseReleased(MouseEvent e) {}
 
+	// GameListener, called on the animator thread during a tick; a fast replay is silent
+	public void slugLaunched(IntelligentSprite ship) { if (replaySpeed == 1) slug_launch.play(); }
+	public void torpedoLaunched(IntelligentSprite ship) { if (replaySpeed == 1) torpedo_launch.play(); }
+	public void torpedoExploded(float X, float Y) { if (replaySpeed == 1) torpedo_explosion.play(); }
+	public void shipExploded(IntelligentSprite ship) { if (replaySpeed == 1) ship_explosion.play(); }
+	public void shipWarped(IntelligentSprite ship) { if (replaySpeed == 1) ship_warp.play(); }
+
 	public void run()
 	{
-		/* 
-		 * Repeatedly update, render, sleep
-		 * We intend to separate updates from renders to have an adaptive frame
-		 * rate.  Since our timer is System.nanoTime(), we will divide all values
-		 * by 1e6d (a million) to convert ns -> ms.
-		 * If we are achieving rendering and update speeds of less than 10 ms
-		 * (100 FPS) we sleep.  If we are achieving rendering and update speeds
-		 * of greater than 33 ms (30 FPS), we start skipping frames, up to 5.
-		 * In any case we want 100 UPS.
+		/* Tick the world at its fixed rate, publishing what each tick leaves
+		 * for the render thread to draw when it gets round to it.  Drawing no
+		 * longer shares this thread, so there are no frames to skip; if the
+		 * ticks fall behind anyway, the missed ones are run back to back, up to
+		 * MAX_CATCH_UP of them, and past that the lost time is let go rather
+		 * than made up in a rush.
 		 */
-		int updates, extraUpdates;
-		long totalUpdates = 0L, totalFrames = 0L;
-		double beginTime, startTime, updateTime, totalTime, frameTime, excessTime, periodTime;
-		beginTime = System.nanoTime() / 1e6d;
-		periodTime = 1e3d / MAX_FRAME_RATE; // desired time for an update/render in ms
+		long period = 1000000000L / UPDATE_RATE;
+		long beginTime = System.nanoTime(), next = beginTime, totalUpdates = 0;
+		publishedTick = world.getTicks();
+		publish();
+		running = true;
+		renderer = new Thread(this::render, "SpaceWar renderer");
+		renderer.start();
 
-		while (gameState != GameState.OVER)
+		while (world.getGameState() != GameState.OVER)
 		{
-			updates = 0;
-			extraUpdates = 0;
-			startTime = System.nanoTime() / 1e6d;
-
 			gameUpdate(); // if running, game state is updated
-			updates++;
 			totalUpdates++;
-			
-			updateTime = System.nanoTime() / 1e6d - startTime;
-			
-			gameRender(); // render to a buffer
-			repaint(); // paint with the buffer
-			//try { Thread.sleep(50); } catch (InterruptedException ex) {};
-			totalFrames++;
-			
-			totalTime = System.nanoTime() / 1e6d - startTime;
-			frameTime = totalTime - updateTime;
-			excessTime = periodTime - totalTime;
-			
-			if (excessTime > 0)
-				/* We computed an ideal frame rate (period) and see if we're meeting that
-				 * speed.  If we have time left over, we just sleep it off and cycle the
-				 * animation.
-				 */
-				try
-				{
-					Thread.sleep(Math.round(excessTime)); // sleep a bit
-				}
-				catch (InterruptedException ex) {}
-			else if (excessTime < 0)
+			publish();
+
+			next += period;
+			long excess = next - System.nanoTime();
+			if (excess > 0)
+				sleep(excess);
+			else if (-excess > MAX_CATCH_UP * period)
+				next = System.nanoTime();
+			avgups = totalUpdates * 1e9d / (System.nanoTime() - beginTime);
+		}
+		running = false;
+		try
+		{
+			renderer.join();
+		}
+		catch (InterruptedException e) {}
+		stopRecording();
+		if (client != null)
+		{
+			try
 			{
-				/* If we went over the period with the frame rendering, we still need
-				 * to update every period, but we can drop frames.  So we compute how
-				 * many periods we can reliably do a frame once while still doing an
-				 * update every period.
-				 */
-				extraUpdates = (int)Math.ceil(frameTime / (periodTime - updateTime));
-				while (updates <= extraUpdates && updates <= MAX_FRAME_SKIPS)
-				{
-					/* Do these extra updates, unless we run up against the user defined
-					 * MAX_FRAME_SKIPS.
-					 */
-					gameUpdate();
-					updates++;
-					totalUpdates++;
-				}
-				totalTime = System.nanoTime() / 1e6d - startTime;
-				excessTime = extraUpdates * periodTime - totalTime;
-				if (excessTime >= 0)
-					/* Even though we did a number of updates without frames we still want
-					 * to wait for the end of a full period before cycling the animation.
-					 */
-					try
-					{
-						Thread.sleep(Math.round(excessTime));
-					}
-					catch (InterruptedException ex) {}
+				client.close();
 			}
-			/* Compute some totals for statistics. */
-			avgups = totalUpdates / (System.nanoTime() / 1e6d - beginTime) * 1000d;
-			avgfps = totalFrames / (System.nanoTime() / 1e6d - beginTime) * 1000d;
+			catch (IOException e) {}
 		}
 		System.exit(0); // so enclosing JFrame/JApplet exits
 	} // end of run()
 	
-	private void initializeGame()
+	/* The render thread: draw the newest frame the game thread has published,
+	 * frameRate times a second.  Between ticks the sprites are drawn back
+	 * towards where the frame before had them by however much of the next
+	 * tick is still to come, so that a frame shows where they were that
+	 * fraction of a tick ago, and more frames than ticks move smoothly rather
+	 * than in steps.
+	 */
+	private void render()
 	{
-		gameState = GameState.PRE;
+		long tickNanos = 1000000000L / UPDATE_RATE;
+		long beginTime = System.nanoTime(), next = beginTime, totalFrames = 0;
+		while (running)
+		{
+			frames.take();
+			RenderFrame frame = frames.getFront();
+			float ahead = Math.min((float)(System.nanoTime() - frame.getPublished()) / tickNanos, 1f);
+			present(frame, 1f - ahead);
+			totalFrames++;
 
-		planets.clear();
-		ships.clear();
-		slugs.clear();
-		torpedoes.clear();
+			int rate = frameRate;
+			if (rate > 0)
+			{
+				next += 1000000000L / rate;
+				long excess = next - System.nanoTime();
+				if (excess > 0)
+					sleep(excess);
+				else
+					next = System.nanoTime(); // a late frame is just late; the next one isn't hurried
+			}
+			avgfps = totalFrames * 1e9d / (System.nanoTime() - beginTime);
+		}
+	}
 
-		// add starting sprites
-		planet.setX(PWIDTH/2);
-		planet.setY(PHEIGHT/2);
-		planet.setWidth(100);
-		planet.setHeight(100);
-		planet.setBufImg(imgPlanet);
-		planet.setVisible(true);
-		planet.setExistsOnLevel(Level.PLANET);
-		planet.setCollidesWithLevels(new Level[] {Level.PLAYER1,Level.PLAYER2,Level.SLUG,Level.TORPEDO});
-		planets.add(planet);
-		
-		player1.setX(400);
-		player1.setY(150);
-		player1.setWidth(20);
-		player1.setHeight(20);
-		player1.setVisible(true);
-		player1.setExistsOnLevel(Level.PLAYER1);
-		player1.setCollidesWithLevels(new Level[] {Level.PLANET,Level.PLAYER2,Level.SLUG,Level.TORPEDO});
-		player1.setHVelocity(3);
-		player1.setVVelocity(0);
-		player1.setRotation(0);
-		player1.rotate(0); // necessary on game reset if ship is not rotated to 0
-		player1.setTopSpeed(SHIP_TOP_SPEED);
-		player1.setTopEnergy(SHIP_TOP_ENERGY);
-		player1.setWeaponEnergy(SHIP_TOP_ENERGY);
-		player1.setShieldEnergy(SHIP_TOP_ENERGY);
-		player1.setAlive(true);
-		ships.add(player1);
+	// capture the world as it is now for the render thread
+	private void publish()
+	{
+		RenderFrame frame = frames.getBack();
+		long tick = world.getTicks();
+		// a client can be set back a tick or jump ahead; neither is worth drawing the way between
+		frame.capture(world, Math.max(0, Math.min(tick - publishedTick, replaySpeed)), published);
+		frame.setPublished(System.nanoTime());
+		frames.publish();
+		publishedTick = tick;
+		published = frame;
+	}
+
+	private static void sleep(long nanos)
+	{
+		try
+		{
+			Thread.sleep(nanos / 1000000, (int)(nanos % 1000000));
+		}
+		catch (InterruptedException ex) {}
+	}
 
-		player2.setX(400);
-		player2.setY(450);
-		player2.setWidth(20);
-		player2.setHeight(20);
-		player2.setVisible(true);
-		player2.setExistsOnLevel(Level.PLAYER2);
-		player2.setCollidesWithLevels(new Level[] {Level.PLANET,Level.PLAYER1,Level.SLUG,Level.TORPEDO});
-		player2.setHVelocity(-3);
-		player2.setVVelocity(0);
-		player2.setRotation(0);
-		player2.rotate(8);
-		player2.setTopSpeed(SHIP_TOP_SPEED);
-		player2.setTopEnergy(SHIP_TOP_ENERGY);
-		player2.setWeaponEnergy(SHIP_TOP_ENERGY);
-		player2.setShieldEnergy(SHIP_TOP_ENERGY);
-		player2.setAlive(true);
-		ships.add(player2);
+	// the screen's refresh rate, or a frame a tick if it can't tell
+	private static int defaultFrameRate()
+	{
+		if (GraphicsEnvironment.isHeadless())
+			return UPDATE_RATE;
+		int refresh = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+		return refresh == DisplayMode.REFRESH_RATE_UNKNOWN ? UPDATE_RATE : refresh;
 	}
-	
+
 	private void startGame()
 	{
 		// initialize and start the thread
 		{
-			if (animator == null || gameState == GameState.RUNNING)
+			if (animator == null || world.getGameState() == GameState.RUNNING)
 			{
 				animator = new Thread(this);
 				animator.start();
@@ -361,344 +500,186 @@ public class GamePanel extends JApplet implements Runnable, KeyListener, MouseLi
 	public void stopGame()
 	{
 		// called by the user to pause execution
-		gameState = GameState.PAUSED;
+		world.stopGame();
 	}
 
 	public void resumeGame()
 	{
 		// called by the user to resume execution
-		gameState = GameState.RUNNING;
+		world.resumeGame();
 	}
 	
 	public void endGame()
 	{
 		// called by the user to stop execution
-		gameState = GameState.OVER;
+		world.endGame();
 	}
 
 	private void gameUpdate()
 	{
-		long currentTime = (long) (System.nanoTime() / 1e9);
-		
-		if (gameState == GameState.RUNNING) // update game state
+		takeInput();
+		if (client != null)
 		{
-			for (int i = slugs.size() - 1; i >= 0; i--)
+			// either set of keys steers this player's own ship
+			try
 			{
-				// much thanks for the formulas: http://physics.stackexchange.com/questions/17285/split-gravitational-force-into-x-y-and-z-componenets
-				// alter velocity based on gravity well			
-				double x = 0.0, y = 0.0;
-	
-				DynamicSprite d = slugs.get(i);
-				x = PWIDTH/2.0 - d.getX();
-				y = PHEIGHT/2.0 - d.getY();
-				
-				// move ship based on velocity
-				d.setX(d.getX() + d.getHVelocity());
-				d.setY(d.getY() + d.getVVelocity());
-				
-				// wrap around screen if necessary
-				if (d.getX() <= 0 )
-					d.setX(PWIDTH);
-				else if (d.getX() >= PWIDTH)
-					d.setX(0);
-				if (d.getY() < 0 )
-					d.setY(PHEIGHT);
-				else if (d.getY() >= PHEIGHT)
-					d.setY(0);
-
-				collide(d, planet);
-				collide(ships.get(0), d);
-				collide(ships.get(1), d);
-				for (int j = torpedoes.size() - 1; j >= 0; j--)
-				{
-					DynamicSprite d2 = torpedoes.get(j);
-					collide(d2, d);
-				}
-				if (d.getAlive() == false)
-					slugs.remove(i);
+				client.sendInput(tickInput[0] | tickInput[1]);
+				client.poll();
 			}
-			for (int i = torpedoes.size() - 1; i >= 0; i--)
+			catch (IOException e)
 			{
-				DynamicSprite d = torpedoes.get(i);
-
-				// much thanks for the formulas: http://physics.stackexchange.com/questions/17285/split-gravitational-force-into-x-y-and-z-componenets
-				// alter velocity based on gravity well			
-				double x = 0.0, y = 0.0, rsq = 0.0, a = 0.0, ax = 0.0, ay = 0.0;
-	
-				x = PWIDTH/2.0 - d.getX();
-				y = PHEIGHT/2.0 - d.getY();
-				
-				rsq = Math.pow(x,2.0) + Math.pow(y,2.0);
-				
-				// compute each component of acceleration
-				ax = (G * M) * x / rsq;
-				ay = (G * M) * y / rsq;
-	
-				// don't need to worry about top speed here since DynamicSprites can neither increase nor decrease speed
-				float newHVelocity = d.getHVelocity() + (float)ax;
-				float newVVelocity = d.getVVelocity() + (float)ay;
-				float newVelocity = (float)Math.pow(Math.pow(newHVelocity, 2.0) + Math.pow(newVVelocity, 2.0), 0.5);
- 
-				d.setHVelocity(newHVelocity);
-				d.setVVelocity(newVVelocity);
-				
-				// move torpedo based on velocity
-				d.setX(d.getX() + d.getHVelocity());
-				d.setY(d.getY() + d.getVVelocity());
-				
-				// wrap around screen if necessary
-				if (d.getX() <= 0 )
-					d.setX(PWIDTH);
-				else if (d.getX() >= PWIDTH)
-					d.setX(0);
-				if (d.getY() < 0 )
-					d.setY(PHEIGHT);
-				else if (d.getY() >= PHEIGHT)
-					d.setY(0);
-				
-				collide(d, planet);
-				collide(ships.get(0), d);
-				collide(ships.get(1), d);
-				/* The next loop adds not only torpedoes that just collided, but the ones the
-				 * slugs collided with in the above slugs loop.
-				 */
-				if (d.getAlive() == false)
-					torpedoes.remove(d);
+				System.out.println("Connection lost: " + e.getMessage());
+				endGame();
 			}
-			for (int j = ships.size() - 1; j >= 0; j--)
+			return;
+		}
+		if (replay != null)
+		{
+			// a paused replay stays paused; otherwise the log drives the world until it runs out
+			if (world.getGameState() != GameState.PAUSED && replay.advance(world, replaySpeed) < replaySpeed)
+				world.stopGame();
+			return;
+		}
+
+		long tick = world.getTicks();
+		try
+		{
+			for (int i = 0; i < clickCount; i += 2)
 			{
-				IntelligentSprite i = ships.get(j);
-				// much thanks for the formulas: http://physics.stackexchange.com/questions/17285/split-gravitational-force-into-x-y-and-z-componenets
-				// alter velocity based on gravity well			
-				double x = 0.0, y = 0.0, rsq = 0.0, a = 0.0, ax = 0.0, ay = 0.0;
-	
-				x = PWIDTH/2.0 - i.getX();
-				y = PHEIGHT/2.0 - i.getY();
-				
-				rsq = Math.pow(x,2.0) + Math.pow(y,2.0);
-				
-				// compute each component of acceleration
-				ax = (G * M) * x / rsq;
-				ay = (G * M) * y / rsq;
-	
-				// tricky here, unlike thruster acceleration, we still need the ships to be affected even if they are already at their speed limit
-				// so we need to find the magnitude in each direction and scale them back if they're above the top speed
-				float newHVelocity = i.getHVelocity() + (float)ax;
-				float newVVelocity = i.getVVelocity() + (float)ay;
-				float newVelocity = (float)Math.pow(Math.pow(newHVelocity, 2.0) + Math.pow(newVVelocity, 2.0), 0.5);
- 
-				if (newVelocity <= i.getTopSpeed())
-				{
-					i.setHVelocity(newHVelocity);
-					i.setVVelocity(newVVelocity);
-				}
-				else
-				{
-					float scaleFactor = i.getTopSpeed() / newVelocity;
-					i.setHVelocity(newHVelocity * scaleFactor);
-					i.setVVelocity(newVVelocity * scaleFactor);
-				}
-				
-				// move ship based on velocity
-				i.setX(i.getX() + i.getHVelocity());
-				i.setY(i.getY() + i.getVVelocity());
-				
-				// wrap around screen if necessary
-				if (i.getX() <= 0 )
-					i.setX(PWIDTH);
-				else if (i.getX() >= PWIDTH)
-					i.setX(0);
-				if (i.getY() < 0 )
-					i.setY(PHEIGHT);
-				else if (i.getY() >= PHEIGHT)
-					i.setY(0);
+				world.addExplosion(clicks[i], clicks[i + 1]);
+				if (recorder != null)
+					recorder.recordExplosion(tick, clicks[i], clicks[i + 1]);
+			}
+			world.tick(tickInput);
+			// input only counts on ticks the world actually ran
+			if (recorder != null && world.getTicks() != tick)
+				recorder.record(tick, tickInput);
+		}
+		catch (IOException e)
+		{
+			System.out.println("Recording stopped: " + e.getMessage());
+			recorder = null;
+		}
+	}
 
-				// Move shields along with sprites as soon as possible
-				for (int i2 = spriteAnimations.size() - 1; i2 >= 0; i2--)
-				{
-					SpriteAnimation s = spriteAnimations.get(i2);
-					if (s.getSprite() == i)
-					{
-						s.setX(s.getSprite().getX());
-						s.setY(s.getSprite().getY());
-					}
-				}
-				
-				// now we regenerate energy at the rate of 1 point per second
-				if (currentTime > i.getLastRegenTime())
-				{
-					i.regen();
-					i.setLastRegenTime(currentTime);
-				}
-				// if either player is cloaked, we check to see if time is up and set to visible
-				if (i.getVisible() == false)
-				{
-					if (currentTime > i.getLastCloakTime() + CLOAK_SECONDS)
-						i.setVisible(true);
-				}
+	private void stopRecording()
+	{
+		if (recorder != null)
+		{
+			try
+			{
+				recorder.finish(world.getTicks());
 			}
-			collide(ships.get(0), ships.get(1));
-			collide(ships.get(0), planet);
-			collide(ships.get(1), planet);
-			/* Iterate over SpriteAnimations updating each one.  If attached
-			 * to a StaticSprite, update it's X,Y.
-			 */
-			for (int j = ships.size() - 1; j >= 0; j--)
+			catch (IOException e)
 			{
-				IntelligentSprite i = ships.get(j);
-				if (i.getAlive() == false && spriteAnimations.size() == 0)
-				{
-					if (i == player1)
-						player2Wins++;
-					else if (i == player2)
-						player1Wins++;
-					
-					initializeGame();
-					break;
-				}
+				System.out.println("Recording not finished: " + e.getMessage());
 			}
+			recorder = null;
 		}
 	}
 	
-	private void gameRender()
+	/* Draw a frame and get it on screen: straight away through the canvas's
+	 * BufferStrategy, or into the back buffer for paint() to copy over.  The
+	 * accelerated surfaces behind both can be lost at any time, say to a
+	 * display mode change or a locked screen, in which case the frame is
+	 * drawn again.
+	 */
+	private void present(RenderFrame frame, float back)
 	{
-		// draw the current frame to an image buffer
-		if (dbImage == null) // create the buffer
+		if (canvas != null)
 		{
-			dbImage = createImage(PWIDTH, PHEIGHT);
-			if (dbImage == null)
+			if (strategy == null)
 			{
-				System.out.println("dbImage is null");
-				return;
+				// a BufferStrategy needs the canvas on screen
+				if (canvas.isShowing() == false)
+					return;
+				canvas.createBufferStrategy(2);
+				strategy = canvas.getBufferStrategy();
+				canvas.requestFocus();
 			}
-			else
-				dbg = (Graphics2D)dbImage.getGraphics();
-		}
-		// clear the background
-		//dbg.setColor(Color.BLACK);
-		//dbg.fillRect(0, 0, PWIDTH, PHEIGHT);
-		dbg.drawImage(imgStarfield, 0, 0, null);
-		
-		// draw game elements
-		for (int i = planets.size() - 1; i >= 0; i--)
-		{
-			StaticSprite s = planets.get(i);
-			s.draw(dbg, this);
-		}
-		for (int i = slugs.size() - 1; i >= 0; i--)
-		{
-			DynamicSprite d = slugs.get(i);
-			d.draw(dbg, this);
+			long ready;
+			do
+			{
+				do
+				{
+					Graphics2D g = (Graphics2D)strategy.getDrawGraphics();
+					gameRender(g, frame, back);
+					g.dispose();
+					ready = System.nanoTime();
+				}
+				while (strategy.contentsRestored());
+				strategy.show();
+			}
+			while (strategy.contentsLost());
+			Toolkit.getDefaultToolkit().sync(); // or the flip can sit in a queue on some platforms
+			rendered++;
+			presentedSince(ready);
+			return;
 		}
-		for (int i = torpedoes.size() - 1; i >= 0; i--)
+
+		do
 		{
-			DynamicSprite d = torpedoes.get(i);
-			d.draw(dbg, this);
+			if (dbImage == null || dbImage.validate(getGraphicsConfiguration()) == VolatileImage.IMAGE_INCOMPATIBLE)
+			{
+				dbImage = createVolatileImage(PWIDTH, PHEIGHT);
+				if (dbImage == null)
+					return; // not on screen yet
+			}
+			Graphics2D g = dbImage.createGraphics();
+			gameRender(g, frame, back);
+			g.dispose();
 		}
-		for (int j = ships.size() - 1; j >= 0; j--)
+		while (dbImage.contentsLost());
+		rendered++;
+		frameReady = System.nanoTime();
+		repaint(); // paint with the buffer
+	}
+
+	// a frame drawn at ready has reached the screen
+	private void presentedSince(long ready)
+	{
+		long latency = System.nanoTime() - ready;
+		presentNanos += latency;
+		presentMaxNanos = Math.max(presentMaxNanos, latency);
+		presented++;
+	}
+
+	// draw frame with its sprites back of the way to where the frame before had them
+	private void gameRender(Graphics2D dbg, RenderFrame frame, float back)
+	{
+		SoftwareRenderer software = this.software;
+		if (software != null)
 		{
-			IntelligentSprite i = ships.get(j);
-			i.draw(dbg, this);
+			softwareRender(software, frame, back);
+			dbg.drawImage(software.getFrame(), 0, 0, this);
+			return;
 		}
+
+		// clear the background
+		//dbg.setColor(Color.BLACK);
+		//dbg.fillRect(0, 0, PWIDTH, PHEIGHT);
+		if (canvas != null)
+			background.draw(dbg, canvas.getGraphicsConfiguration(), frame, canvas.getWidth(), canvas.getHeight(), this);
+		else
+			background.draw(dbg, getGraphicsConfiguration(), frame, PWIDTH, PHEIGHT, this);
+		
+		GameState gameState = frame.getGameState();
+
+		// draw game elements; the background has the ones that stay put
+		for (int i = 0; i < frame.getSpriteCount(); i++)
+			frame.getSprite(i).draw(dbg, atlas, back, this);
 		
 		if (gameState == GameState.PRE)
 		{ // title screen and player wins
-			Font oldFont = dbg.getFont();
-			dbg.setFont(new Font("SansSerif", Font.BOLD, 48));
-			dbg.setColor(Color.WHITE);
-			dbg.drawString("SPACEWAR", 260, 100);
-			dbg.setFont(oldFont);
-
-			dbg.setColor(Color.RED);
-			dbg.drawString("Wins: " + player1Wins, 150, 160);
-			dbg.drawString("Q", 75, 200);
-			dbg.drawString("Fire", 75, 220);
-			dbg.drawString("Slug",  75,  240);
-			dbg.drawString("A", 75, 270);
-			dbg.drawString("Rotate", 75, 290);
-			dbg.drawString("CCW", 75, 310);
-			dbg.drawString("Z", 75, 340);
-			dbg.drawString("Weapon", 75, 360);
-			dbg.drawString("Energy", 75, 380);
-			dbg.drawString("W", 150, 200);
-			dbg.drawString("", 150, 220);
-			dbg.drawString("Cloak",  150,  240);
-			dbg.drawString("S", 150, 270);
-			dbg.drawString("Engine", 150, 290);
-			dbg.drawString("Thrust", 150, 310);
-			dbg.drawString("X", 150, 340);
-			dbg.drawString("Hyper", 150, 360);
-			dbg.drawString("Space", 150, 380);
-			dbg.drawString("E", 225, 200);
-			dbg.drawString("Fire", 225, 220);
-			dbg.drawString("Torpedo",  225,  240);
-			dbg.drawString("D", 225, 270);
-			dbg.drawString("Rotate", 225, 290);
-			dbg.drawString("CW", 225, 310);
-			dbg.drawString("C", 225, 340);
-			dbg.drawString("Shield", 225, 360);
-			dbg.drawString("Energy", 225, 380);
-			dbg.drawLine(50, 175, 275, 175);
-			dbg.drawLine(50, 250, 275, 250);
-			dbg.drawLine(50, 325, 275, 325);
-			dbg.drawLine(50, 400, 275, 400);
-			dbg.drawLine(50, 175, 50, 400);
-			dbg.drawLine(125, 175, 125, 400);
-			dbg.drawLine(200, 175, 200, 400);
-			dbg.drawLine(275, 175, 275, 400);
-
-			dbg.setColor(Color.BLUE);
-			dbg.drawString("Wins: " + player2Wins, 625, 160);
-			dbg.drawString("7", 550, 200);
-			dbg.drawString("Fire", 550, 220);
-			dbg.drawString("Slug",  550,  240);
-			dbg.drawString("4", 550, 270);
-			dbg.drawString("Rotate", 550, 290);
-			dbg.drawString("CCW", 550, 310);
-			dbg.drawString("1", 550, 340);
-			dbg.drawString("Weapon", 550, 360);
-			dbg.drawString("Energy", 550, 380);
-			dbg.drawString("8", 625, 200);
-			dbg.drawString("", 625, 220);
-			dbg.drawString("Cloak",  625,  240);
-			dbg.drawString("5", 625, 270);
-			dbg.drawString("Engine", 625, 290);
-			dbg.drawString("Thrust", 625, 310);
-			dbg.drawString("2", 625, 340);
-			dbg.drawString("Hyper", 625, 360);
-			dbg.drawString("Space", 625, 380);
-			dbg.drawString("9", 700, 200);
-			dbg.drawString("Fire", 700, 220);
-			dbg.drawString("Torpedo",  700,  240);
-			dbg.drawString("6", 700, 270);
-			dbg.drawString("Rotate", 700, 290);
-			dbg.drawString("CW", 700, 310);
-			dbg.drawString("3", 700, 340);
-			dbg.drawString("Shield", 700, 360);
-			dbg.drawString("Energy", 700, 380);
-			dbg.drawLine(525, 175, 750, 175);
-			dbg.drawLine(525, 250, 750, 250);
-			dbg.drawLine(525, 325, 750, 325);
-			dbg.drawLine(525, 400, 750, 400);
-			dbg.drawLine(525, 175, 525, 400);
-			dbg.drawLine(600, 175, 600, 400);
-			dbg.drawLine(675, 175, 675, 400);
-			dbg.drawLine(750, 175, 750, 400);
-			dbg.setColor(Color.WHITE);
-			dbg.drawString("P: start / pause / resume", 87, 450);
-			dbg.drawString("Esc: quit", 562, 450);
+			hud.drawTitle(dbg, frame.getWins(0), frame.getWins(1), this);
 		}
 		else if (gameState == GameState.RUNNING || gameState == GameState.PAUSED)
 		{ // ships, planet, bullets, etc., all gameplay elements
-			// iterate over sprites updating each one.  If currentFrame is -1, delete, otherwise, draw current frame
-			for (int i = spriteAnimations.size() - 1; i >= 0; i--)
+			// the world advances and disposes of the sprite animations, we just draw their current frame
+			for (int i = 0; i < frame.getAnimationCount(); i++)
 			{
-				SpriteAnimation si = spriteAnimations.get(i);
-				si.updateFrame();
-				if (si.getCurrentFrame() == -1)
-					spriteAnimations.remove(i);
-				else
-					si.draw(dbg, this);
+				RenderFrame.Animation a = frame.getAnimation(i);
+				a.draw(dbg, atlas, a.effect == SpriteAnimation.Effect.SHIELD ? shieldFrames : explosionFrames, back, this);
 			}
 				
 			/* dbg.setColor(Color.WHITE);
@@ -707,359 +688,36 @@ public class GamePanel extends JApplet implements Runnable, KeyListener, MouseLi
 			dbg.drawString("Average UPS: " + String.format("%4.1f",avgups), 20, 120);
 			dbg.drawString("Average FPS: " + String.format("%4.1f",avgfps), 20, 160);
 			dbg.drawString("Mouse Click: " + String.format("X: %d Y: %d", mouseX, mouseY), 20, 200); */
-			dbg.setColor(Color.RED);
-			dbg.drawString("S", 20, 530);
-			dbg.fillRect(35, 525, player1.getShieldEnergy() * 3, 2);
-			dbg.drawString("W", 20, 550);
-			dbg.fillRect(35, 545, player1.getWeaponEnergy() * 3, 2);
-			dbg.setColor(Color.BLUE);
-			dbg.drawString("S", 760, 530);
-			dbg.fillRect(755 - player2.getShieldEnergy() * 3, 525, player2.getShieldEnergy() * 3, 2);
-			dbg.drawString("W", 760, 550);
-			dbg.fillRect(755 - player2.getWeaponEnergy() * 3, 545, player2.getWeaponEnergy() * 3, 2);
+			// the first two ships are the keyboard's players
+			hud.drawEnergy(dbg, frame, this);
 			
 			if (gameState == GameState.OVER)
 				gameOverMessage(dbg);
 		}
 	} // end of gameRender();
-	
-	/* possible collisions
-	 * static sprite: planet
-	 * dynamic sprite: slug or missile
-	 * intelligent sprite: player 1 or player 2 ships
-	 * intelligent sprite vs. intelligent sprite: both bounce, take moderate damage
-	 * intelligent sprite vs. dynamic sprite: intelligent takes minor damage, dynamic is destroyed
-	 * intelligent sprite vs. static sprite: intelligent bounces, takes major damage
-	 * dynamic sprite vs. dynamic sprite: both are destroyed
-	 * dynamic sprite vs. static sprite: dynamic is destroyed
-	 * static sprite vs. static sprite: no collisions possible, neither are capable of movement
-	 */
-	public boolean doCollide(StaticSprite a, StaticSprite b)
-	{
-		/* We first check if the two sprites even can collide
-		 * and if so, then we check if their circles intersect
-		 */
-		Level aLevel = a.getExistsOnLevel();
-		Level aLevels[] = a.getCollidesWithLevels();
-		Level bLevel = b.getExistsOnLevel();
-		Level bLevels[] = b.getCollidesWithLevels();
-		for (int i = 0, j = aLevels.length; i < j; i++ )
-		{
-			if (aLevels[i] == bLevel)
-			{
-				for (int k = 0, l = bLevels.length; k < l; k++ )
-				{
-					if (bLevels[k] == aLevel)
-					{
-						if (Math.pow((b.getX() - a.getX()) * (b.getX() - a.getX()) + (b.getY() - a.getY()) * (b.getY() - a.getY()), 0.5) <= (a.getWidth()/2 + b.getWidth()/2))
-							return true;
-						else
-							return false;
-					}
-				}
-			}
-		}
-		return false;
-	}
-	
-	public boolean collide(IntelligentSprite a, IntelligentSprite b)
-	{ // ship with ship
-		//if (b instanceof IntelligentSprite) {} // stop checking using instanceof and do it using overloading
-		
-		// thanks to http://archive.ncsa.illinois.edu/Classes/MATH198/townsend/math.html
-		// check for collision
-		if (doCollide(a, b))
-		{
-			// find trajectories of each ball
-			double a_dir_before = Math.atan2(a.getVVelocity(),a.getHVelocity());
-			double b_dir_before = Math.atan2(((IntelligentSprite)b).getVVelocity(),((IntelligentSprite)b).getHVelocity());
-			
-			// find combined vector velocity of each ball
-			double a_vel_before = Math.pow(a.getHVelocity() * a.getHVelocity() + a.getVVelocity() * a.getVVelocity(), 0.5);
-			double b_vel_before = Math.pow(((IntelligentSprite)b).getHVelocity() * ((IntelligentSprite)b).getHVelocity() + ((IntelligentSprite)b).getVVelocity() * ((IntelligentSprite)b).getVVelocity(), 0.5);
 
-			// find normal of collision
-			double normal = Math.atan2(b.getY() - a.getY(), b.getX() - a.getX());
-			
-			// find separation between ball trajectories and normal
-			double a_dir_normal_before = a_dir_before - normal;
-			double b_dir_normal_before = b_dir_before - normal;
-			
-			// find the velocities of each ball along the normal and tangent directions
-			double a_vel_nor_before = a_vel_before * Math.cos(a_dir_normal_before);
-			double a_vel_tan_before = a_vel_before * Math.sin(a_dir_normal_before);
-			
-			double b_vel_nor_before = b_vel_before * Math.cos(b_dir_normal_before);
-			double b_vel_tan_before = b_vel_before * Math.sin(b_dir_normal_before);
-			
-			// find velocities after collision, relative to the normal
-			// balls keep their normal velocities but exchange tangent velocities
-			double a_vel_nor_after = b_vel_nor_before;
-			double a_vel_tan_after = a_vel_tan_before;
-
-			double b_vel_nor_after = a_vel_nor_before;
-			double b_vel_tan_after = b_vel_tan_before;
-			
-			// find velocities after collision, total
-			double a_vel_after = Math.pow(a_vel_nor_after * a_vel_nor_after + a_vel_tan_after * a_vel_tan_after, 0.5);
-			double b_vel_after = Math.pow(b_vel_nor_after * b_vel_nor_after + b_vel_tan_after * b_vel_tan_after, 0.5);
-			
-			// shrink speeds to speed limit
-			if (a_vel_after > ((IntelligentSprite)a).getTopSpeed()) a_vel_after = ((IntelligentSprite)a).getTopSpeed(); 
-			if (b_vel_after > ((IntelligentSprite)b).getTopSpeed()) b_vel_after = ((IntelligentSprite)b).getTopSpeed(); 
-
-			// find trajectory (relative to normal), after collision
-			double a_dir_normal_after = Math.atan2(a_vel_tan_after, a_vel_nor_after);
-			double b_dir_normal_after = Math.atan2(b_vel_tan_after, b_vel_nor_after);
-			
-			// find trajectory (relative to original coordinate system), after collision
-			// ball keeps normal velocity but tangent velocity goes negative since it is reflecting at an angle equal to the angle of incidence
-			double a_dir_after = a_dir_normal_after + normal;
-			double b_dir_after = b_dir_normal_after + normal;
-			
-			// find vector velocities (relative to original coordinate system), after collision
-			a.setHVelocity((float)(a_vel_after * Math.cos(a_dir_after)));
-			a.setVVelocity((float)(a_vel_after * Math.sin(a_dir_after)));
-			/* a.setCollidable(false); */
-
-			((IntelligentSprite)b).setHVelocity((float)(b_vel_after * Math.cos(b_dir_after)));
-			((IntelligentSprite)b).setVVelocity((float)(b_vel_after * Math.sin(b_dir_after)));
-			
-			// both take minor damage
-			a.damage(SHIP_DAMAGE);
-			b.damage(SHIP_DAMAGE);
-			if (a.getAlive() == true)
-				spriteAnimations.add(new SpriteAnimation(imgsShield, 0.1, false, a));
-			else
-			{
-				spriteAnimations.add(new SpriteAnimation(imgsExplosion, 1.0, false, a));
-				ship_explosion.play();
-			}
-			if (b.getAlive() == true)
-				spriteAnimations.add(new SpriteAnimation(imgsShield, 0.1, false, b));
-			else
-			{
-				spriteAnimations.add(new SpriteAnimation(imgsExplosion, 1.0, false, b));
-				ship_explosion.play();
-			}
-			return true;
-		}
-		else
-			return false;
-	}
+	// the same frame, drawn by hand into r's
+	private void softwareRender(SoftwareRenderer r, RenderFrame frame, float back)
+	{
+		background.draw(r, frame);
 
-	public boolean collide(IntelligentSprite a, DynamicSprite b)
-	{ // ship with slug or torpedo
-		if (doCollide(a, b))
-		{	
-			// ship takes moderate damage, slug or torpedo
-			if (b.getExistsOnLevel() == Level.SLUG)
-				a.damage(SLUG_DAMAGE);
-			else
-			{	// torpedo causes explosion on itself
-				spriteAnimations.add(new SpriteAnimation(imgsExplosion, 1.0, false, b));
-				torpedo_explosion.play();
-				a.damage(TORPEDO_DAMAGE);
-			}
-			b.damage();
-			if (a.getAlive() == true) // shield flickers or ship explodes if it dies
-				spriteAnimations.add(new SpriteAnimation(imgsShield, 0.1, false, a));
-			else
-			{
-				spriteAnimations.add(new SpriteAnimation(imgsExplosion, 1.0, false, a));
-				ship_explosion.play();
-			}
-			return true;
-		}
-		else
-			return false;
-	}
+		GameState gameState = frame.getGameState();
+		for (int i = 0; i < frame.getSpriteCount(); i++)
+			frame.getSprite(i).draw(r, atlas, back);
 
-	public boolean collide(IntelligentSprite a, StaticSprite b)
-	{ // ship with planet
-		/* if a ship gets inside a planet's radius before bouncing out due to a threading pause
-		 * it will start colliding rapidly, die, but still collide and produce animations of
-		 * exploding forever, and therefore the game will never reset.  This doesn't eliminate
-		 * the problem of snagging on the planet, but at least once the ship is dead it won't
-		 * continue to collide and produce animations, so the game will reset.
-		 */
-		if (a.getAlive() == false)
-			return false;
-		if (doCollide(a, b))
-		{
-			// find trajectory of ship
-			double a_dir_before = Math.atan2(a.getVVelocity(),a.getHVelocity());
-			
-			// find combined vector velocity of ship
-			double a_vel_before = Math.pow(a.getHVelocity() * a.getHVelocity() + a.getVVelocity() * a.getVVelocity(), 0.5);
-		
-			// find normal of collision
-			double normal = Math.atan2(b.getY() - a.getY(), b.getX() - a.getX());
-			
-			// find separation between ship trajectory and normal
-			double a_dir_normal_before = a_dir_before - normal;
-			
-			// find the velocity of ball along the normal and tangent directions
-			double a_vel_nor_before = a_vel_before * Math.cos(a_dir_normal_before);
-			double a_vel_tan_before = a_vel_before * Math.sin(a_dir_normal_before);
-			
-			// find velocity after collision, relative to the normal
-			double a_vel_nor_after = -a_vel_nor_before;
-			double a_vel_tan_after = a_vel_tan_before;
-			
-			// find velocity after collision, total
-			double a_vel_after = Math.pow(a_vel_nor_after * a_vel_nor_after + a_vel_tan_after * a_vel_tan_after, 0.5);
-			
-			// do not need to check speed limit because ship can't increase speed on bounce
-			
-			// find trajectory (relative to normal), after collision
-			double a_dir_normal_after = Math.atan2(a_vel_tan_after, a_vel_nor_after);
-			
-			// find trajectory (relative to original coordinate system), after collision
-			double a_dir_after = a_dir_normal_after + normal;
-			
-			// find vector velocity (relative to original coordinate system), after collision
-			a.setHVelocity((float)(a_vel_after * Math.cos(a_dir_after)));
-			a.setVVelocity((float)(a_vel_after * Math.sin(a_dir_after)));
-			/* a.setCollidable(false); */
-			
-			// ship takes major damage
-			a.damage(PLANET_DAMAGE);
-			if (a.getAlive() == true)
-				spriteAnimations.add(new SpriteAnimation(imgsShield, 0.1, false, a));
-			else
-			{
-				spriteAnimations.add(new SpriteAnimation(imgsExplosion, 1.0, false, a));
-				ship_explosion.play();
-			}
-			return true;
-		}
-		else
-			return false;
-	}
-	
-	public boolean collide(DynamicSprite a, DynamicSprite b)
-	{ // slug with torpedo
-		if (doCollide(a, b))
-		{
-			// Both slugs/torpedoes die, they have no shield points
-			if (a.getExistsOnLevel () == Level.TORPEDO)
-			{
-				spriteAnimations.add(new SpriteAnimation(imgsExplosion, 1.0, false, a));
-				torpedo_explosion.play();
-			}
-			if (b.getExistsOnLevel () == Level.TORPEDO)
-			{
-				spriteAnimations.add(new SpriteAnimation(imgsExplosion, 1.0, false, b));
-				torpedo_explosion.play();
-			}
-			a.damage();
-			b.damage();
-			return true;
-		}
-		else
-			return false;
-	}
-	
-	public boolean collide(DynamicSprite a, StaticSprite b)
-	{ // slug or torpedo with planet
-		if (doCollide(a, b))
+		if (gameState == GameState.PRE)
+			hud.drawTitle(r, frame.getWins(0), frame.getWins(1));
+		else if (gameState == GameState.RUNNING || gameState == GameState.PAUSED)
 		{
-			// Planet cannot be damaged, slug/torpedo dies
-			if (a.getExistsOnLevel () == Level.TORPEDO)
+			for (int i = 0; i < frame.getAnimationCount(); i++)
 			{
-				spriteAnimations.add(new SpriteAnimation(imgsExplosion, 1.0, false, a));
-				torpedo_explosion.play();
+				RenderFrame.Animation a = frame.getAnimation(i);
+				a.draw(r, atlas, a.effect == SpriteAnimation.Effect.SHIELD ? shieldFrames : explosionFrames, back);
 			}
-			a.damage();
-			return true;
+			hud.drawEnergy(r, frame);
 		}
-		else
-			return false;
 	}
 	
-	public boolean collide(StaticSprite a, StaticSprite b)
-	{ // planet with planet
-		if (doCollide(a, b))
-			// not really possible, planets don't move
-			return true;
-		else
-			return false;
-	}
-
-	public void shootSlug(IntelligentSprite i)
-	{
-		if (i.getWeaponEnergy() > 0)
-		{
-			i.setWeaponEnergy(i.getWeaponEnergy() - 1);
-			DynamicSprite slug = new DynamicSprite(imgSlug);
-			slug.setX(i.getX());
-			slug.setY(i.getY());
-			slug.setWidth(2);
-			slug.setHeight(2);
-			slug.setVisible(true);
-			slug.setExistsOnLevel(Level.SLUG);
-			if (i == player1)
-				slug.setCollidesWithLevels(new Level[] {Level.PLANET, Level.PLAYER2, Level.TORPEDO});
-			else // player2
-				slug.setCollidesWithLevels(new Level[] {Level.PLANET, Level.PLAYER1, Level.TORPEDO});
-			float firingAngleRadians = (float)(i.getRotation() * 22.5 * Math.PI / 180.0f);
-			slug.setHVelocity(i.getHVelocity() + (float)(Math.cos(firingAngleRadians) * SLUG_SPEED));
-			slug.setVVelocity(i.getVVelocity() + (float)(Math.sin(firingAngleRadians) * SLUG_SPEED));
-			slug.setRotation(i.getRotation());
-			slugs.add(slug);
-			slug_launch.play();
-		}
-	}
-	
-	public void shootTorpedo(IntelligentSprite i)
-	{
-		if (i.getWeaponEnergy() > 0)
-		{
-			i.setWeaponEnergy(i.getWeaponEnergy() - 5);
-			DynamicSprite torpedo = new DynamicSprite(imgTorpedo);
-			torpedo.setX(i.getX());
-			torpedo.setY(i.getY());
-			torpedo.setWidth(8);
-			torpedo.setHeight(8);
-			torpedo.setRotation(0);
-			torpedo.rotate(i.getRotation());
-			torpedo.setVisible(true);
-			torpedo.setExistsOnLevel(Level.TORPEDO);
-			if (i == player1)
-				torpedo.setCollidesWithLevels(new Level[] {Level.PLANET, Level.PLAYER2, Level.SLUG, Level.TORPEDO});
-			else // player2
-				torpedo.setCollidesWithLevels(new Level[] {Level.PLANET, Level.PLAYER1, Level.SLUG, Level.TORPEDO});
-			float firingAngleRadians = (float)(i.getRotation() * 22.5 * Math.PI / 180.0f);
-			torpedo.setHVelocity(i.getHVelocity() + (float)(Math.cos(firingAngleRadians) * TORPEDO_SPEED));
-			torpedo.setVVelocity(i.getVVelocity() + (float)(Math.sin(firingAngleRadians) * TORPEDO_SPEED));
-			torpedo.setRotation(i.getRotation());
-			torpedoes.add(torpedo);
-			torpedo_launch.play();
-		}
-	}
-	
-	public void hyperspace(IntelligentSprite i)
-	{
-		if (i.getWeaponEnergy() >= 10)
-		{
-			i.setX((float)Math.random() * PWIDTH);
-			i.setY((float)Math.random() * PHEIGHT);
-			i.setWeaponEnergy(i.getWeaponEnergy() - 10);
-			ship_warp.play();
-		}
-	}
-	
-	public void cloak(IntelligentSprite i)
-	{
-		if (i.getWeaponEnergy() >= 10)
-		{
-			i.setLastCloakTime((long) (System.nanoTime() / 1e9));
-			i.setVisible(false);
-			i.setWeaponEnergy(i.getWeaponEnergy() - 10);
-		}
-	}
-
 	@Override 
 	public void update(Graphics g) { paint(g); } 
 	 
@@ -1067,8 +725,22 @@ public class GamePanel extends JApplet implements Runnable, KeyListener, MouseLi
 	public void paint(Graphics g) // why not paintComponent()?
 	{
 		//super.paint(g);  // why JApplet doesn't have paintComponent()?  and why do I get flicker if I use this?
-		if (dbImage != null)
-			g.drawImage(dbImage, 0, 0, null);
+		if (canvas != null)
+			return; // the canvas is painted on the game thread
+		VolatileImage image = dbImage;
+		long ready = frameReady;
+		// a lost buffer has nothing worth showing; the next frame will redraw it
+		if (image != null && image.contentsLost() == false)
+		{
+			g.drawImage(image, 0, 0, null);
+			Toolkit.getDefaultToolkit().sync();
+			// several repaints can fold into one paint, so only the first of each frame counts
+			if (ready != 0)
+			{
+				frameReady = 0;
+				presentedSince(ready);
+			}
+		}
 	}
 	
 	private void gameOverMessage(Graphics g)
@@ -0,0 +1,373 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+
+/* Runs a match with no window and takes its players' input over UDP.  One
+ * thread does everything: a Selector wakes it when packets arrive or when the
+ * next tick is due, it ticks the world TICKS_PER_SECOND times a second once
+ * every seat is taken, running up to MAX_CATCH_UP missed ticks back to back
+ * if it falls behind and letting the rest go, and every so many ticks it
+ * sends each player the world as a SnapshotCodec delta from the last one
+ * that player acknowledged.
+ * The server's world is the only real one; clients just show the latest
+ * snapshot.  Packets are little-endian:
+ *
+ *   HELLO    a byte of PROTOCOL_VERSION; asks for a seat
+ *   WELCOME  the player's seat, the number of seats and the number of
+ *            teams, as shorts
+ *   FULL     every seat is taken
+ *   INPUT    the tick of the newest snapshot the player has, a count, then
+ *            that many (int sequence, int Action mask) pairs, oldest first;
+ *            each is resent in several packets in case some are lost; the
+ *            server queues each sequence number once and acts on one a
+ *            tick, as the client predicts them
+ *   DELTA    the player's last input sequence acted on, then what
+ *            SnapshotCodec.encode() wrote against the snapshot that player
+ *            has, or whole if it is too old or the player has none
+ *   BYE      the player is leaving
+ *
+ * The receive and send buffers are made once and reused for every packet.
+ */
+public class GameServer implements Runnable
+{
+	static final byte HELLO = 1;
+	static final byte WELCOME = 2;
+	static final byte FULL = 3;
+	static final byte INPUT = 4;
+	static final byte DELTA = 5;
+	static final byte BYE = 6;
+	static final int PROTOCOL_VERSION = 3;
+	static final int MAX_PACKET = 65507; // the most a UDP datagram can carry
+	static final int DEFAULT_PORT = 27960;
+	static final int DEFAULT_BROADCAST_RATE = 20; // snapshots a second
+	static final long PLAYER_TIMEOUT_NANOS = 5000000000L;
+	static final int MAX_CATCH_UP = 5; // ticks run back to back to catch up, before the time is let go
+	static final int INPUT_QUEUE = 16; // inputs held for each seat until their ticks come, a quarter of a second
+	static final String USAGE = "java spacewar.GameServer [port] [snapshots a second] [ships] [teams]";
+
+	private final GameWorld world;
+	private final DatagramChannel channel;
+	private final Selector selector;
+	private final int ticksPerBroadcast;
+	private final ByteBuffer in = ByteBuffer.allocateDirect(MAX_PACKET).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer out = ByteBuffer.allocateDirect(MAX_PACKET).order(ByteOrder.LITTLE_ENDIAN);
+	private final SocketAddress[] players;
+	private final long[] lastHeard;
+	private final int[] lastSequence; // the newest input queued from each seat
+	private final int[][] queuedSequence, queuedActions; // a ring for each seat
+	private final int[] queueHead, queued;
+	private final int[] takenSequence; // the newest input each seat's ship has acted on
+	private final int[] pendingInput;
+	private final long[] ackedTick; // the newest snapshot each seat has, or -1
+	private final SnapshotCodec codec = new SnapshotCodec();
+	private final SnapshotCodec.History history = codec.newHistory();
+	private LinkConditioner conditioner;
+	private volatile boolean running;
+	private long oversized;
+	private long deltas, deltaBytes; // sent, for working out the bandwidth
+
+	public GameServer(GameMap map, long seed, SocketAddress bind, int broadcastRate) throws IOException
+	{
+		this(map, seed, 2, 2, bind, broadcastRate);
+	}
+
+	// a seat for each of ships ships, on teams teams (see GameWorld)
+	public GameServer(GameMap map, long seed, int ships, int teams, SocketAddress bind, int broadcastRate) throws IOException
+	{
+		if (broadcastRate < 1)
+			throw new IllegalArgumentException("a server sends at least 1 snapshot a second, not " + broadcastRate);
+		this.world = new GameWorld(map, seed, ships, teams);
+		this.players = new SocketAddress[world.getShips().size()];
+		this.lastHeard = new long[players.length];
+		this.lastSequence = new int[players.length];
+		this.queuedSequence = new int[players.length][INPUT_QUEUE];
+		this.queuedActions = new int[players.length][INPUT_QUEUE];
+		this.queueHead = new int[players.length];
+		this.queued = new int[players.length];
+		this.takenSequence = new int[players.length];
+		this.pendingInput = new int[players.length];
+		this.ackedTick = new long[players.length];
+		this.ticksPerBroadcast = Math.max(1, GameWorld.TICKS_PER_SECOND / broadcastRate);
+		this.channel = DatagramChannel.open();
+		this.channel.configureBlocking(false);
+		this.channel.bind(bind);
+		this.selector = Selector.open();
+		this.channel.register(selector, SelectionKey.OP_READ);
+	}
+
+	// accessors
+	public SocketAddress getLocalAddress() throws IOException { return this.channel.getLocalAddress(); }
+	public int getTicksPerBroadcast() { return this.ticksPerBroadcast; }
+	public long getOversized() { return this.oversized; }
+	public long getDeltas() { return this.deltas; }
+	public long getDeltaBytes() { return this.deltaBytes; }
+	public void setConditioner(LinkConditioner conditioner) { this.conditioner = conditioner; }
+
+	// the world belongs to the server's thread while it runs; only read it once stop() has returned
+	public GameWorld getWorld() { return this.world; }
+
+	public void run()
+	{
+		running = true;
+		long period = 1000000000L / GameWorld.TICKS_PER_SECOND;
+		long nextTick = System.nanoTime() + period;
+		try
+		{
+			while (running)
+			{
+				long wait = nextTick - System.nanoTime();
+				if (conditioner != null && conditioner.nextDue() >= 0)
+					wait = Math.min(wait, conditioner.nextDue());
+				if (wait > 0)
+					selector.select(Math.max(1, wait / 1000000L));
+				else
+					selector.selectNow();
+				selector.selectedKeys().clear();
+				receive();
+				if (conditioner != null)
+					conditioner.flush(channel);
+
+				long now = System.nanoTime();
+				for (int k = 0; now >= nextTick && running; k++)
+				{
+					if (k == MAX_CATCH_UP)
+					{
+						nextTick = now + period;
+						break;
+					}
+					tick(now);
+					nextTick += period;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.out.println("Server stopped: " + e);
+		}
+		finally
+		{
+			try
+			{
+				selector.close();
+				channel.close();
+			}
+			catch (IOException e) {}
+		}
+	}
+
+	public void stop()
+	{
+		running = false;
+		selector.wakeup();
+	}
+
+	private void receive() throws IOException
+	{
+		SocketAddress from;
+		while (true)
+		{
+			in.clear();
+			if ((from = channel.receive(in)) == null)
+				return;
+			in.flip();
+			if (in.remaining() == 0)
+				continue;
+			int seat = seatOf(from);
+			switch (in.get())
+			{
+				case HELLO:
+					if (in.remaining() < 1 || in.get() != PROTOCOL_VERSION)
+						break;
+					if (seat == -1)
+						seat = seatOf(null);
+					if (seat == -1)
+					{
+						out.clear();
+						out.put(FULL);
+						send(from);
+					}
+					else
+					{
+						if (players[seat] == null)
+						{
+							players[seat] = from;
+							lastSequence[seat] = 0;
+							queued[seat] = 0;
+							takenSequence[seat] = 0;
+							ackedTick[seat] = -1;
+						}
+						lastHeard[seat] = System.nanoTime();
+						out.clear();
+						out.put(WELCOME).putShort((short)seat).putShort((short)players.length).putShort((short)world.getTeams());
+						send(from);
+					}
+					break;
+				case INPUT:
+					if (seat == -1)
+						break;
+					if (in.remaining() < 9)
+						break;
+					lastHeard[seat] = System.nanoTime();
+					ackedTick[seat] = Math.max(ackedTick[seat], in.getLong());
+					// a full queue takes no more; the inputs it turned away come again in later packets
+					for (int k = 0, n = in.get() & 0xFF; k < n && in.remaining() >= 8 && queued[seat] < INPUT_QUEUE; k++)
+					{
+						int sequence = in.getInt(), actions = in.getInt();
+						if (sequence - lastSequence[seat] > 0)
+						{
+							int slot = (queueHead[seat] + queued[seat]++) % INPUT_QUEUE;
+							queuedSequence[seat][slot] = sequence;
+							queuedActions[seat][slot] = actions;
+							lastSequence[seat] = sequence;
+						}
+					}
+					break;
+				case BYE:
+					if (seat != -1)
+						players[seat] = null;
+					break;
+			}
+		}
+	}
+
+	private void tick(long now) throws IOException
+	{
+		int seated = 0;
+		for (int j = 0; j < players.length; j++)
+		{
+			if (players[j] != null && now - lastHeard[j] > PLAYER_TIMEOUT_NANOS)
+				players[j] = null;
+			if (players[j] != null)
+				seated++;
+		}
+		// the match only runs with every seat taken, and goes straight on between rounds
+		if (seated < players.length)
+		{
+			// what is pressed while waiting is let go, not saved up for the start
+			for (int j = 0; j < players.length; j++)
+			{
+				queued[j] = 0;
+				takenSequence[j] = lastSequence[j];
+			}
+			return;
+		}
+		if (world.getGameState() != GameWorld.GameState.RUNNING)
+			world.resumeGame();
+		// each seat's oldest input, one a tick, just as the client predicted them
+		for (int j = 0; j < players.length; j++)
+		{
+			pendingInput[j] = 0;
+			if (queued[j] > 0)
+			{
+				pendingInput[j] = queuedActions[j][queueHead[j]];
+				takenSequence[j] = queuedSequence[j][queueHead[j]];
+				queueHead[j] = (queueHead[j] + 1) % INPUT_QUEUE;
+				queued[j]--;
+			}
+		}
+		world.tick(pendingInput);
+		if (world.getTicks() % ticksPerBroadcast == 0)
+			broadcast();
+	}
+
+	private void broadcast() throws IOException
+	{
+		long tick = world.getTicks();
+		SnapshotCodec.Frame frame = history.claim(tick);
+		codec.capture(world, frame);
+		for (int j = 0; j < players.length; j++)
+		{
+			if (players[j] == null)
+				continue;
+			SnapshotCodec.Frame base = ackedTick[j] >= 0 && tick - ackedTick[j] < SnapshotCodec.HISTORY ? history.get(ackedTick[j]) : null;
+			out.clear();
+			out.put(DELTA).putInt(takenSequence[j]);
+			try
+			{
+				codec.encode(base, frame, out);
+			}
+			catch (BufferOverflowException e)
+			{
+				oversized++;
+				continue;
+			}
+			deltas++;
+			deltaBytes += out.position();
+			send(players[j]);
+		}
+	}
+
+	private void send(SocketAddress to) throws IOException
+	{
+		out.flip();
+		if (conditioner != null)
+			conditioner.send(channel, out, to);
+		else
+			channel.send(out, to);
+	}
+
+	// the seat of the player at the address, or the first empty seat if it's null
+	private int seatOf(SocketAddress address)
+	{
+		for (int j = 0; j < players.length; j++)
+		{
+			if (address == null ? players[j] == null : address.equals(players[j]))
+				return j;
+		}
+		return -1;
+	}
+
+	/* java spacewar.GameServer [port] [snapshots a second] [ships] [teams] */
+	public static void main(String[] args) throws IOException
+	{
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int rate = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BROADCAST_RATE;
+		int ships = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		int teams = args.length > 3 ? Integer.parseInt(args[3]) : ships;
+		GameServer server;
+		try
+		{
+			server = new GameServer(GameMap.CLASSIC, System.nanoTime(), ships, teams, new InetSocketAddress(port), rate);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.out.println(e.getMessage());
+			System.out.println("Usage: " + USAGE);
+			return;
+		}
+		System.out.println("Serving " + GameMap.CLASSIC.getName() + " on " + server.getLocalAddress() + ", " + rate + " snapshots a second, "
+			+ ships + " ships on " + teams + " teams");
+		server.run();
+	}
+}
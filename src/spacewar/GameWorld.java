@@ -0,0 +1,1065 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import spacewar.SpriteAnimation.Effect;
+import spacewar.StaticSprite.Level;
+
+/* The simulation core.  It owns the planets, ships, slugs, torpedoes and sprite
+ * animations, and advances the game one fixed tick per call to tick().  Nothing
+ * here loads images or sounds or touches java.awt, so it runs just as well
+ * under -Djava.awt.headless=true; GamePanel is only a view over it, and learns
+ * about sounds and new sprites through a GameListener.
+ *
+ * A world made with a seed is deterministic: its clock is its own tick count,
+ * so regeneration, cloaking and animations run in ticks, and hyperspace draws
+ * from the match's own seeded MatchRandom.  The simulation only uses
+ * float and double arithmetic, sqrt and StrictMath, so the same map, seed and
+ * inputs give the same stateHash() on any JVM.
+ */
+public class GameWorld
+{
+	static final int TICKS_PER_SECOND = 60;
+	static final int PWIDTH = 800;
+	static final int PHEIGHT = 600;
+	static final int SHIP_TOP_SPEED = 6;
+	static final int SHIP_TOP_ENERGY = 50;
+	static final int SLUG_SPEED = 6;
+	static final int TORPEDO_SPEED = 6;
+	static final int CLOAK_SECONDS = 4;
+	static final int TORPEDO_DAMAGE = 10;
+	static final int SLUG_DAMAGE = 5;
+	static final int PLANET_DAMAGE = 5;
+	static final int SHIP_DAMAGE = 2;
+	/* Below this many bodies it is quicker to test every pair than to fill the
+	 * grid; see SpatialGridBenchmark for where the two cross.
+	 */
+	static final int BROAD_PHASE_BODIES = 48;
+	static final int GRID_CELL_SIZE = 25;
+	/* From this many projectiles on, moving them and finding what they hit is
+	 * split across the common ForkJoinPool, if it has more than one worker;
+	 * see ParallelBenchmark.  With one worker splitting never paid, and it
+	 * cost up to a fifth at 4096 projectiles but nothing measurable from
+	 * 16384 on.  Runs of fewer than PARALLEL_GRAIN projectiles are not split
+	 * further.
+	 */
+	static final int PARALLEL_PROJECTILES = 16384;
+	static final int PARALLEL_GRAIN = 1024;
+	static final int SNAPSHOT_MAGIC = 0x5357534E; // "SWSN"
+	static final int SNAPSHOT_VERSION = 3;
+	static final int SLUG_COLLIDES = Level.mask(Level.PLANET, Level.SHIP, Level.TORPEDO);
+	static final int TORPEDO_COLLIDES = Level.mask(Level.PLANET, Level.SHIP, Level.SLUG, Level.TORPEDO);
+	static final int SHIP_COLLIDES = Level.mask(Level.PLANET, Level.SHIP, Level.SLUG, Level.TORPEDO);
+	static final int MAX_SHIPS = 256; // a projectile keeps its owner in a byte
+	/* Up to this many ships start evenly round a ring about the middle; more
+	 * start on a sunflower spiral filling the space between the sun and the
+	 * edges, so that none of them start touching.
+	 */
+	static final int RING_SHIPS = 24;
+	private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+	public static enum GameState
+	{
+		PRE, RUNNING, PAUSED, OVER;
+	}
+
+	/* Everything a player can do to his ship.  A tick's input is one int per
+	 * ship, with the bit for each action pressed since the last tick set.
+	 */
+	public static enum Action
+	{
+		SLUG, CLOAK, TORPEDO, ROTATE_CCW, THRUST, ROTATE_CW, WEAPON_ENERGY, HYPERSPACE, SHIELD_ENERGY;
+
+		public int mask() { return 1 << this.ordinal(); }
+	}
+	private static final Action[] ACTIONS = Action.values();
+	private static final Action[] STEERING = {Action.ROTATE_CCW, Action.THRUST, Action.ROTATE_CW}; // in the order tick() applies them
+
+	private volatile GameState gameState = GameState.PRE;
+	private final Clock clock;
+	private final boolean deterministic;
+	private final MatchRandom random;
+	private long ticks;
+	private GameListener listener = new GameListener() {};
+	private final int teams;
+	private final int[] wins; // by team
+
+	private final GameMap map;
+	private final BarnesHut gravity = new BarnesHut();
+	private GravityField gravityField; // the map's static planets, if it has baked them and the match uses them
+	private boolean bakedGravity = true;
+	private final double[] acceleration = new double[2];
+	private float[] planetX = new float[0], planetY = new float[0], planetMass = new float[0];
+
+	ArrayList<StaticSprite> planets = new ArrayList<StaticSprite>();
+	ProjectileStore projectiles = new ProjectileStore();
+	ArrayList<IntelligentSprite> ships = new ArrayList<IntelligentSprite>();
+	ArrayList<SpriteAnimation> spriteAnimations = new ArrayList<SpriteAnimation>();
+	private final Collisions collisions = new Collisions(PWIDTH, PHEIGHT, GRID_CELL_SIZE, GRID_CELL_SIZE / 2f, BROAD_PHASE_BODIES);
+	private int parallelProjectiles;
+	private ProjectileKernel projectileKernel = ProjectileKernel.fastest();
+	private float[] projectileAX = new float[0], projectileAY = new float[0]; // this tick's pull on each projectile
+
+	public GameWorld()
+	{
+		this(Clock.SYSTEM, GameMap.CLASSIC);
+	}
+
+	public GameWorld(Clock clock)
+	{
+		this(clock, GameMap.CLASSIC);
+	}
+
+	public GameWorld(Clock clock, GameMap map)
+	{
+		this(clock, map, new MatchRandom(System.nanoTime()), 2, 2);
+	}
+
+	// a deterministic match
+	public GameWorld(GameMap map, long seed)
+	{
+		this(null, map, new MatchRandom(seed), 2, 2);
+	}
+
+	/* A deterministic match of 2 to MAX_SHIPS ships on 2 to ships teams.  Ship
+	 * j is on team j % teams, so with as many teams as ships it is every ship
+	 * for itself.
+	 */
+	public GameWorld(GameMap map, long seed, int ships, int teams)
+	{
+		this(null, map, new MatchRandom(seed), ships, teams);
+	}
+
+	/* A deterministic match drawing from random, which a host running many
+	 * matches can split() off one seeded generator for each.
+	 */
+	public GameWorld(GameMap map, MatchRandom random)
+	{
+		this(null, map, random, 2, 2);
+	}
+
+	public GameWorld(GameMap map, MatchRandom random, int ships, int teams)
+	{
+		this(null, map, random, ships, teams);
+	}
+
+	private GameWorld(Clock clock, GameMap map, MatchRandom random, int ships, int teams)
+	{
+		if (ships < 2 || ships > MAX_SHIPS)
+			throw new IllegalArgumentException("a match has 2 to " + MAX_SHIPS + " ships, not " + ships);
+		if (teams < 2 || teams > ships)
+			throw new IllegalArgumentException("a match of " + ships + " ships has 2 to " + ships + " teams, not " + teams);
+		this.deterministic = clock == null;
+		this.clock = deterministic ? () -> ticks * 1000000000L / TICKS_PER_SECOND : clock;
+		this.random = random;
+		this.map = map;
+		this.teams = teams;
+		this.wins = new int[teams];
+		// planets that move need a velocity, so they are DynamicSprites
+		for (GameMap.Planet p : map.getPlanets())
+			planets.add(p.getMobile() ? new DynamicSprite() : new StaticSprite());
+		for (int j = 0; j < ships; j++)
+		{
+			IntelligentSprite i = new IntelligentSprite();
+			i.setTeam(j % teams);
+			i.setIndex(j);
+			this.ships.add(i);
+		}
+		registerCollisions();
+		setParallelProjectiles(ForkJoinPool.getCommonPoolParallelism() > 1 ? PARALLEL_PROJECTILES : Integer.MAX_VALUE);
+		initializeGame();
+	}
+
+	// accessors
+	public GameState getGameState() { return this.gameState; }
+	public GameMap getMap() { return this.map; }
+	public boolean getDeterministic() { return this.deterministic; }
+	public long getTicks() { return this.ticks; }
+	public BarnesHut getGravity() { return this.gravity; }
+	public boolean getBakedGravity() { return this.bakedGravity; }
+	// pixels between the nodes of the baked field the match samples, or 0 if it sums every planet
+	public int getGravitySpacing() { return this.gravityField == null ? 0 : this.gravityField.getSpacing(); }
+	public GameListener getListener() { return this.listener; }
+	public void setListener(GameListener listener) { this.listener = listener; }
+	public int getTeams() { return this.teams; }
+	public int getWins(int team) { return this.wins[team]; }
+	public ArrayList<StaticSprite> getPlanets() { return this.planets; }
+	public ProjectileStore getProjectiles() { return this.projectiles; }
+	public ArrayList<IntelligentSprite> getShips() { return this.ships; }
+	public ArrayList<SpriteAnimation> getSpriteAnimations() { return this.spriteAnimations; }
+	public int getParallelProjectiles() { return this.parallelProjectiles; }
+	public ProjectileKernel getProjectileKernel() { return this.projectileKernel; }
+	public void setProjectileKernel(ProjectileKernel projectileKernel) { this.projectileKernel = projectileKernel; }
+	// for a client putting the server's state into its own world
+	void setTicks(long ticks) { this.ticks = ticks; }
+	void setGameState(GameState gameState) { this.gameState = gameState; }
+	void setWins(int team, int wins) { this.wins[team] = wins; }
+
+	/* Whether to sample the map's baked gravity field, if it has one, or sum
+	 * over every planet, as a match recorded before the map was baked did.
+	 * Set it before the match starts, never part way through.
+	 */
+	public void setBakedGravity(boolean bakedGravity)
+	{
+		this.bakedGravity = bakedGravity;
+		this.gravityField = bakedGravity ? map.getGravityField() : null;
+	}
+
+	// Integer.MAX_VALUE keeps everything on the calling thread
+	public void setParallelProjectiles(int parallelProjectiles)
+	{
+		this.parallelProjectiles = parallelProjectiles;
+		collisions.setParallelBodies(parallelProjectiles);
+	}
+
+	/* A hash over everything that decides how the match goes on from here,
+	 * for checking that two runs, or an old and a new version of the code, are
+	 * still in step.
+	 */
+	public long stateHash()
+	{
+		long h = ticks;
+		for (int w : wins)
+			h = h * 31 + w;
+		for (StaticSprite p : planets)
+		{
+			h = h * 31 + Float.floatToIntBits(p.getX());
+			h = h * 31 + Float.floatToIntBits(p.getY());
+		}
+		for (IntelligentSprite i : ships)
+		{
+			h = h * 31 + Float.floatToIntBits(i.getX());
+			h = h * 31 + Float.floatToIntBits(i.getY());
+			h = h * 31 + Float.floatToIntBits(i.getHVelocity());
+			h = h * 31 + Float.floatToIntBits(i.getVVelocity());
+			h = h * 31 + i.getRotation();
+			h = h * 31 + i.getWeaponEnergy();
+			h = h * 31 + i.getShieldEnergy();
+			h = h * 31 + (i.getAlive() ? 1 : 0) + (i.getVisible() ? 2 : 0);
+		}
+		ProjectileStore ps = projectiles;
+		for (int j = 0; j < ps.size; j++)
+		{
+			h = h * 31 + Float.floatToIntBits(ps.x[j]);
+			h = h * 31 + Float.floatToIntBits(ps.y[j]);
+			h = h * 31 + Float.floatToIntBits(ps.vx[j]);
+			h = h * 31 + Float.floatToIntBits(ps.vy[j]);
+			h = h * 31 + ps.kind[j];
+		}
+		return h * 31 + spriteAnimations.size();
+	}
+
+	// the bytes snapshot() will write as things stand
+	public int snapshotSize()
+	{
+		return 4 + 2 + 2 + 8 + 1 + 2 + 4 * wins.length + 8 + 8
+			+ 2 + planets.size() * 4 * 4
+			+ 2 + ships.size() * (5 * 4 + 4 * 4 + 1 + 2 * 8)
+			+ 4 + 4 + projectiles.size * (5 * 4 + 4 + 4)
+			+ 2 + spriteAnimations.size() * (1 + 1 + 2 + 2 * 4 + 2 * 8 + 4);
+	}
+
+	/* Write everything restore() needs to put the match back as it is now, in a
+	 * flat little-endian layout behind a magic number and version:
+	 *
+	 *   the gravity field's spacing, 0 if every planet is summed
+	 *   tick, game state, wins, the random generator's state
+	 *   each planet's position and velocity
+	 *   each ship's position, velocity, top speed, rotation, energies, alive,
+	 *     visible and regen flags, and regen and cloak times
+	 *   the projectiles column by column, as ProjectileStore keeps them, and the
+	 *     next id it will give out
+	 *   each animation's effect, loop, ship (-1 for none), position and times
+	 *
+	 * Nothing about the map, images or listener is written; a snapshot can only
+	 * be restored into a world on the same map.
+	 */
+	public void snapshot(ByteBuffer out)
+	{
+		out.order(ByteOrder.LITTLE_ENDIAN);
+		out.putInt(SNAPSHOT_MAGIC).putShort((short)SNAPSHOT_VERSION);
+		out.putShort((short)getGravitySpacing());
+		out.putLong(ticks).put((byte)gameState.ordinal());
+		out.putShort((short)wins.length);
+		for (int w : wins)
+			out.putInt(w);
+		out.putLong(random.getSeed()).putLong(random.getGamma());
+
+		out.putShort((short)planets.size());
+		for (StaticSprite p : planets)
+		{
+			out.putFloat(p.getX()).putFloat(p.getY());
+			if (p instanceof DynamicSprite)
+				out.putFloat(((DynamicSprite)p).getHVelocity()).putFloat(((DynamicSprite)p).getVVelocity());
+			else
+				out.putFloat(0).putFloat(0);
+		}
+
+		out.putShort((short)ships.size());
+		for (IntelligentSprite i : ships)
+		{
+			out.putFloat(i.getX()).putFloat(i.getY()).putFloat(i.getHVelocity()).putFloat(i.getVVelocity()).putFloat(i.getTopSpeed());
+			out.putInt(i.getRotation()).putInt(i.getTopEnergy()).putInt(i.getWeaponEnergy()).putInt(i.getShieldEnergy());
+			out.put((byte)((i.getAlive() ? 1 : 0) | (i.getVisible() ? 2 : 0) | (i.getLastRegenerated() == IntelligentSprite.Regen.SHIELD ? 4 : 0)));
+			out.putLong(i.getLastRegenTime()).putLong(i.getLastCloakTime());
+		}
+
+		ProjectileStore ps = projectiles;
+		int n = ps.size;
+		out.putInt(n).putInt(ps.nextId);
+		putFloats(out, ps.x, n);
+		putFloats(out, ps.y, n);
+		putFloats(out, ps.vx, n);
+		putFloats(out, ps.vy, n);
+		putFloats(out, ps.lifetime, n);
+		out.put(ps.kind, 0, n).put(ps.owner, 0, n).put(ps.rotation, 0, n);
+		for (int j = 0; j < n; j++)
+			out.put((byte)(ps.alive[j] ? 1 : 0));
+		out.asIntBuffer().put(ps.id, 0, n);
+		out.position(out.position() + n * 4);
+
+		out.putShort((short)spriteAnimations.size());
+		for (SpriteAnimation a : spriteAnimations)
+		{
+			out.put((byte)a.getEffect().ordinal()).put((byte)(a.getLoop() ? 1 : 0)).putShort((short)(a.getSprite() == null ? -1 : ((IntelligentSprite)a.getSprite()).getIndex()));
+			out.putFloat(a.getX()).putFloat(a.getY());
+			out.putDouble(a.getStartTime()).putDouble(a.getCurrentTime()).putInt(a.getCurrentFrame());
+		}
+	}
+
+	// put the match back as it was when snapshot() wrote what's in the buffer
+	public void restore(ByteBuffer in)
+	{
+		in.order(ByteOrder.LITTLE_ENDIAN);
+		if (in.getInt() != SNAPSHOT_MAGIC)
+			throw new IllegalArgumentException("not a snapshot");
+		int version = in.getShort();
+		if (version != SNAPSHOT_VERSION)
+			throw new IllegalArgumentException("unknown snapshot version " + version);
+		int spacing = in.getShort();
+		if (spacing != 0 && spacing != map.getGravitySpacing())
+			throw new IllegalArgumentException("snapshot's gravity is baked at " + spacing + " px, the map's at " + map.getGravitySpacing());
+		setBakedGravity(spacing != 0);
+		ticks = in.getLong();
+		GameState state = GameState.values()[in.get()];
+		if (in.getShort() != wins.length)
+			throw new IllegalArgumentException("snapshot has a different number of teams");
+		for (int j = 0; j < wins.length; j++)
+			wins[j] = in.getInt();
+		random.setState(in.getLong(), in.getLong());
+
+		if (in.getShort() != planets.size())
+			throw new IllegalArgumentException("snapshot is of another map");
+		for (StaticSprite p : planets)
+		{
+			p.setX(in.getFloat());
+			p.setY(in.getFloat());
+			float hVelocity = in.getFloat(), vVelocity = in.getFloat();
+			if (p instanceof DynamicSprite)
+			{
+				((DynamicSprite)p).setHVelocity(hVelocity);
+				((DynamicSprite)p).setVVelocity(vVelocity);
+			}
+		}
+
+		if (in.getShort() != ships.size())
+			throw new IllegalArgumentException("snapshot has a different number of ships");
+		for (IntelligentSprite i : ships)
+		{
+			i.setX(in.getFloat());
+			i.setY(in.getFloat());
+			i.setHVelocity(in.getFloat());
+			i.setVVelocity(in.getFloat());
+			i.setTopSpeed(in.getFloat());
+			i.setRotation(in.getInt());
+			i.rotate(0); // bring the rotated image up to date
+			i.setTopEnergy(in.getInt());
+			i.setWeaponEnergy(in.getInt());
+			i.setShieldEnergy(in.getInt());
+			int flags = in.get();
+			i.setAlive((flags & 1) != 0);
+			i.setVisible((flags & 2) != 0);
+			i.setLastRegenerated((flags & 4) != 0 ? IntelligentSprite.Regen.SHIELD : IntelligentSprite.Regen.WEAPON);
+			i.setLastRegenTime(in.getLong());
+			i.setLastCloakTime(in.getLong());
+		}
+
+		ProjectileStore ps = projectiles;
+		int n = in.getInt();
+		ps.ensureCapacity(n);
+		ps.size = n;
+		ps.nextId = in.getInt();
+		getFloats(in, ps.x, n);
+		getFloats(in, ps.y, n);
+		getFloats(in, ps.vx, n);
+		getFloats(in, ps.vy, n);
+		getFloats(in, ps.lifetime, n);
+		in.get(ps.kind, 0, n).get(ps.owner, 0, n).get(ps.rotation, 0, n);
+		for (int j = 0; j < n; j++)
+			ps.alive[j] = in.get() != 0;
+		in.asIntBuffer().get(ps.id, 0, n);
+		in.position(in.position() + n * 4);
+
+		spriteAnimations.clear();
+		for (int k = 0, count = in.getShort(); k < count; k++)
+		{
+			Effect effect = Effect.values()[in.get()];
+			boolean loop = in.get() != 0;
+			int ship = in.getShort();
+			float X = in.getFloat(), Y = in.getFloat();
+			SpriteAnimation a = new SpriteAnimation(effect, loop, X, Y, in.getDouble());
+			if (ship >= 0)
+				a.setSprite(ships.get(ship));
+			a.setCurrentTime(in.getDouble());
+			a.setCurrentFrame(in.getInt());
+			spriteAnimations.add(a);
+		}
+		gameState = state;
+	}
+
+	private static void putFloats(ByteBuffer out, float[] values, int n)
+	{
+		out.asFloatBuffer().put(values, 0, n);
+		out.position(out.position() + n * 4);
+	}
+
+	private static void getFloats(ByteBuffer in, float[] values, int n)
+	{
+		in.asFloatBuffer().get(values, 0, n);
+		in.position(in.position() + n * 4);
+	}
+
+	public void resumeGame()
+	{
+		// called by the user to start or resume execution
+		gameState = GameState.RUNNING;
+	}
+
+	public void stopGame()
+	{
+		// called by the user to pause execution
+		gameState = GameState.PAUSED;
+	}
+
+	public void endGame()
+	{
+		// called by the user to stop execution
+		gameState = GameState.OVER;
+	}
+
+	void initializeGame()
+	{
+		gameState = GameState.PRE;
+		gravityField = bakedGravity ? map.getGravityField() : null;
+
+		projectiles.clear();
+
+		// add starting sprites
+		for (int j = 0; j < planets.size(); j++)
+		{
+			GameMap.Planet p = map.getPlanets().get(j);
+			StaticSprite planet = planets.get(j);
+			planet.setX(p.getX());
+			planet.setY(p.getY());
+			planet.setWidth(p.getSize());
+			planet.setHeight(p.getSize());
+			planet.setMass(p.getMass());
+			planet.setVisible(true);
+			planet.setExistsOnLevel(Level.PLANET);
+			planet.setCollidesWithLevels(new Level[] {Level.SHIP,Level.SLUG,Level.TORPEDO});
+			if (planet instanceof DynamicSprite)
+			{
+				((DynamicSprite)planet).setHVelocity(p.getHVelocity());
+				((DynamicSprite)planet).setVVelocity(p.getVVelocity());
+			}
+		}
+
+		for (int j = 0; j < ships.size(); j++)
+		{
+			IntelligentSprite i = ships.get(j);
+			spawn(i, j, ships.size());
+			i.setWidth(20);
+			i.setHeight(20);
+			i.setVisible(true);
+			i.setExistsOnLevel(Level.SHIP);
+			i.setCollidesWithLevels(new Level[] {Level.PLANET,Level.SHIP,Level.SLUG,Level.TORPEDO});
+			i.setTopSpeed(SHIP_TOP_SPEED);
+			i.setTopEnergy(SHIP_TOP_ENERGY);
+			i.setWeaponEnergy(SHIP_TOP_ENERGY);
+			i.setShieldEnergy(SHIP_TOP_ENERGY);
+			i.setAlive(true);
+		}
+	}
+
+	/* Where ship j of n starts: evenly round a ring, or on the spiral, in both
+	 * cases flying clockwise about the middle and facing the way it flies.
+	 * With two that is one at the top flying right and one at the bottom
+	 * flying left.  Positions are whole pixels and velocities sixteenths, so
+	 * the trigonometry leaves no stray bits behind.
+	 */
+	private void spawn(IntelligentSprite i, int j, int n)
+	{
+		double angle, radius;
+		if (n <= RING_SHIPS)
+		{
+			angle = -Math.PI / 2 + 2 * Math.PI * j / n;
+			radius = 150;
+		}
+		else
+		{
+			angle = -Math.PI / 2 + j * GOLDEN_ANGLE;
+			radius = Math.sqrt(100 * 100 + (280 * 280 - 100 * 100) * (j + 0.5) / n);
+		}
+		i.setX((float)Math.rint(PWIDTH / 2 + radius * StrictMath.cos(angle)));
+		i.setY((float)Math.rint(PHEIGHT / 2 + radius * StrictMath.sin(angle)));
+		i.setHVelocity((float)(Math.rint(-StrictMath.sin(angle) * 3 * 16) / 16));
+		i.setVVelocity((float)(Math.rint(StrictMath.cos(angle) * 3 * 16) / 16));
+		i.setRotation(0);
+		i.rotate(Math.floorMod((int)Math.round((angle + Math.PI / 2) / (Math.PI / 8)), 16)); // also brings the rotated image up to date
+	}
+
+	/* Advance the world by one tick.  input holds one Action bit mask per ship,
+	 * in the order of getShips(), and may be null if nobody pressed anything.
+	 */
+	public void tick(int[] input)
+	{
+		if (gameState != GameState.RUNNING)
+			return;
+		if (input != null)
+		{
+			for (int j = 0, n = Math.min(input.length, ships.size()); j < n; j++)
+			{
+				// the dead are out until the next round
+				if (ships.get(j).getAlive())
+					applyInput(ships.get(j), input[j]);
+			}
+		}
+		gameUpdate();
+		ticks++;
+	}
+
+	private void applyInput(IntelligentSprite i, int actions)
+	{
+		if (actions == 0)
+			return;
+		for (int k = 0; k < ACTIONS.length; k++)
+		{
+			if ((actions & ACTIONS[k].mask()) != 0)
+				apply(i, ACTIONS[k]);
+		}
+	}
+
+	/* Move one ship a tick as tick() would, for the actions that steer it and
+	 * nothing else: no shots, cloaking, hyperspace or collisions.  A client
+	 * runs its own ship ahead of the server's snapshots with this.
+	 */
+	public void predict(IntelligentSprite i, int actions)
+	{
+		for (Action action : STEERING)
+		{
+			if ((actions & action.mask()) != 0)
+				apply(i, action);
+		}
+		buildGravity();
+		moveShip(i);
+	}
+
+	public void apply(IntelligentSprite i, Action action)
+	{
+		switch (action)
+		{
+			case SLUG:
+				shootSlug(i);
+				break;
+			case CLOAK:
+				cloak(i);
+				break;
+			case TORPEDO:
+				shootTorpedo(i);
+				break;
+			case ROTATE_CCW:
+				i.rotate(-1);
+				break;
+			case THRUST:
+				i.accelerate(1);
+				break;
+			case ROTATE_CW:
+				i.rotate(1);
+				break;
+			case WEAPON_ENERGY:
+				i.transferStoW();
+				break;
+			case HYPERSPACE:
+				hyperspace(i);
+				break;
+			case SHIELD_ENERGY:
+				i.transferWtoS();
+				break;
+		}
+	}
+
+	private void gameUpdate()
+	{
+		long currentTime = (long) (clock.nanoTime() / 1e9);
+
+		buildGravity();
+		movePlanets();
+		moveProjectiles();
+
+		for (int j = ships.size() - 1; j >= 0; j--)
+		{
+			IntelligentSprite i = ships.get(j);
+			moveShip(i);
+
+			// now we regenerate energy at the rate of 1 point per second
+			if (currentTime > i.getLastRegenTime())
+			{
+				i.regen();
+				i.setLastRegenTime(currentTime);
+			}
+			// if either player is cloaked, we check to see if time is up and set to visible
+			if (i.getVisible() == false)
+			{
+				if (currentTime > i.getLastCloakTime() + CLOAK_SECONDS)
+					i.setVisible(true);
+			}
+		}
+		// Move shields along with sprites as soon as possible
+		for (int i2 = spriteAnimations.size() - 1; i2 >= 0; i2--)
+		{
+			SpriteAnimation s = spriteAnimations.get(i2);
+			if (s.getSprite() != null)
+			{
+				s.setX(s.getSprite().getX());
+				s.setY(s.getSprite().getY());
+			}
+		}
+		// now that everything has moved, see what has hit what
+		detectCollisions();
+		projectiles.removeDead();
+
+		// advance each SpriteAnimation, dropping the ones that have finished
+		double animationTime = clock.nanoTime() / 1e6d;
+		boolean exploding = false;
+		for (int i = spriteAnimations.size() - 1; i >= 0; i--)
+		{
+			SpriteAnimation si = spriteAnimations.get(i);
+			si.updateFrame(animationTime);
+			if (si.getCurrentFrame() == -1)
+				spriteAnimations.remove(i);
+			else if (si.getEffect() == Effect.EXPLOSION && si.getSprite() != null)
+				exploding = true;
+		}
+
+		/* A round is over once no more than one team has ships left and the
+		 * ships have finished exploding.  The team left, if any, wins it.
+		 * Shields and torpedoes don't hold it up, or the survivors could
+		 * fight on until they died too.
+		 */
+		if (exploding == false)
+		{
+			int survivors = -1;
+			boolean dead = false;
+			for (int j = 0; j < ships.size(); j++)
+			{
+				IntelligentSprite i = ships.get(j);
+				if (i.getAlive() == false)
+					dead = true;
+				else if (survivors == -1)
+					survivors = i.getTeam();
+				else if (survivors != i.getTeam())
+					return;
+			}
+			if (dead)
+			{
+				if (survivors != -1)
+					wins[survivors]++;
+				initializeGame();
+			}
+		}
+	}
+
+	// gravity, then the ship's own velocity, wrapping at the edges
+	private void moveShip(IntelligentSprite i)
+	{
+		// alter velocity based on gravity wells
+		pull(i.getX(), i.getY(), acceleration);
+		double ax = acceleration[0], ay = acceleration[1];
+
+		// tricky here, unlike thruster acceleration, we still need the ships to be affected even if they are already at their speed limit
+		// so we need to find the magnitude in each direction and scale them back if they're above the top speed
+		float newHVelocity = i.getHVelocity() + (float)ax;
+		float newVVelocity = i.getVVelocity() + (float)ay;
+		float newVelocity = (float)Math.sqrt((double)newHVelocity * newHVelocity + (double)newVVelocity * newVVelocity);
+
+		if (newVelocity <= i.getTopSpeed())
+		{
+			i.setHVelocity(newHVelocity);
+			i.setVVelocity(newVVelocity);
+		}
+		else
+		{
+			float scaleFactor = i.getTopSpeed() / newVelocity;
+			i.setHVelocity(newHVelocity * scaleFactor);
+			i.setVVelocity(newVVelocity * scaleFactor);
+		}
+
+		// move ship based on velocity
+		i.setX(i.getX() + i.getHVelocity());
+		i.setY(i.getY() + i.getVVelocity());
+
+		// wrap around screen if necessary
+		if (i.getX() <= 0 )
+			i.setX(PWIDTH);
+		else if (i.getX() >= PWIDTH)
+			i.setX(0);
+		if (i.getY() < 0 )
+			i.setY(PHEIGHT);
+		else if (i.getY() >= PHEIGHT)
+			i.setY(0);
+	}
+
+	/* much thanks for the formulas: http://physics.stackexchange.com/questions/17285/split-gravitational-force-into-x-y-and-z-componenets
+	 * Every planet pulls, moving or not, so the tree of them is built afresh each
+	 * tick and everything else this tick is pulled toward where they are now.  If
+	 * the match samples the field the map baked its static planets into, only
+	 * the moving ones go into the tree.
+	 */
+	private void buildGravity()
+	{
+		int n = planets.size();
+		if (planetX.length != n)
+		{
+			planetX = new float[n];
+			planetY = new float[n];
+			planetMass = new float[n];
+		}
+		int k = 0;
+		for (int j = 0; j < n; j++)
+		{
+			StaticSprite planet = planets.get(j);
+			if (gravityField != null && !(planet instanceof DynamicSprite))
+				continue;
+			planetX[k] = planet.getX();
+			planetY[k] = planet.getY();
+			planetMass[k] = planet.getMass();
+			k++;
+		}
+		gravity.build(planetX, planetY, planetMass, k);
+	}
+
+	// the pull of every planet at X, Y, into out[0] and out[1]
+	private void pull(double X, double Y, double[] out)
+	{
+		out[0] = 0;
+		out[1] = 0;
+		if (gravityField != null)
+			gravityField.accelerate(X, Y, out);
+		gravity.accelerate(X, Y, out);
+	}
+
+	private void movePlanets()
+	{
+		for (int j = planets.size() - 1; j >= 0; j--)
+		{
+			if (!(planets.get(j) instanceof DynamicSprite))
+				continue;
+			DynamicSprite d = (DynamicSprite)planets.get(j);
+			pull(d.getX(), d.getY(), acceleration);
+			d.setHVelocity(d.getHVelocity() + (float)acceleration[0]);
+			d.setVVelocity(d.getVVelocity() + (float)acceleration[1]);
+
+			d.setX(d.getX() + d.getHVelocity());
+			d.setY(d.getY() + d.getVVelocity());
+
+			// wrap around screen if necessary
+			if (d.getX() <= 0 )
+				d.setX(PWIDTH);
+			else if (d.getX() >= PWIDTH)
+				d.setX(0);
+			if (d.getY() < 0 )
+				d.setY(PHEIGHT);
+			else if (d.getY() >= PHEIGHT)
+				d.setY(0);
+		}
+	}
+
+	/* Each projectile moves on its own, reading only the planets, so any run of
+	 * them can be moved on any thread and they end up exactly where they would
+	 * have on this one.
+	 */
+	private void moveProjectiles()
+	{
+		int n = projectiles.size;
+		if (projectileAX.length < n)
+		{
+			projectileAX = new float[projectiles.x.length];
+			projectileAY = new float[projectiles.x.length];
+		}
+		if (n < parallelProjectiles)
+			moveProjectiles(0, n, acceleration);
+		else
+			ForkJoinPool.commonPool().invoke(new MoveProjectiles(0, n));
+	}
+
+	private final class MoveProjectiles extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		MoveProjectiles(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= PARALLEL_GRAIN)
+				moveProjectiles(from, to, new double[2]);
+			else
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new MoveProjectiles(from, middle), new MoveProjectiles(middle, to));
+			}
+		}
+	}
+
+	private void moveProjectiles(int from, int to, double[] acceleration)
+	{
+		ProjectileStore ps = projectiles;
+		float[] px = ps.x, py = ps.y, ax = projectileAX, ay = projectileAY;
+		byte[] kind = ps.kind;
+		for (int i = from; i < to; i++)
+		{
+			if (kind[i] == ProjectileStore.TORPEDO)
+			{
+				// alter velocity based on gravity wells, slugs are too fast to be bothered by them
+				// don't need to worry about top speed here since torpedoes can neither increase nor decrease speed
+				pull(px[i], py[i], acceleration);
+				ax[i] = (float)acceleration[0];
+				ay[i] = (float)acceleration[1];
+			}
+			else
+			{
+				ax[i] = 0;
+				ay[i] = 0;
+			}
+		}
+		// move projectiles based on velocity, and wrap around screen if necessary
+		projectileKernel.integrate(px, py, ps.vx, ps.vy, ax, ay, ps.lifetime, from, to, PWIDTH, PHEIGHT);
+	}
+
+	/* One handler for every pair of levels that can hit each other; a pair of
+	 * levels without one is never even tested.  Handlers get the index of each
+	 * body in the list it came from.
+	 */
+	private void registerCollisions()
+	{
+		collisions.register(Level.SHIP, Level.PLANET, (a, b) -> collide(ships.get(a), planets.get(b)));
+		collisions.register(Level.SHIP, Level.SLUG, (a, b) -> collide(ships.get(a), b));
+		collisions.register(Level.SHIP, Level.TORPEDO, (a, b) -> collide(ships.get(a), b));
+		collisions.register(Level.SHIP, Level.SHIP, (a, b) -> collide(ships.get(a), ships.get(b)));
+		// teammates fly through each other and each other's fire, and a ship its own
+		collisions.ignoreTeammates(Level.SHIP, Level.SHIP);
+		collisions.ignoreTeammates(Level.SHIP, Level.SLUG);
+		collisions.ignoreTeammates(Level.SHIP, Level.TORPEDO);
+		collisions.register(Level.SLUG, Level.PLANET, (a, b) -> collide(a, planets.get(b)));
+		collisions.register(Level.TORPEDO, Level.PLANET, (a, b) -> collide(a, planets.get(b)));
+		collisions.register(Level.SLUG, Level.TORPEDO, (a, b) -> collide(a, b));
+	}
+
+	private void detectCollisions()
+	{
+		collisions.clear();
+		for (int i = 0; i < planets.size(); i++)
+			collisions.add(planets.get(i), i);
+		for (int i = 0; i < ships.size(); i++)
+		{
+			if (ships.get(i).getAlive())
+				collisions.add(ships.get(i), i);
+		}
+		ProjectileStore ps = projectiles;
+		for (int p = 0; p < ps.size; p++)
+		{
+			boolean slug = ps.kind[p] == ProjectileStore.SLUG;
+			int team = ships.get(ps.owner[p] & 0xFF).getTeam();
+			collisions.add(slug ? Level.SLUG : Level.TORPEDO, slug ? SLUG_COLLIDES : TORPEDO_COLLIDES, team, ps.x[p], ps.y[p], ps.getWidth(p)/2, p);
+		}
+		collisions.run();
+	}
+
+	/* possible collisions
+	 * static sprite: planet
+	 * dynamic sprite: slug or missile
+	 * intelligent sprite: ships
+	 * intelligent sprite vs. intelligent sprite: both bounce, take moderate damage
+	 * intelligent sprite vs. dynamic sprite: intelligent takes minor damage, dynamic is destroyed
+	 * intelligent sprite vs. static sprite: intelligent bounces, takes major damage
+	 * dynamic sprite vs. dynamic sprite: both are destroyed
+	 * dynamic sprite vs. static sprite: dynamic is destroyed
+	 * static sprite vs. static sprite: no collisions possible, neither are capable of movement
+	 * Collisions has already found that the two touch by the time any of these is called.
+	 */
+	void collide(IntelligentSprite a, IntelligentSprite b)
+	{ // ship with ship
+		CollisionResponse.bounce(a, b);
+
+		// both take minor damage
+		a.damage(SHIP_DAMAGE);
+		b.damage(SHIP_DAMAGE);
+		shieldOrExplode(a);
+		shieldOrExplode(b);
+	}
+
+	void collide(IntelligentSprite a, int p)
+	{ // ship with slug or torpedo
+		ProjectileStore ps = projectiles;
+		// ship takes moderate damage, slug or torpedo
+		if (ps.kind[p] == ProjectileStore.SLUG)
+			a.damage(SLUG_DAMAGE);
+		else
+		{	// torpedo causes explosion on itself
+			explode(p);
+			a.damage(TORPEDO_DAMAGE);
+		}
+		ps.damage(p);
+		shieldOrExplode(a);
+	}
+
+	void collide(IntelligentSprite a, StaticSprite b)
+	{ // ship with planet
+		/* Once a ship is dead it doesn't bounce or take damage any more, or it could keep
+		 * producing explosion animations and the game would never reset.
+		 */
+		if (a.getAlive() == false)
+			return;
+		CollisionResponse.bounce(a, b);
+
+		// ship takes major damage
+		a.damage(PLANET_DAMAGE);
+		shieldOrExplode(a);
+	}
+
+	void collide(int a, int b)
+	{ // slug with torpedo
+		ProjectileStore ps = projectiles;
+		// Both slugs/torpedoes die, they have no shield points
+		if (ps.kind[a] == ProjectileStore.TORPEDO)
+			explode(a);
+		if (ps.kind[b] == ProjectileStore.TORPEDO)
+			explode(b);
+		ps.damage(a);
+		ps.damage(b);
+	}
+
+	void collide(int p, StaticSprite b)
+	{ // slug or torpedo with planet
+		ProjectileStore ps = projectiles;
+		// Planet cannot be damaged, slug/torpedo dies
+		if (ps.kind[p] == ProjectileStore.TORPEDO)
+			explode(p);
+		ps.damage(p);
+	}
+
+	private void shieldOrExplode(IntelligentSprite i)
+	{
+		// shield flickers or ship explodes if it dies
+		if (i.getAlive() == true)
+			spriteAnimations.add(new SpriteAnimation(Effect.SHIELD, false, i, clock.nanoTime() / 1e6d));
+		else
+		{
+			spriteAnimations.add(new SpriteAnimation(Effect.EXPLOSION, false, i, clock.nanoTime() / 1e6d));
+			listener.shipExploded(i);
+		}
+	}
+
+	private void explode(int p)
+	{
+		// a torpedo explodes where it is
+		addExplosion(projectiles.x[p], projectiles.y[p]);
+	}
+
+	public void addExplosion(float X, float Y)
+	{
+		spriteAnimations.add(new SpriteAnimation(Effect.EXPLOSION, false, X, Y, clock.nanoTime() / 1e6d));
+		listener.torpedoExploded(X, Y);
+	}
+
+	public void shootSlug(IntelligentSprite i)
+	{
+		if (i.getWeaponEnergy() > 0)
+		{
+			i.setWeaponEnergy(i.getWeaponEnergy() - 1);
+			float firingAngleRadians = (float)(i.getRotation() * 22.5 * Math.PI / 180.0f);
+			projectiles.add(ProjectileStore.SLUG, i.getIndex(), i.getX(), i.getY(),
+				i.getHVelocity() + (float)(StrictMath.cos(firingAngleRadians) * SLUG_SPEED),
+				i.getVVelocity() + (float)(StrictMath.sin(firingAngleRadians) * SLUG_SPEED),
+				i.getRotation());
+			listener.slugLaunched(i);
+		}
+	}
+
+	public void shootTorpedo(IntelligentSprite i)
+	{
+		if (i.getWeaponEnergy() > 0)
+		{
+			i.setWeaponEnergy(i.getWeaponEnergy() - 5);
+			float firingAngleRadians = (float)(i.getRotation() * 22.5 * Math.PI / 180.0f);
+			projectiles.add(ProjectileStore.TORPEDO, i.getIndex(), i.getX(), i.getY(),
+				i.getHVelocity() + (float)(StrictMath.cos(firingAngleRadians) * TORPEDO_SPEED),
+				i.getVVelocity() + (float)(StrictMath.sin(firingAngleRadians) * TORPEDO_SPEED),
+				i.getRotation());
+			listener.torpedoLaunched(i);
+		}
+	}
+
+	public void hyperspace(IntelligentSprite i)
+	{
+		if (i.getWeaponEnergy() >= 10)
+		{
+			i.setX((float)random.nextDouble() * PWIDTH);
+			i.setY((float)random.nextDouble() * PHEIGHT);
+			i.setWeaponEnergy(i.getWeaponEnergy() - 10);
+			listener.shipWarped(i);
+		}
+	}
+
+	public void cloak(IntelligentSprite i)
+	{
+		if (i.getWeaponEnergy() >= 10)
+		{
+			i.setLastCloakTime((long) (clock.nanoTime() / 1e9));
+			i.setVisible(false);
+			i.setWeaponEnergy(i.getWeaponEnergy() - 10);
+		}
+	}
+}
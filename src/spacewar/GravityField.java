@@ -0,0 +1,144 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.List;
+
+/* The pull of a map's planets that never move, worked out once at every node
+ * of a grid over the playfield, so that gravity anywhere afterwards is a
+ * bilinear blend of the four nodes around it instead of a sum over planets.
+ * Close to a planet the pull changes too quickly to blend, so the cells near
+ * one are marked and gravity in them is summed exactly, as before.  Once
+ * built the field is only read, so every match on the map can share it.
+ */
+public class GravityField
+{
+	private static final int EXACT_CELLS = 4; // how many cells out from a planet's surface to sum exactly
+
+	private final int spacing;
+	private final double scale; // 1 / spacing
+	private final int columns;
+	private final int rows;
+	private final float[] ax; // at each node, row by row
+	private final float[] ay;
+	private final boolean[] exact; // for each cell, row by row
+	private final float[] planetX;
+	private final float[] planetY;
+	private final float[] planetMass;
+
+	public GravityField(List<GameMap.Planet> planets, int width, int height, int spacing)
+	{
+		this.spacing = spacing;
+		this.scale = 1.0 / spacing;
+		this.columns = (width + spacing - 1) / spacing;
+		this.rows = (height + spacing - 1) / spacing;
+		this.ax = new float[(columns + 1) * (rows + 1)];
+		this.ay = new float[(columns + 1) * (rows + 1)];
+		this.exact = new boolean[columns * rows];
+
+		int n = 0;
+		for (GameMap.Planet p : planets)
+		{
+			if (p.getMobile() == false)
+				n++;
+		}
+		planetX = new float[n];
+		planetY = new float[n];
+		planetMass = new float[n];
+		float[] nearRadius = new float[n];
+		n = 0;
+		for (GameMap.Planet p : planets)
+		{
+			if (p.getMobile() == false)
+			{
+				planetX[n] = p.getX();
+				planetY[n] = p.getY();
+				planetMass[n] = p.getMass();
+				nearRadius[n] = p.getSize() / 2f + EXACT_CELLS * spacing;
+				n++;
+			}
+		}
+
+		double[] out = new double[2];
+		for (int r = 0; r <= rows; r++)
+		{
+			for (int c = 0; c <= columns; c++)
+			{
+				out[0] = out[1] = 0;
+				accelerateExact(c * spacing, r * spacing, out);
+				ax[r * (columns + 1) + c] = (float)out[0];
+				ay[r * (columns + 1) + c] = (float)out[1];
+			}
+		}
+		for (int r = 0; r < rows; r++)
+		{
+			for (int c = 0; c < columns; c++)
+			{
+				// is the nearest point of the cell within reach of a planet?
+				for (int i = 0; i < n && exact[r * columns + c] == false; i++)
+				{
+					float dx = Math.max(Math.max(c * spacing - planetX[i], 0), planetX[i] - (c + 1) * spacing);
+					float dy = Math.max(Math.max(r * spacing - planetY[i], 0), planetY[i] - (r + 1) * spacing);
+					exact[r * columns + c] = dx * dx + dy * dy < nearRadius[i] * nearRadius[i];
+				}
+			}
+		}
+	}
+
+	public int getSpacing() { return this.spacing; }
+
+	// add the pull of the static planets at X, Y to out[0] and out[1]
+	public void accelerate(double X, double Y, double[] out)
+	{
+		double fx = X * scale, fy = Y * scale;
+		// everything pulled is on the playfield, so truncating is flooring
+		int c = Math.min(Math.max((int)fx, 0), columns - 1);
+		int r = Math.min(Math.max((int)fy, 0), rows - 1);
+		if (exact[r * columns + c])
+		{
+			accelerateExact(X, Y, out);
+			return;
+		}
+		double tx = Math.min(Math.max(fx - c, 0), 1), ty = Math.min(Math.max(fy - r, 0), 1);
+		int n00 = r * (columns + 1) + c, n01 = n00 + columns + 1;
+		double x0 = ax[n00] + (ax[n00 + 1] - ax[n00]) * tx, x1 = ax[n01] + (ax[n01 + 1] - ax[n01]) * tx;
+		double y0 = ay[n00] + (ay[n00 + 1] - ay[n00]) * tx, y1 = ay[n01] + (ay[n01 + 1] - ay[n01]) * tx;
+		out[0] += x0 + (x1 - x0) * ty;
+		out[1] += y0 + (y1 - y0) * ty;
+	}
+
+	// the plain sum over the static planets
+	public void accelerateExact(double X, double Y, double[] out)
+	{
+		for (int i = 0; i < planetX.length; i++)
+		{
+			double dx = planetX[i] - X, dy = planetY[i] - Y;
+			double rsq = dx * dx + dy * dy;
+			if (rsq > 0)
+			{
+				out[0] += planetMass[i] * dx / rsq;
+				out[1] += planetMass[i] * dy / rsq;
+			}
+		}
+	}
+}
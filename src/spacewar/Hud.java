@@ -0,0 +1,397 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.util.ArrayList;
+
+/* The text and bars GamePanel draws over the game.  The title screen's key
+ * bindings never change, so they are drawn once, cut down to the few blocks
+ * that have anything in them, and copied from then on.  The wins counts are put together from a cache of digit
+ * images, one set per player colour, and each player's shield and weapon
+ * bars are drawn into an image of their own only when the energies change.
+ * Once everything is made a frame allocates nothing here: no fonts, no
+ * strings and no glyph layout.  The images are plain translucent
+ * BufferedImages, which Java2D keeps an accelerated copy of for as long as
+ * they don't change.  Drawn by a SoftwareRenderer, the bars are filled
+ * straight into its frame instead, beside images of their two letters.
+ */
+public class Hud
+{
+	static final Font FONT = new Font(Font.DIALOG, Font.PLAIN, 12); // what a Graphics starts with
+	static final Font TITLE_FONT = new Font("SansSerif", Font.BOLD, 48);
+	static final int TITLE_GAP = 16; // blank pixels that split the title screen into blocks
+	static final int BARS_TOP = 510, BARS_HEIGHT = 50; // the rows the energy bars are in
+	static final int BARS_WIDTH = 200; // in from each side, as far as a full bar reaches
+	static final int[] BARS_X = {0, GameWorld.PWIDTH - BARS_WIDTH}; // by player
+	static final Color[] COLORS = {Color.RED, Color.BLUE}; // by player
+	static final int[] WINS_X = {150, 625}, WINS_Y = {160, 160};
+
+	private BufferedImage[] title; // the title screen's blocks
+	private int[] titleX, titleY;
+	private final BufferedImage[][] digits = new BufferedImage[COLORS.length][10];
+	private int digitAscent;
+	private int winsWidth; // of "Wins: ", which the number follows
+	private final BufferedImage[] bars = new BufferedImage[COLORS.length];
+	private final int[] shield = {-1, -1}, weapon = {-1, -1}; // what bars[] shows
+	private final BufferedImage[][] letters = new BufferedImage[COLORS.length][]; // S and W, for software
+	private final int[] scratch = new int[10]; // a number's digits, last first
+	private long barRedraws;
+
+	// accessors
+	public long getBarRedraws() { return this.barRedraws; }
+
+	// the key bindings and each player's wins
+	public void drawTitle(Graphics2D g, int wins0, int wins1, ImageObserver observer)
+	{
+		if (title == null)
+			makeTitle();
+		for (int k = 0; k < title.length; k++)
+			g.drawImage(title[k], titleX[k], titleY[k], observer);
+		drawNumber(g, 0, wins0, WINS_X[0] + winsWidth, WINS_Y[0], observer);
+		drawNumber(g, 1, wins1, WINS_X[1] + winsWidth, WINS_Y[1], observer);
+	}
+
+	// the same, drawn in software
+	public void drawTitle(SoftwareRenderer r, int wins0, int wins1)
+	{
+		if (title == null)
+			makeTitle();
+		for (int k = 0; k < title.length; k++)
+			r.drawImage(title[k], titleX[k], titleY[k]);
+		drawNumber(r, 0, wins0, WINS_X[0] + winsWidth, WINS_Y[0]);
+		drawNumber(r, 1, wins1, WINS_X[1] + winsWidth, WINS_Y[1]);
+	}
+
+	// each player's shield and weapon energy
+	public void drawEnergy(Graphics2D g, RenderFrame frame, ImageObserver observer)
+	{
+		drawBars(g, 0, frame.getShieldEnergy(0), frame.getWeaponEnergy(0), observer);
+		drawBars(g, 1, frame.getShieldEnergy(1), frame.getWeaponEnergy(1), observer);
+	}
+
+	// the same, drawn in software
+	public void drawEnergy(SoftwareRenderer r, RenderFrame frame)
+	{
+		drawBars(r, 0, frame.getShieldEnergy(0), frame.getWeaponEnergy(0));
+		drawBars(r, 1, frame.getShieldEnergy(1), frame.getWeaponEnergy(1));
+	}
+
+	private void drawBars(Graphics2D g, int player, int shieldEnergy, int weaponEnergy, ImageObserver observer)
+	{
+		if (bars[player] == null)
+			bars[player] = newImage(BARS_WIDTH, BARS_HEIGHT);
+		if (shield[player] != shieldEnergy || weapon[player] != weaponEnergy)
+		{
+			shield[player] = shieldEnergy;
+			weapon[player] = weaponEnergy;
+			Graphics2D dbg = bars[player].createGraphics();
+			clear(dbg, bars[player]);
+			dbg.translate(-BARS_X[player], -BARS_TOP);
+			dbg.setFont(FONT);
+			dbg.setColor(COLORS[player]);
+			if (player == 0)
+			{
+				dbg.drawString("S", 20, 530);
+				dbg.fillRect(35, 525, shield[player] * 3, 2);
+				dbg.drawString("W", 20, 550);
+				dbg.fillRect(35, 545, weapon[player] * 3, 2);
+			}
+			else
+			{
+				dbg.drawString("S", 760, 530);
+				dbg.fillRect(755 - shield[player] * 3, 525, shield[player] * 3, 2);
+				dbg.drawString("W", 760, 550);
+				dbg.fillRect(755 - weapon[player] * 3, 545, weapon[player] * 3, 2);
+			}
+			dbg.dispose();
+			barRedraws++;
+		}
+		g.drawImage(bars[player], BARS_X[player], BARS_TOP, observer);
+	}
+
+	// the bars as they are in the image above, clipped to it the same way
+	private void drawBars(SoftwareRenderer r, int player, int shieldEnergy, int weaponEnergy)
+	{
+		if (letters[player] == null)
+			makeLetters(player);
+		int color = COLORS[player].getRGB();
+		int s = shieldEnergy * 3, w = weaponEnergy * 3;
+		if (player == 0)
+		{
+			r.drawImage(letters[player][0], 20, 530 - digitAscent);
+			fillBar(r, 0, 35, 525, s, color);
+			r.drawImage(letters[player][1], 20, 550 - digitAscent);
+			fillBar(r, 0, 35, 545, w, color);
+		}
+		else
+		{
+			r.drawImage(letters[player][0], 760, 530 - digitAscent);
+			fillBar(r, 1, 755 - s, 525, s, color);
+			r.drawImage(letters[player][1], 760, 550 - digitAscent);
+			fillBar(r, 1, 755 - w, 545, w, color);
+		}
+	}
+
+	// a bar two pixels high, clipped to its player's side as the image is
+	private static void fillBar(SoftwareRenderer r, int player, int x, int y, int width, int color)
+	{
+		int left = Math.max(x, BARS_X[player]), right = Math.min(x + width, BARS_X[player] + BARS_WIDTH);
+		if (left < right)
+			r.fillRect(left, y, right - left, 2, color);
+	}
+
+	// n in player's colour with its baseline at Y, starting at X
+	private void drawNumber(Graphics2D g, int player, int n, int X, int Y, ImageObserver observer)
+	{
+		for (int k = digits(n) - 1; k >= 0; k--)
+		{
+			BufferedImage digit = digits[player][scratch[k]];
+			g.drawImage(digit, X, Y - digitAscent, observer);
+			X += digit.getWidth();
+		}
+	}
+
+	private void drawNumber(SoftwareRenderer r, int player, int n, int X, int Y)
+	{
+		for (int k = digits(n) - 1; k >= 0; k--)
+		{
+			BufferedImage digit = digits[player][scratch[k]];
+			r.drawImage(digit, X, Y - digitAscent);
+			X += digit.getWidth();
+		}
+	}
+
+	// n's digits into scratch, last first, and how many there are
+	private int digits(int n)
+	{
+		int count = 0;
+		do
+		{
+			scratch[count++] = n % 10;
+			n /= 10;
+		}
+		while (n > 0 && count < scratch.length);
+		return count;
+	}
+
+	private void makeTitle()
+	{
+		BufferedImage whole = newImage(GameWorld.PWIDTH, GameWorld.PHEIGHT);
+		Graphics2D dbg = whole.createGraphics();
+		dbg.setFont(FONT);
+		Font oldFont = dbg.getFont();
+		dbg.setFont(TITLE_FONT);
+		dbg.setColor(Color.WHITE);
+		dbg.drawString("SPACEWAR", 260, 100);
+		dbg.setFont(oldFont);
+
+		dbg.setColor(Color.RED);
+		dbg.drawString("Wins: ", 150, 160);
+		dbg.drawString("Q", 75, 200);
+		dbg.drawString("Fire", 75, 220);
+		dbg.drawString("Slug",  75,  240);
+		dbg.drawString("A", 75, 270);
+		dbg.drawString("Rotate", 75, 290);
+		dbg.drawString("CCW", 75, 310);
+		dbg.drawString("Z", 75, 340);
+		dbg.drawString("Weapon", 75, 360);
+		dbg.drawString("Energy", 75, 380);
+		dbg.drawString("W", 150, 200);
+		dbg.drawString("", 150, 220);
+		dbg.drawString("Cloak",  150,  240);
+		dbg.drawString("S", 150, 270);
+		dbg.drawString("Engine", 150, 290);
+		dbg.drawString("Thrust", 150, 310);
+		dbg.drawString("X", 150, 340);
+		dbg.drawString("Hyper", 150, 360);
+		dbg.drawString("Space", 150, 380);
+		dbg.drawString("E", 225, 200);
+		dbg.drawString("Fire", 225, 220);
+		dbg.drawString("Torpedo",  225,  240);
+		dbg.drawString("D", 225, 270);
+		dbg.drawString("Rotate", 225, 290);
+		dbg.drawString("CW", 225, 310);
+		dbg.drawString("C", 225, 340);
+		dbg.drawString("Shield", 225, 360);
+		dbg.drawString("Energy", 225, 380);
+		dbg.drawLine(50, 175, 275, 175);
+		dbg.drawLine(50, 250, 275, 250);
+		dbg.drawLine(50, 325, 275, 325);
+		dbg.drawLine(50, 400, 275, 400);
+		dbg.drawLine(50, 175, 50, 400);
+		dbg.drawLine(125, 175, 125, 400);
+		dbg.drawLine(200, 175, 200, 400);
+		dbg.drawLine(275, 175, 275, 400);
+
+		dbg.setColor(Color.BLUE);
+		dbg.drawString("Wins: ", 625, 160);
+		dbg.drawString("7", 550, 200);
+		dbg.drawString("Fire", 550, 220);
+		dbg.drawString("Slug",  550,  240);
+		dbg.drawString("4", 550, 270);
+		dbg.drawString("Rotate", 550, 290);
+		dbg.drawString("CCW", 550, 310);
+		dbg.drawString("1", 550, 340);
+		dbg.drawString("Weapon", 550, 360);
+		dbg.drawString("Energy", 550, 380);
+		dbg.drawString("8", 625, 200);
+		dbg.drawString("", 625, 220);
+		dbg.drawString("Cloak",  625,  240);
+		dbg.drawString("5", 625, 270);
+		dbg.drawString("Engine", 625, 290);
+		dbg.drawString("Thrust", 625, 310);
+		dbg.drawString("2", 625, 340);
+		dbg.drawString("Hyper", 625, 360);
+		dbg.drawString("Space", 625, 380);
+		dbg.drawString("9", 700, 200);
+		dbg.drawString("Fire", 700, 220);
+		dbg.drawString("Torpedo",  700,  240);
+		dbg.drawString("6", 700, 270);
+		dbg.drawString("Rotate", 700, 290);
+		dbg.drawString("CW", 700, 310);
+		dbg.drawString("3", 700, 340);
+		dbg.drawString("Shield", 700, 360);
+		dbg.drawString("Energy", 700, 380);
+		dbg.drawLine(525, 175, 750, 175);
+		dbg.drawLine(525, 250, 750, 250);
+		dbg.drawLine(525, 325, 750, 325);
+		dbg.drawLine(525, 400, 750, 400);
+		dbg.drawLine(525, 175, 525, 400);
+		dbg.drawLine(600, 175, 600, 400);
+		dbg.drawLine(675, 175, 675, 400);
+		dbg.drawLine(750, 175, 750, 400);
+		dbg.setColor(Color.WHITE);
+		dbg.drawString("P: start / pause / resume", 87, 450);
+		dbg.drawString("Esc: quit", 562, 450);
+		FontMetrics metrics = dbg.getFontMetrics(FONT);
+		winsWidth = metrics.stringWidth("Wins: ");
+		dbg.dispose();
+		cut(whole);
+
+		// a digit is as wide as it advances, so they can be laid side by side
+		digitAscent = metrics.getAscent();
+		for (int player = 0; player < COLORS.length; player++)
+		{
+			for (int d = 0; d < 10; d++)
+				digits[player][d] = glyph((char)('0' + d), COLORS[player], metrics);
+		}
+	}
+
+	private void makeLetters(int player)
+	{
+		Graphics2D g = newImage(1, 1).createGraphics();
+		FontMetrics metrics = g.getFontMetrics(FONT);
+		g.dispose();
+		digitAscent = metrics.getAscent();
+		letters[player] = new BufferedImage[] {glyph('S', COLORS[player], metrics), glyph('W', COLORS[player], metrics)};
+	}
+
+	// a character in FONT, as wide as it advances, with its baseline metrics' ascent down
+	private static BufferedImage glyph(char c, Color color, FontMetrics metrics)
+	{
+		BufferedImage glyph = newImage(metrics.charWidth(c), metrics.getAscent() + metrics.getDescent());
+		Graphics2D g = glyph.createGraphics();
+		g.setFont(FONT);
+		g.setColor(color);
+		g.drawString(String.valueOf(c), 0, metrics.getAscent());
+		g.dispose();
+		return glyph;
+	}
+
+	/* Split whole into blocks: bands of rows with something in them, and
+	 * within each band runs of columns, each separated from the next by at
+	 * least TITLE_GAP blank pixels.  Copying those leaves out the mostly empty
+	 * screen around them.
+	 */
+	private void cut(BufferedImage whole)
+	{
+		int width = whole.getWidth(), height = whole.getHeight();
+		boolean[] rows = new boolean[height];
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width && rows[y] == false; x++)
+				rows[y] = whole.getRGB(x, y) != 0;
+		}
+		ArrayList<int[]> blocks = new ArrayList<int[]>();
+		for (int[] band : runs(rows))
+		{
+			boolean[] columns = new boolean[width];
+			for (int x = 0; x < width; x++)
+			{
+				for (int y = band[0]; y < band[1] && columns[x] == false; y++)
+					columns[x] = whole.getRGB(x, y) != 0;
+			}
+			for (int[] run : runs(columns))
+				blocks.add(new int[] {run[0], band[0], run[1] - run[0], band[1] - band[0]});
+		}
+		title = new BufferedImage[blocks.size()];
+		titleX = new int[blocks.size()];
+		titleY = new int[blocks.size()];
+		for (int k = 0; k < title.length; k++)
+		{
+			int[] b = blocks.get(k);
+			title[k] = newImage(b[2], b[3]);
+			Graphics2D g = title[k].createGraphics();
+			g.drawImage(whole, -b[0], -b[1], null);
+			g.dispose();
+			titleX[k] = b[0];
+			titleY[k] = b[1];
+		}
+	}
+
+	// the [start, end) runs of set entries, ones closer than TITLE_GAP joined up
+	private static ArrayList<int[]> runs(boolean[] set)
+	{
+		ArrayList<int[]> runs = new ArrayList<int[]>();
+		for (int i = 0; i < set.length; i++)
+		{
+			if (set[i] == false)
+				continue;
+			int[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+			if (last != null && i - last[1] < TITLE_GAP)
+				last[1] = i + 1;
+			else
+				runs.add(new int[] {i, i + 1});
+		}
+		return runs;
+	}
+
+	private static BufferedImage newImage(int width, int height)
+	{
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+
+	private static void clear(Graphics2D g, BufferedImage image)
+	{
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, image.getWidth(), image.getHeight());
+		g.setComposite(AlphaComposite.SrcOver);
+	}
+}
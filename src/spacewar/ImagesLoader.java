@@ -25,6 +25,7 @@ package spacewar;
 import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.io.*;
 
@@ -33,8 +34,9 @@ import javax.imageio.ImageIO;
 public class ImagesLoader
 {
 	String IMAGE_DIR = "Images";
-	GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-	GraphicsConfiguration gc = ge.getDefaultScreenDevice().getDefaultConfiguration();
+	// with no screen, as when rendering in software for a recording, images are plain premultiplied ones
+	static final GraphicsConfiguration gc = GraphicsEnvironment.isHeadless() ? null
+		: GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
 	
 	public BufferedImage loadImage(String fnm)
 	{
@@ -43,7 +45,7 @@ public class ImagesLoader
 			BufferedImage im = ImageIO.read(getClass().getResource(IMAGE_DIR + "/" + fnm));
 			
 			int transparency = im.getColorModel().getTransparency();
-			BufferedImage copy = gc.createCompatibleImage(im.getWidth(), im.getHeight(), transparency);
+			BufferedImage copy = createImage(im.getWidth(), im.getHeight(), transparency);
 			
 			// create a graphics context
 			Graphics2D g2d = copy.createGraphics();
@@ -84,7 +86,7 @@ public class ImagesLoader
 		// each BufferedImage from the strip file is stored in strip[]
 		for (int i=0; i < number; i++)
 		{
-			strip[i] = gc.createCompatibleImage(imWidth, height, transparency);
+			strip[i] = createImage(imWidth, height, transparency);
 			// create a graphics context
 			stripGC = strip[i].createGraphics();
 			
@@ -94,4 +96,12 @@ public class ImagesLoader
 		}
 		return strip;
 	} // end of loadStripImageArray()	
+
+	// an image the screen can draw quickly, or one that can be drawn without a screen
+	static BufferedImage createImage(int width, int height, int transparency)
+	{
+		if (gc == null)
+			return new BufferedImage(width, height, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+		return gc.createCompatibleImage(width, height, transparency);
+	}
 }
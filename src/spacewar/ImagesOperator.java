@@ -23,17 +23,17 @@
 package spacewar;
 
 import java.awt.Graphics2D;
-import java.awt.GraphicsConfiguration;
-import java.awt.GraphicsEnvironment;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 
 public class ImagesOperator
 {
-	static GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-	static GraphicsConfiguration gc = ge.getDefaultScreenDevice().getDefaultConfiguration();
-
 	public static BufferedImage getRotatedImage(BufferedImage src, int angle)
+	{
+		return getRotatedImage(src, (double)angle);
+	}
+
+	public static BufferedImage getRotatedImage(BufferedImage src, double angle)
 	{
 		if (src == null)
 		{
@@ -42,7 +42,7 @@ public class ImagesOperator
 		}
 	
 		int transparency = src.getColorModel().getTransparency();
-		BufferedImage dest =  gc.createCompatibleImage(src.getWidth(), src.getHeight(), transparency);
+		BufferedImage dest =  ImagesLoader.createImage(src.getWidth(), src.getHeight(), transparency);
 		Graphics2D g2d = dest.createGraphics();
 		
 		AffineTransform origAT = g2d.getTransform();  // save original
@@ -0,0 +1,114 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/* The keys and clicks the event thread takes, on their way to the game
+ * thread, which applies them at the start of its next tick in the order
+ * they came.  It is a ring of commands for exactly one producer and one
+ * consumer, so neither side takes a lock: the producer only ever moves the
+ * tail and the consumer only the head, each publishing its move with an
+ * ordered write that the other reads.  Every command is stamped with the
+ * time it was offered, and the consumer keeps count of how long commands
+ * waited to be taken.  A full ring drops what it is offered rather than
+ * make the event thread wait.
+ */
+public class InputQueue
+{
+	public static final int ACTION = 0; // a player's action: a is the player, b the Action's mask
+	public static final int CLICK = 1; // a mouse click at a, b
+	public static final int PAUSE = 2; // pause, or resume, the game
+	public static final int END = 3; // end the game
+
+	private final int mask;
+	private final int[] kinds, as, bs;
+	private final long[] times;
+	private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+	private long cachedHead; // the producer's last look at head
+	private long dropped; // on the producer's side
+	// the command last taken, and the waits so far, on the consumer's side
+	private int kind, a, b;
+	private long taken, waitNanos, waitMaxNanos;
+
+	// room for capacity commands, rounded up to a power of two
+	public InputQueue(int capacity)
+	{
+		int length = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		mask = length - 1;
+		kinds = new int[length];
+		as = new int[length];
+		bs = new int[length];
+		times = new long[length];
+	}
+
+	// accessors
+	public int getCapacity() { return this.kinds.length; }
+	public long getDropped() { return this.dropped; }
+	public int getKind() { return this.kind; }
+	public int getA() { return this.a; }
+	public int getB() { return this.b; }
+	public long getTaken() { return this.taken; }
+	public double getWait() { return this.taken == 0 ? 0 : this.waitNanos / 1e6d / this.taken; }
+	public double getWaitMax() { return this.waitMaxNanos / 1e6d; }
+
+	// on the producer's thread: queue a command, or drop it if the ring is full
+	public boolean offer(int kind, int a, int b)
+	{
+		long t = tail.get();
+		if (t - cachedHead == kinds.length)
+		{
+			cachedHead = head.get();
+			if (t - cachedHead == kinds.length)
+			{
+				dropped++;
+				return false;
+			}
+		}
+		int slot = (int)t & mask;
+		kinds[slot] = kind;
+		as[slot] = a;
+		bs[slot] = b;
+		times[slot] = System.nanoTime();
+		tail.lazySet(t + 1); // the slot is written before the consumer can see it
+		return true;
+	}
+
+	// on the consumer's thread: take the oldest command, if there is one, for getKind(), getA() and getB()
+	public boolean poll()
+	{
+		long h = head.get();
+		if (h == tail.get())
+			return false;
+		int slot = (int)h & mask;
+		kind = kinds[slot];
+		a = as[slot];
+		b = bs[slot];
+		long wait = System.nanoTime() - times[slot];
+		head.lazySet(h + 1); // read before the producer can write over it
+		taken++;
+		waitNanos += wait;
+		waitMaxNanos = Math.max(waitMaxNanos, wait);
+		return true;
+	}
+}
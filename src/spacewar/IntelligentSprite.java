@@ -38,6 +38,8 @@ public class IntelligentSprite extends DynamicSprite
 	}
 	private long lastRegenTime;
 	private long lastCloakTime;
+	private int team; // ships on one team never hit each other or each other's shots
+	private int index = -1; // its place in GameWorld.getShips(), so its shots know whose they are
 
 	// accessors
 	public float getTopSpeed() { return this.topSpeed; }
@@ -48,10 +50,16 @@ public class IntelligentSprite extends DynamicSprite
 	void setWeaponEnergy(int weaponEnergy) { this.weaponEnergy = weaponEnergy; } 
 	public int getShieldEnergy() { return this.shieldEnergy; }
 	void setShieldEnergy(int shieldEnergy) { this.shieldEnergy = shieldEnergy; } 
+	public Regen getLastRegenerated() { return this.lastRegenerated; }
+	void setLastRegenerated(Regen lastRegenerated) { this.lastRegenerated = lastRegenerated; }
 	public long getLastRegenTime() { return this.lastRegenTime; }
 	void setLastRegenTime(long lastRegenTime) { this.lastRegenTime = lastRegenTime; } 
 	public long getLastCloakTime() { return this.lastCloakTime; }
 	void setLastCloakTime(long lastCloakTime) { this.lastCloakTime = lastCloakTime; } 
+	public int getTeam() { return this.team; }
+	void setTeam(int team) { this.team = team; }
+	public int getIndex() { return this.index; }
+	void setIndex(int index) { this.index = index; }
 
 	// constructors
 	IntelligentSprite() {
@@ -70,10 +78,10 @@ public class IntelligentSprite extends DynamicSprite
 	{
 		// find the rotation in Cartesian radians
 		double phi = (this.getRotation() * -22.5) * (Math.PI / 180.0);
-		float newHVelocity = this.hVelocity + (float)Math.cos(phi);
-		float newVVelocity = this.vVelocity - (float)Math.sin(phi);
+		float newHVelocity = this.hVelocity + (float)StrictMath.cos(phi);
+		float newVVelocity = this.vVelocity - (float)StrictMath.sin(phi);
 		// thrust has no effect if we're already at the speed limit
-		if ((float)Math.pow(Math.pow(newHVelocity, 2.0) + Math.pow(newVVelocity, 2.0), 0.5) <= this.topSpeed)
+		if ((float)Math.sqrt((double)newHVelocity * newHVelocity + (double)newVVelocity * newVVelocity) <= this.topSpeed)
 		{
 			this.setHVelocity(newHVelocity);
 			this.setVVelocity(newVVelocity);
@@ -0,0 +1,124 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/* Stands between a DatagramChannel and the network to make loopback behave
+ * like a bad connection: each packet sent through it is dropped with
+ * probability loss, or held for latency plus up to jitter nanoseconds and
+ * only sent by a later flush().  The held packets are copied into buffers
+ * that go back to a pool once sent, so a steady stream allocates nothing.
+ * GameServer and GameClient use one when given one; each end conditions what
+ * it sends, which covers both directions.
+ */
+public class LinkConditioner
+{
+	private static class Held implements Comparable<Held>
+	{
+		final ByteBuffer packet = ByteBuffer.allocateDirect(GameServer.MAX_PACKET);
+		SocketAddress target;
+		long due;
+		long order; // packets due at the same time go in the order they were sent
+
+		public int compareTo(Held o)
+		{
+			return due != o.due ? Long.compare(due, o.due) : Long.compare(order, o.order);
+		}
+	}
+
+	private final double loss;
+	private final long latency;
+	private final long jitter;
+	private final Random random;
+	private final Clock clock;
+	private final PriorityQueue<Held> held = new PriorityQueue<Held>();
+	private final ArrayDeque<Held> pool = new ArrayDeque<Held>();
+	private long sent;
+	private long dropped;
+
+	public LinkConditioner(double loss, long latencyMillis, long jitterMillis, long seed)
+	{
+		this(loss, latencyMillis, jitterMillis, seed, Clock.SYSTEM);
+	}
+
+	public LinkConditioner(double loss, long latencyMillis, long jitterMillis, long seed, Clock clock)
+	{
+		this.loss = loss;
+		this.latency = latencyMillis * 1000000L;
+		this.jitter = jitterMillis * 1000000L;
+		this.random = new Random(seed);
+		this.clock = clock;
+	}
+
+	// accessors
+	public long getSent() { return this.sent; }
+	public long getDropped() { return this.dropped; }
+
+	// send the packet from its position to its limit, some time later or never
+	public synchronized void send(DatagramChannel channel, ByteBuffer packet, SocketAddress target) throws IOException
+	{
+		if (random.nextDouble() < loss)
+		{
+			dropped++;
+			return;
+		}
+		Held h = pool.isEmpty() ? new Held() : pool.poll();
+		h.packet.clear();
+		h.packet.put(packet);
+		h.packet.flip();
+		h.target = target;
+		h.due = clock.nanoTime() + latency + (jitter > 0 ? (long)(random.nextDouble() * jitter) : 0);
+		h.order = sent++;
+		held.add(h);
+		flush(channel);
+	}
+
+	// send every held packet that is due
+	public synchronized void flush(DatagramChannel channel) throws IOException
+	{
+		long now = clock.nanoTime();
+		while (!held.isEmpty() && held.peek().due <= now)
+		{
+			Held h = held.poll();
+			if (h.target != null)
+				channel.send(h.packet, h.target);
+			else
+				channel.write(h.packet);
+			h.target = null;
+			pool.add(h);
+		}
+	}
+
+	// nanoseconds until the next held packet is due, or -1 if none are held
+	public synchronized long nextDue()
+	{
+		return held.isEmpty() ? -1 : Math.max(0, held.peek().due - clock.nanoTime());
+	}
+}
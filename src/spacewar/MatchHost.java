@@ -0,0 +1,293 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* Runs many matches in one JVM, each ticking TICKS_PER_SECOND times a second.
+ * A single scheduler thread keeps every match's next deadline in a queue,
+ * parks until the earliest one, and then releases that match to tick.  Where
+ * the JVM has virtual threads (Thread.ofVirtual(), found by reflection so
+ * this still builds and runs on 8 and 17), every match gets one, which parks
+ * between ticks and costs next to nothing while it waits; elsewhere the ticks
+ * run on a fixed pool of platform threads instead.  Either way a match is
+ * only put back in the queue once its tick is done, so it never ticks on two
+ * threads at once.
+ *
+ * admit() turns a match away once maxMatches are running, or while the
+ * matches already running are being released late on average by more than
+ * a tick; the average starts over once none are left running.  Every match
+ * keeps count of the ticks it started late and the ones that ran past the
+ * next deadline.
+ */
+public class MatchHost
+{
+	// what a match does on each tick, typically gathering input and ticking the world
+	public static interface Driver
+	{
+		void tick(GameWorld world);
+	}
+
+	public class Match implements Runnable, Comparable<Match>
+	{
+		private final GameWorld world;
+		private final Driver driver;
+		private final Runnable tick = this::tickOnce;
+		private long deadline;
+		private volatile boolean released;
+		private volatile boolean stopped;
+		private Thread thread;
+		private long ticks;
+		private long late; // ticks released after their deadline by more than LATE_NANOS
+		private long overruns; // ticks that finished after the next deadline
+		private long maxLateness;
+		private long tickNanos;
+
+		Match(GameWorld world, Driver driver, long deadline)
+		{
+			this.world = world;
+			this.driver = driver;
+			this.deadline = deadline;
+		}
+
+		// accessors
+		public GameWorld getWorld() { return this.world; }
+		public synchronized long getTicks() { return this.ticks; }
+		public synchronized long getLate() { return this.late; }
+		public synchronized long getOverruns() { return this.overruns; }
+		public synchronized long getMaxLateness() { return this.maxLateness; }
+		public synchronized long getTickNanos() { return this.tickNanos; }
+		public boolean getStopped() { return this.stopped; }
+
+		// under the queue's lock, so a match is only stopped once and never put back in the queue after
+		public void stop()
+		{
+			synchronized (queue)
+			{
+				if (stopped)
+					return;
+				stopped = true;
+				queue.remove(this);
+				// with nothing left to be late, how late the last matches ran says nothing about the next
+				if (running.decrementAndGet() == 0)
+					averageLateness = 0;
+			}
+			if (thread != null)
+				LockSupport.unpark(thread);
+		}
+
+		// a match's own virtual thread: wait to be released, tick, repeat
+		public void run()
+		{
+			while (!stopped)
+			{
+				while (!released && !stopped)
+					LockSupport.park(this);
+				released = false;
+				if (!stopped)
+					tickOnce();
+			}
+		}
+
+		private void release()
+		{
+			if (thread != null)
+			{
+				released = true;
+				LockSupport.unpark(thread);
+			}
+			else
+				pool.execute(tick);
+		}
+
+		private void tickOnce()
+		{
+			// a pooled tick can still be handed out after the match is stopped
+			if (stopped)
+				return;
+			long start = System.nanoTime();
+			try
+			{
+				driver.tick(world);
+			}
+			catch (RuntimeException e)
+			{
+				System.out.println("Match stopped: " + e);
+				stop();
+				return;
+			}
+			long end = System.nanoTime();
+			long lateness = start - deadline;
+			synchronized (this)
+			{
+				ticks++;
+				tickNanos += end - start;
+				if (lateness > LATE_NANOS)
+					late++;
+				if (lateness > maxLateness)
+					maxLateness = lateness;
+				deadline += period;
+				if (end > deadline)
+				{
+					// too far behind to catch up tick for tick; start again from now
+					overruns++;
+					deadline = end;
+				}
+			}
+			schedule(this, lateness);
+		}
+
+		public int compareTo(Match o)
+		{
+			return Long.compare(deadline, o.deadline);
+		}
+	}
+
+	static final long LATE_NANOS = 1000000L;
+
+	private final int maxMatches;
+	private final long period = 1000000000L / GameWorld.TICKS_PER_SECOND;
+	private final ThreadFactory virtualThreads = virtualThreadFactory();
+	private final ExecutorService pool;
+	private final PriorityQueue<Match> queue = new PriorityQueue<Match>();
+	private final Thread scheduler;
+	private final AtomicLong running = new AtomicLong();
+	private volatile boolean shutdown;
+	private volatile long averageLateness; // a moving average, in nanoseconds, guarded by queue
+	private long admitted;
+	private long rejected;
+
+	public MatchHost(int maxMatches, int poolThreads)
+	{
+		this.maxMatches = maxMatches;
+		this.pool = virtualThreads == null ? Executors.newFixedThreadPool(poolThreads, r ->
+		{
+			Thread t = new Thread(r, "match-pool");
+			t.setDaemon(true);
+			return t;
+		}) : null;
+		this.scheduler = new Thread(this::schedule, "match-scheduler");
+		this.scheduler.setDaemon(true);
+		this.scheduler.start();
+	}
+
+	// accessors
+	public int getMaxMatches() { return this.maxMatches; }
+	public long getRunning() { return this.running.get(); }
+	public boolean getVirtualThreads() { return this.virtualThreads != null; }
+	public long getAverageLateness() { return this.averageLateness; }
+	public synchronized long getAdmitted() { return this.admitted; }
+	public synchronized long getRejected() { return this.rejected; }
+
+	// start ticking the world, or null if the host is full or running behind
+	public synchronized Match admit(GameWorld world, Driver driver)
+	{
+		if (shutdown || running.get() >= maxMatches || averageLateness > period)
+		{
+			rejected++;
+			return null;
+		}
+		admitted++;
+		running.incrementAndGet();
+		Match match = new Match(world, driver, System.nanoTime() + period);
+		if (virtualThreads != null)
+		{
+			match.thread = virtualThreads.newThread(match);
+			match.thread.start();
+		}
+		schedule(match, 0);
+		return match;
+	}
+
+	public void shutdown()
+	{
+		shutdown = true;
+		Match[] matches;
+		synchronized (queue)
+		{
+			matches = queue.toArray(new Match[0]);
+		}
+		for (Match m : matches)
+			m.stop();
+		LockSupport.unpark(scheduler);
+		if (pool != null)
+			pool.shutdown();
+	}
+
+	private void schedule(Match match, long lateness)
+	{
+		boolean earliest;
+		synchronized (queue)
+		{
+			if (match.stopped)
+				return;
+			// an exponential moving average over roughly the last thousand ticks
+			averageLateness += (Math.max(lateness, 0) - averageLateness) / 1024;
+			queue.add(match);
+			earliest = queue.peek() == match;
+		}
+		if (earliest)
+			LockSupport.unpark(scheduler);
+	}
+
+	// the scheduler thread: park until the earliest deadline, then release everything due
+	private void schedule()
+	{
+		while (!shutdown)
+		{
+			Match due = null;
+			long wait;
+			synchronized (queue)
+			{
+				Match first = queue.peek();
+				wait = first == null ? period : first.deadline - System.nanoTime();
+				if (first != null && wait <= 0)
+					due = queue.poll();
+			}
+			if (due != null)
+				due.release();
+			else
+				LockSupport.parkNanos(this, wait);
+		}
+	}
+
+	// Thread.ofVirtual().factory() where there is one, null where there isn't
+	private static ThreadFactory virtualThreadFactory()
+	{
+		try
+		{
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class).invoke(builder, "match-", 0L);
+			return (ThreadFactory)Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+/* A match's own source of randomness: the SplitMix64 generator behind
+ * java.util.SplittableRandom, which gives the same numbers from the same seed,
+ * but with its two longs of state out in the open so a snapshot can save and
+ * restore them.  One match never shares one with another; a host starting
+ * many matches can split() one per match off a single seeded generator.
+ */
+public class MatchRandom
+{
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private long seed;
+	private long gamma; // always odd
+
+	public MatchRandom(long seed)
+	{
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private MatchRandom(long seed, long gamma)
+	{
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	// accessors
+	long getSeed() { return this.seed; }
+	long getGamma() { return this.gamma; }
+
+	void setState(long seed, long gamma)
+	{
+		this.seed = seed;
+		this.gamma = gamma | 1L;
+	}
+
+	public MatchRandom split()
+	{
+		return new MatchRandom(nextLong(), mixGamma(nextSeed()));
+	}
+
+	public long nextLong()
+	{
+		return mix64(nextSeed());
+	}
+
+	// uniform in [0, 1)
+	public double nextDouble()
+	{
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	private long nextSeed()
+	{
+		return seed += gamma;
+	}
+
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static long mixGamma(long z)
+	{
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		// too few bit transitions make a poor gamma
+		return Long.bitCount(z ^ (z >>> 1)) < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
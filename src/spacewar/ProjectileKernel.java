@@ -0,0 +1,75 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+/* The element-wise half of moving projectiles: add this tick's pull to each
+ * velocity, the velocity to each position, wrap at the edges of the playfield
+ * and age it by a tick.  Working out the pull itself means walking the planets
+ * and is left to GameWorld.  SCALAR is a plain loop; fastest() also tries the
+ * Vector API version in src-vector, which only exists if it was compiled and
+ * the JVM was started with --add-modules jdk.incubator.vector.  Both do the
+ * same float arithmetic, so they leave every projectile in the same place.
+ */
+public interface ProjectileKernel
+{
+	public static final ProjectileKernel SCALAR = new ProjectileKernel()
+	{
+		public void integrate(float[] x, float[] y, float[] vx, float[] vy, float[] ax, float[] ay, float[] lifetime, int from, int to, float width, float height)
+		{
+			for (int i = from; i < to; i++)
+			{
+				vx[i] += ax[i];
+				vy[i] += ay[i];
+				x[i] += vx[i];
+				y[i] += vy[i];
+
+				// wrap around screen if necessary
+				if (x[i] <= 0)
+					x[i] = width;
+				else if (x[i] >= width)
+					x[i] = 0;
+				if (y[i] < 0)
+					y[i] = height;
+				else if (y[i] >= height)
+					y[i] = 0;
+
+				lifetime[i]++;
+			}
+		}
+	};
+
+	void integrate(float[] x, float[] y, float[] vx, float[] vy, float[] ax, float[] ay, float[] lifetime, int from, int to, float width, float height);
+
+	public static ProjectileKernel fastest()
+	{
+		try
+		{
+			return (ProjectileKernel)Class.forName("spacewar.VectorProjectileKernel").getDeclaredConstructor().newInstance();
+		}
+		catch (Exception | LinkageError e)
+		{
+			// not compiled in, or the incubator module isn't there
+			return SCALAR;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Arrays;
+
+/* Every slug and torpedo in play, kept as parallel primitive arrays rather than
+ * a list of DynamicSprites, so the loops that move them run over contiguous
+ * memory.  A projectile is just an index into the arrays; indexes are only
+ * stable until the next remove(), which moves the last projectile into the
+ * hole instead of shifting everything after it down.  Each projectile also
+ * gets an id when it is added, which stays with it, for anything that has to
+ * follow one projectile from tick to tick.
+ */
+public class ProjectileStore
+{
+	public static final byte SLUG = 0;
+	public static final byte TORPEDO = 1;
+	private static final int[] SIZE = {2, 8}; // width and height, by kind
+
+	float[] x;
+	float[] y;
+	float[] vx;
+	float[] vy;
+	float[] lifetime; // ticks since it was fired
+	byte[] kind;
+	byte[] owner; // index of the ship that fired it
+	byte[] rotation; // in 22.5 degree steps, like DynamicSprite
+	boolean[] alive;
+	int[] id;
+	int size;
+	int nextId;
+
+	public ProjectileStore()
+	{
+		this(64);
+	}
+
+	public ProjectileStore(int capacity)
+	{
+		x = new float[capacity];
+		y = new float[capacity];
+		vx = new float[capacity];
+		vy = new float[capacity];
+		lifetime = new float[capacity];
+		kind = new byte[capacity];
+		owner = new byte[capacity];
+		rotation = new byte[capacity];
+		alive = new boolean[capacity];
+		id = new int[capacity];
+	}
+
+	// accessors
+	public int size() { return this.size; }
+	public float getX(int i) { return this.x[i]; }
+	public float getY(int i) { return this.y[i]; }
+	public float getHVelocity(int i) { return this.vx[i]; }
+	public float getVVelocity(int i) { return this.vy[i]; }
+	public float getLifetime(int i) { return this.lifetime[i]; }
+	public byte getKind(int i) { return this.kind[i]; }
+	public byte getOwner(int i) { return this.owner[i]; }
+	public int getRotation(int i) { return this.rotation[i]; }
+	public boolean getAlive(int i) { return this.alive[i]; }
+	public int getId(int i) { return this.id[i]; }
+	public int getWidth(int i) { return SIZE[this.kind[i]]; }
+	public int getHeight(int i) { return SIZE[this.kind[i]]; }
+	public static int getSize(byte kind) { return SIZE[kind]; }
+
+	public int add(byte kind, int owner, float x, float y, float vx, float vy, int rotation)
+	{
+		if (size == this.x.length)
+			grow();
+		int i = size++;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.vx[i] = vx;
+		this.vy[i] = vy;
+		this.lifetime[i] = 0;
+		this.kind[i] = kind;
+		this.owner[i] = (byte)owner;
+		this.rotation[i] = (byte)Math.floorMod(rotation, 16);
+		this.alive[i] = true;
+		this.id[i] = nextId++;
+		return i;
+	}
+
+	void damage(int i)
+	{
+		alive[i] = false;
+	}
+
+	// swap-remove: the last projectile takes index i
+	public void remove(int i)
+	{
+		int last = --size;
+		x[i] = x[last];
+		y[i] = y[last];
+		vx[i] = vx[last];
+		vy[i] = vy[last];
+		lifetime[i] = lifetime[last];
+		kind[i] = kind[last];
+		owner[i] = owner[last];
+		rotation[i] = rotation[last];
+		alive[i] = alive[last];
+		id[i] = id[last];
+	}
+
+	// drop every projectile that has been destroyed
+	public void removeDead()
+	{
+		for (int i = size - 1; i >= 0; i--)
+		{
+			if (alive[i] == false)
+				remove(i);
+		}
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public int count(byte kind)
+	{
+		int count = 0;
+		for (int i = 0; i < size; i++)
+		{
+			if (this.kind[i] == kind)
+				count++;
+		}
+		return count;
+	}
+
+	// room for at least capacity projectiles without growing
+	void ensureCapacity(int capacity)
+	{
+		while (x.length < capacity)
+			grow();
+	}
+
+	private void grow()
+	{
+		int capacity = Math.max(16, x.length * 2);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		vx = Arrays.copyOf(vx, capacity);
+		vy = Arrays.copyOf(vy, capacity);
+		lifetime = Arrays.copyOf(lifetime, capacity);
+		kind = Arrays.copyOf(kind, capacity);
+		owner = Arrays.copyOf(owner, capacity);
+		rotation = Arrays.copyOf(rotation, capacity);
+		alive = Arrays.copyOf(alive, capacity);
+		id = Arrays.copyOf(id, capacity);
+	}
+}
@@ -0,0 +1,323 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import spacewar.GameWorld.GameState;
+
+/* What a frame needs of the world at one tick, copied out by the game thread
+ * so that a render thread can draw it while the world moves on: where each
+ * sprite is, which way it is turned, whether it shows, and which frame each
+ * animation is at.  Nothing in it refers back to the world.  Once published
+ * through a TripleBuffer it is only read until it comes back round to be
+ * captured over, and its sprites are reused then rather than made again.
+ *
+ * Each sprite also keeps where the frame captured before had it, matched up
+ * by ship, planet or projectile id.  Drawing it back part of the way there
+ * puts it between the two most recent captures, which lets frames come
+ * faster or slower than ticks and still move smoothly.  Anything that moved
+ * farther than MAX_STEP a tick since, wrapping round an edge or jumping
+ * through hyperspace, is drawn where it is rather than dragged across the
+ * space between.
+ */
+public class RenderFrame
+{
+	static final float MAX_STEP = 2 * (GameWorld.SHIP_TOP_SPEED + GameWorld.SLUG_SPEED); // pixels a tick
+
+	// a sprite as it is drawn
+	static final class Sprite
+	{
+		BufferedImage image;
+		boolean rotates;
+		int rotation; // in steps of 22.5 degrees clockwise
+		float x, y, px, py; // the centre, and where the frame before had it
+		int width, height;
+		boolean visible;
+		int id; // a projectile's, or -1
+
+		// back of the way from where it is now to where it was in the frame before
+		int left(float back) { return Math.round(x + (px - x) * back) - width/2; }
+		int top(float back) { return Math.round(y + (py - y) * back) - height/2; }
+
+		// from its rotation's or image's place in an atlas, if it has one
+		void draw(Graphics g, SpriteAtlas atlas, float back, ImageObserver imOb)
+		{
+			if (visible == false)
+				return;
+			SpriteAtlas.Region r = rotates ? atlas.getRotation(image, rotation) : atlas.get(image);
+			if (r == null)
+				g.drawImage(rotates ? RotationCache.getRotatedImage(image, rotation * 22.5) : image, left(back), top(back), width, height, imOb);
+			else
+				atlas.draw(g, r, left(back), top(back), width, height, imOb);
+		}
+
+		// the same, drawn in software
+		void draw(SoftwareRenderer sr, SpriteAtlas atlas, float back)
+		{
+			if (visible == false)
+				return;
+			SpriteAtlas.Region r = rotates ? atlas.getRotation(image, rotation) : atlas.get(image);
+			if (r == null)
+				sr.drawImage(rotates ? RotationCache.getRotatedImage(image, rotation * 22.5) : image, left(back), top(back), width, height);
+			else
+				sr.draw(atlas, r, left(back), top(back), width, height);
+		}
+	}
+
+	// an animation's current frame, 20 pixels square
+	static final class Animation
+	{
+		SpriteAnimation.Effect effect;
+		int frame;
+		float x, y, px, py; // moving with the ship it is on, if it is on one
+
+		int left(float back) { return (int)(x + (px - x) * back - 10); }
+		int top(float back) { return (int)(y + (py - y) * back - 10); }
+
+		void draw(Graphics g, SpriteAtlas atlas, SpriteAtlas.Region[] frames, float back, ImageObserver imOb)
+		{
+			atlas.draw(g, frames[frame], left(back), top(back), 20, 20, imOb);
+		}
+
+		void draw(SoftwareRenderer sr, SpriteAtlas atlas, SpriteAtlas.Region[] frames, float back)
+		{
+			sr.draw(atlas, frames[frame], left(back), top(back), 20, 20);
+		}
+	}
+
+	private final BufferedImage slug, torpedo;
+	private long tick, steps, published;
+	private GameMap map;
+	private GameState gameState;
+	private final int[] wins = new int[2], shield = new int[2], weapon = new int[2]; // of the keyboard's two players
+	private final ArrayList<Sprite> stills = new ArrayList<Sprite>(); // the planets that stay put
+	private final ArrayList<Sprite> sprites = new ArrayList<Sprite>(); // moving planets, projectiles, ships
+	private final ArrayList<Animation> animations = new ArrayList<Animation>();
+	private int stillCount, spriteCount, animationCount;
+	private int[] planetAt = new int[0], shipAt = new int[0]; // in sprites, or -1
+	private int[] idTable = new int[0]; // open addressing from projectile id to sprites
+
+	// the images the projectiles are drawn with, as the world only has their kinds
+	public RenderFrame(BufferedImage slug, BufferedImage torpedo)
+	{
+		this.slug = slug;
+		this.torpedo = torpedo;
+	}
+
+	// accessors
+	public long getTick() { return this.tick; }
+	public long getSteps() { return this.steps; }
+	public long getPublished() { return this.published; }
+	void setPublished(long published) { this.published = published; }
+	public GameMap getMap() { return this.map; }
+	public GameState getGameState() { return this.gameState; }
+	public int getWins(int player) { return this.wins[player]; }
+	public int getShieldEnergy(int player) { return this.shield[player]; }
+	public int getWeaponEnergy(int player) { return this.weapon[player]; }
+	public int getStillCount() { return this.stillCount; }
+	Sprite getStill(int i) { return this.stills.get(i); }
+	public int getSpriteCount() { return this.spriteCount; }
+	Sprite getSprite(int i) { return this.sprites.get(i); }
+	public int getAnimationCount() { return this.animationCount; }
+	Animation getAnimation(int i) { return this.animations.get(i); }
+
+	/* Copy the world as it is now, steps ticks on from previous, the frame
+	 * captured before it, over whatever this frame held.  With no previous
+	 * frame, or no steps between, everything is drawn where it is.
+	 */
+	public void capture(GameWorld world, long steps, RenderFrame previous)
+	{
+		if (steps == 0)
+			previous = null;
+		this.tick = world.getTicks();
+		this.steps = previous == null ? 0 : steps;
+		this.map = world.getMap();
+		this.gameState = world.getGameState();
+		ArrayList<IntelligentSprite> ships = world.getShips();
+		for (int player = 0; player < 2; player++)
+		{
+			wins[player] = world.getWins(player);
+			shield[player] = ships.get(player).getShieldEnergy();
+			weapon[player] = ships.get(player).getWeaponEnergy();
+		}
+
+		// in the order GamePanel has always drawn them, last first
+		stillCount = 0;
+		spriteCount = 0;
+		ArrayList<StaticSprite> planets = world.getPlanets();
+		if (planetAt.length < planets.size())
+			planetAt = new int[planets.size()];
+		for (int i = planets.size() - 1; i >= 0; i--)
+		{
+			StaticSprite p = planets.get(i);
+			if (BackgroundLayer.isStill(p))
+			{
+				planetAt[i] = -1;
+				set(next(stills, stillCount++), p, null);
+			}
+			else
+			{
+				planetAt[i] = spriteCount;
+				set(next(sprites, spriteCount++), p, previous == null || i >= previous.planetAt.length ? null : previous.sprite(previous.planetAt[i]));
+			}
+		}
+		ProjectileStore projectiles = world.getProjectiles();
+		for (int i = projectiles.size() - 1; i >= 0; i--)
+		{
+			Sprite s = next(sprites, spriteCount++);
+			s.image = projectiles.getKind(i) == ProjectileStore.SLUG ? slug : torpedo;
+			s.rotates = true;
+			s.rotation = projectiles.getRotation(i);
+			s.x = projectiles.getX(i);
+			s.y = projectiles.getY(i);
+			s.width = projectiles.getWidth(i);
+			s.height = projectiles.getHeight(i);
+			s.visible = true;
+			s.id = projectiles.getId(i);
+			from(s, previous == null ? null : previous.projectile(s.id));
+		}
+		// dead ships too, as GamePanel always drew them, until they are hidden
+		if (shipAt.length < ships.size())
+			shipAt = new int[ships.size()];
+		for (int j = ships.size() - 1; j >= 0; j--)
+		{
+			shipAt[j] = spriteCount;
+			set(next(sprites, spriteCount++), ships.get(j), previous == null || j >= previous.shipAt.length ? null : previous.sprite(previous.shipAt[j]));
+		}
+		index();
+
+		animationCount = 0;
+		ArrayList<SpriteAnimation> spriteAnimations = world.getSpriteAnimations();
+		for (int i = spriteAnimations.size() - 1; i >= 0; i--)
+		{
+			SpriteAnimation si = spriteAnimations.get(i);
+			if (si.getCurrentFrame() == -1)
+				continue;
+			if (animationCount == animations.size())
+				animations.add(new Animation());
+			Animation a = animations.get(animationCount++);
+			a.effect = si.getEffect();
+			a.frame = si.getCurrentFrame();
+			a.x = si.getX();
+			a.y = si.getY();
+			// moved as far as the ship it is on
+			Sprite on = si.getSprite() == null ? null : sprites.get(shipAt[((IntelligentSprite)si.getSprite()).getIndex()]);
+			a.px = on == null ? a.x : a.x + on.px - on.x;
+			a.py = on == null ? a.y : a.y + on.py - on.y;
+		}
+	}
+
+	// the sprite at index, or null for -1
+	private Sprite sprite(int index)
+	{
+		return index == -1 ? null : sprites.get(index);
+	}
+
+	// the projectile with this id, or null if it was not in this frame
+	private Sprite projectile(int id)
+	{
+		int mask = idTable.length - 1;
+		for (int slot = mix(id) & mask; idTable[slot] != -1; slot = (slot + 1) & mask)
+		{
+			Sprite s = sprites.get(idTable[slot]);
+			if (s.id == id)
+				return s;
+		}
+		return null;
+	}
+
+	// put every projectile in idTable, with room to spare so that runs stay short
+	private void index()
+	{
+		int length = Integer.highestOneBit(Math.max(spriteCount, 8)) << 2;
+		if (idTable.length < length)
+			idTable = new int[length];
+		Arrays.fill(idTable, -1);
+		int mask = idTable.length - 1;
+		for (int i = 0; i < spriteCount; i++)
+		{
+			int id = sprites.get(i).id;
+			if (id == -1)
+				continue;
+			int slot = mix(id) & mask;
+			while (idTable[slot] != -1)
+				slot = (slot + 1) & mask;
+			idTable[slot] = i;
+		}
+	}
+
+	private static int mix(int id)
+	{
+		return id * 0x9E3779B9;
+	}
+
+	// where s was in the frame before, or where it is if it was not there or jumped since
+	private void from(Sprite s, Sprite before)
+	{
+		float reach = MAX_STEP * steps;
+		if (before == null || Math.abs(s.x - before.x) > reach || Math.abs(s.y - before.y) > reach)
+		{
+			s.px = s.x;
+			s.py = s.y;
+		}
+		else
+		{
+			s.px = before.x;
+			s.py = before.y;
+		}
+	}
+
+	private static Sprite next(ArrayList<Sprite> list, int i)
+	{
+		if (i == list.size())
+			list.add(new Sprite());
+		return list.get(i);
+	}
+
+	private void set(Sprite s, StaticSprite from, Sprite before)
+	{
+		s.image = from.getBufImg();
+		s.x = from.getX();
+		s.y = from.getY();
+		s.width = from.getWidth();
+		s.height = from.getHeight();
+		s.visible = from.getVisible();
+		s.id = -1;
+		if (from instanceof DynamicSprite)
+		{
+			s.rotates = true;
+			s.rotation = ((DynamicSprite)from).getRotation();
+		}
+		else
+		{
+			s.rotates = false;
+			s.rotation = 0;
+		}
+		from(s, before);
+	}
+}
@@ -0,0 +1,167 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* Plays back a log written by ReplayWriter.  The file is memory-mapped rather
+ * than read, so nothing is copied and the log is decoded straight from the
+ * page cache as the world catches up with it.  advance() runs the world as
+ * many ticks as asked for, with no clock or rendering in the way, so a match
+ * can be scrubbed through far faster than it was played; GamePanel renders
+ * only once per call when it is showing one.
+ */
+public class ReplayReader
+{
+	private final ByteBuffer log;
+	private final long seed;
+	private final String mapName;
+	private final int ships, teams;
+	private final int gravitySpacing;
+	private long nextTick; // the tick the next record is for
+	private int nextCode = -1; // its code, or -1 once the log has run out
+
+	public ReplayReader(Path path) throws IOException
+	{
+		this(map(path));
+	}
+
+	public ReplayReader(ByteBuffer log) throws IOException
+	{
+		this.log = log;
+		if (log.remaining() < 13 || log.getInt() != ReplayWriter.MAGIC)
+			throw new IOException("not a replay");
+		int version = log.get();
+		if (version != ReplayWriter.VERSION && version != 2)
+			throw new IOException("unknown replay version " + version);
+		seed = log.getLong();
+		byte[] name = new byte[(int)readVarint()];
+		log.get(name);
+		mapName = new String(name, StandardCharsets.UTF_8);
+		ships = (int)readVarint();
+		teams = (int)readVarint();
+		// a version 2 log is from before any map was baked
+		gravitySpacing = version == 2 ? 0 : (int)readVarint();
+		readHead();
+	}
+
+	private static ByteBuffer map(Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	// accessors
+	public long getSeed() { return this.seed; }
+	public String getMapName() { return this.mapName; }
+	public int getShips() { return this.ships; }
+	public int getTeams() { return this.teams; }
+	public int getGravitySpacing() { return this.gravitySpacing; }
+	public boolean getAtEnd() { return this.nextCode == -1 || this.nextCode == ReplayWriter.END; }
+
+	/* A world ready to replay the match on, which must be the map it was played
+	 * on, with gravity worked out the same way.
+	 */
+	public GameWorld newWorld(GameMap map)
+	{
+		if (!map.getName().equals(mapName))
+			throw new IllegalArgumentException("replay is of " + mapName + ", not " + map.getName());
+		if (gravitySpacing != 0 && gravitySpacing != map.getGravitySpacing())
+			throw new IllegalArgumentException("replay's gravity is baked at " + gravitySpacing + " px, the map's at " + map.getGravitySpacing());
+		GameWorld world = new GameWorld(map, seed, ships, teams);
+		world.setBakedGravity(gravitySpacing != 0);
+		return world;
+	}
+
+	/* Run the world up to the given number of ticks further through the match,
+	 * and return how many it ran; fewer means the match is over.
+	 */
+	public int advance(GameWorld world, int ticks)
+	{
+		int played = 0;
+		int[] input = new int[world.getShips().size()];
+		while (played < ticks && world.getGameState() != GameWorld.GameState.OVER)
+		{
+			long tick = world.getTicks();
+			if (nextCode == -1 || (nextCode == ReplayWriter.END && nextTick <= tick))
+				break;
+			for (int j = 0; j < input.length; j++)
+				input[j] = 0;
+			while (nextCode != -1 && nextCode != ReplayWriter.END && nextTick <= tick)
+			{
+				if (nextCode == ReplayWriter.EXPLOSION)
+				{
+					int X = (int)readVarint();
+					int Y = (int)readVarint();
+					world.addExplosion(X, Y);
+				}
+				else
+				{
+					int player = nextCode;
+					if (player == ReplayWriter.FAR_PLAYER)
+						player += (int)readVarint();
+					int actions = (int)readVarint();
+					if (player < input.length)
+						input[player] |= actions;
+				}
+				readHead();
+			}
+			// a game between rounds, or paused while it was being played, only ever waited here
+			if (world.getGameState() != GameWorld.GameState.RUNNING)
+				world.resumeGame();
+			world.tick(input);
+			played++;
+		}
+		return played;
+	}
+
+	private void readHead()
+	{
+		if (log.hasRemaining() == false)
+		{
+			nextCode = -1;
+			return;
+		}
+		nextTick += readVarint();
+		nextCode = log.hasRemaining() ? log.get() & 0xFF : -1;
+	}
+
+	private long readVarint()
+	{
+		long value = 0;
+		for (int shift = 0; ; shift += 7)
+		{
+			int b = log.get();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/* Records a deterministic match as the seed it was started with and the input
+ * it was given, which is all it takes to play it again (see ReplayReader).
+ * The log is written front to back and never revisited:
+ *
+ *   header  "SWRP", a version byte, the seed as 8 bytes, the map's name as a
+ *           varint length and UTF-8, varint counts of ships and teams, then
+ *           a varint of the spacing of the gravity field the match sampled,
+ *           0 if it summed every planet (version 2 logs stop before it)
+ *   record  a varint count of ticks since the last record, then a code byte:
+ *             0-252  a player's index, then a varint of that player's Action mask
+ *             253    a player's index less 253 as a varint, then the same
+ *             254    the end of the match
+ *             255    an explosion from a mouse click, then varint X and Y
+ *
+ * A player only gets a record on ticks with something pressed, so a whole match
+ * is usually a few kilobytes.
+ */
+public class ReplayWriter implements Closeable
+{
+	static final int MAGIC = 0x53575250; // "SWRP"
+	static final int VERSION = 3;
+	static final int FAR_PLAYER = 253;
+	static final int END = 254;
+	static final int EXPLOSION = 255;
+
+	private final DataOutputStream out;
+	private long lastTick;
+	private boolean finished;
+
+	// gravitySpacing is GameWorld.getGravitySpacing() for the match being recorded
+	public ReplayWriter(Path path, long seed, String mapName, int gravitySpacing) throws IOException
+	{
+		this(Files.newOutputStream(path), seed, mapName, gravitySpacing, 2, 2);
+	}
+
+	public ReplayWriter(Path path, long seed, String mapName, int gravitySpacing, int ships, int teams) throws IOException
+	{
+		this(Files.newOutputStream(path), seed, mapName, gravitySpacing, ships, teams);
+	}
+
+	public ReplayWriter(OutputStream out, long seed, String mapName, int gravitySpacing) throws IOException
+	{
+		this(out, seed, mapName, gravitySpacing, 2, 2);
+	}
+
+	public ReplayWriter(OutputStream out, long seed, String mapName, int gravitySpacing, int ships, int teams) throws IOException
+	{
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.out.writeInt(MAGIC);
+		this.out.writeByte(VERSION);
+		this.out.writeLong(seed);
+		byte[] name = mapName.getBytes(StandardCharsets.UTF_8);
+		writeVarint(name.length);
+		this.out.write(name);
+		writeVarint(ships);
+		writeVarint(teams);
+		writeVarint(gravitySpacing);
+	}
+
+	// the input a world was given on the given tick, one Action mask per player
+	public void record(long tick, int[] input) throws IOException
+	{
+		for (int player = 0; player < input.length; player++)
+		{
+			if (input[player] != 0)
+			{
+				if (player < FAR_PLAYER)
+					writeHead(tick, player);
+				else
+				{
+					writeHead(tick, FAR_PLAYER);
+					writeVarint(player - FAR_PLAYER);
+				}
+				writeVarint(input[player]);
+			}
+		}
+	}
+
+	// an explosion added just before the given tick
+	public void recordExplosion(long tick, int X, int Y) throws IOException
+	{
+		writeHead(tick, EXPLOSION);
+		writeVarint(X);
+		writeVarint(Y);
+	}
+
+	// mark the match over at the given tick and close the log
+	public void finish(long tick) throws IOException
+	{
+		if (finished == false)
+		{
+			writeHead(Math.max(tick, lastTick), END);
+			finished = true;
+		}
+		out.close();
+	}
+
+	public void close() throws IOException
+	{
+		finish(lastTick);
+	}
+
+	private void writeHead(long tick, int code) throws IOException
+	{
+		writeVarint(tick - lastTick);
+		out.writeByte(code);
+		lastTick = tick;
+	}
+
+	// seven bits at a time, low first, with the top bit set on all but the last
+	private void writeVarint(long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.writeByte((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+}
@@ -0,0 +1,134 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* A process-wide cache of rotated copies of sprite images, keyed by the source
+ * image and the angle.  Sprites turn in SPRITE_STEPS steps of 22.5 degrees,
+ * and at that resolution each image gets an array of that many rotations,
+ * made as they are first asked for.  configure() can make the steps finer;
+ * past MAX_EAGER_STEPS there would be too many to keep, so rotations are
+ * made on demand and the least recently used dropped once there are more
+ * than maxImages of them.
+ */
+public class RotationCache
+{
+	public static final int SPRITE_STEPS = 16;
+	private static final int MAX_EAGER_STEPS = 64;
+	private static int steps = SPRITE_STEPS;
+	private static int maxImages = 4096;
+	private static final IdentityHashMap<BufferedImage, BufferedImage[]> rotations = new IdentityHashMap<BufferedImage, BufferedImage[]>();
+	private static final LinkedHashMap<Key, BufferedImage> recentRotations = new LinkedHashMap<Key, BufferedImage>(256, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest)
+		{
+			return size() > maxImages;
+		}
+	};
+
+	private static final class Key
+	{
+		private final BufferedImage src;
+		private final int step;
+
+		Key(BufferedImage src, int step)
+		{
+			this.src = src;
+			this.step = step;
+		}
+
+		public boolean equals(Object o)
+		{
+			return o instanceof Key && ((Key)o).src == src && ((Key)o).step == step;
+		}
+
+		public int hashCode()
+		{
+			return System.identityHashCode(src) * 31 + step;
+		}
+	}
+
+	// accessors
+	public static synchronized int getSteps() { return steps; }
+	public static synchronized int getMaxImages() { return maxImages; }
+
+	/* Turn images in steps rotations per full turn, keeping at most maxImages
+	 * of them when there are too many steps to keep every one.  Every angle a
+	 * sprite turns to has to stay on a step, so steps is a multiple of
+	 * SPRITE_STEPS.  Everything cached so far is thrown away.
+	 */
+	public static synchronized void configure(int steps, int maxImages)
+	{
+		if (steps <= 0 || steps % SPRITE_STEPS != 0)
+			throw new IllegalArgumentException("steps must be a positive multiple of " + SPRITE_STEPS);
+		if (maxImages <= 0)
+			throw new IllegalArgumentException("maxImages must be positive");
+		RotationCache.steps = steps;
+		RotationCache.maxImages = maxImages;
+		rotations.clear();
+		recentRotations.clear();
+	}
+
+	/* src turned angle degrees clockwise.  The angle has to be on one of the
+	 * configured steps, give or take a hundredth of a step.
+	 */
+	public static synchronized BufferedImage getRotatedImage(BufferedImage src, double angle)
+	{
+		if (src == null)
+			return null;
+		double exact = angle * steps / 360.0;
+		long nearest = Math.round(exact);
+		if (Math.abs(exact - nearest) > 0.01)
+			throw new IllegalArgumentException(angle + " degrees is not a multiple of " + 360.0 / steps);
+		int step = (int)Math.floorMod(nearest, (long)steps);
+		if (steps <= MAX_EAGER_STEPS)
+		{
+			BufferedImage[] images = rotations.get(src);
+			if (images == null)
+			{
+				images = new BufferedImage[steps];
+				rotations.put(src, images);
+			}
+			if (images[step] == null)
+				images[step] = ImagesOperator.getRotatedImage(src, step * 360.0 / steps);
+			return images[step];
+		}
+		else
+		{
+			Key key = new Key(src, step);
+			BufferedImage image = recentRotations.get(key);
+			if (image == null)
+			{
+				image = ImagesOperator.getRotatedImage(src, step * 360.0 / steps);
+				recentRotations.put(key, image);
+			}
+			return image;
+		}
+	}
+}
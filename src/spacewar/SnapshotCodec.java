@@ -0,0 +1,1049 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import spacewar.SpriteAnimation.Effect;
+
+/* Sends a client what it needs to draw the world in as few bits as it can.
+ * capture() quantises the world into a Frame: positions to positionBits per
+ * axis across the playfield, velocities to velocityBits across
+ * +-MAX_VELOCITY pixels a tick, rotations to their 16 steps, and energies,
+ * flags and owners to a few bits each.  encode() writes a frame as the change
+ * from an older one the client is known to have:
+ *
+ *   tick, baseline tick (-1 for none) and the frame's hash, as longs
+ *   game state, and the number of teams and their wins
+ *   each planet and ship, and each projectile in both frames, as one bit if
+ *     it is just where its old velocity says, else its residuals from that
+ *     prediction, zigzagged and Exp-Golomb coded
+ *   the projectiles gone since the baseline, by their place in it
+ *   the projectiles new since the baseline, whole
+ *   the animations, whole, since they are few and short-lived
+ *
+ * With no baseline every row goes whole.  Projectiles are matched up by
+ * their ProjectileStore id, so a frame keeps them sorted by it.  A codec
+ * reuses its scratch space and belongs to one thread.
+ */
+public class SnapshotCodec
+{
+	public static final int DEFAULT_POSITION_BITS = 16;
+	public static final int DEFAULT_VELOCITY_BITS = 12;
+	static final float MAX_VELOCITY = 16; // pixels a tick; anything faster is sent as this
+	static final int HISTORY = 64; // ticks a baseline is kept for
+
+	// columns, in the order a Table keeps them
+	static final int X = 0, Y = 1, VX = 2, VY = 3;
+	static final int SHIP_ROTATION = 4, SHIP_WEAPON = 5, SHIP_SHIELD = 6, SHIP_FLAGS = 7;
+	static final int PROJECTILE_ROTATION = 4, PROJECTILE_KIND = 5, PROJECTILE_OWNER = 6;
+	static final int ANIMATION_EFFECT = 2, ANIMATION_SHIP = 3, ANIMATION_AGE = 4;
+	private static final int[][] MOVING_ORDER = columnOrders(true), STILL_ORDER = columnOrders(false);
+	private static final Effect[] EFFECTS = Effect.values();
+	private static final GameWorld.GameState[] STATES = GameWorld.GameState.values();
+
+	private final int positionBits;
+	private final int velocityBits;
+	private final float xScale, yScale; // quantisation steps per pixel
+	private final float velocityScale; // steps per pixel a tick
+	private final int[] planetBits, shipBits, projectileBits, animationBits;
+	private final BitWriter writer = new BitWriter();
+	private final BitReader reader = new BitReader();
+	private long[] order = new long[0]; // projectile id and index pairs, for sorting
+	private int[] pairBase = new int[0], pairRow = new int[0]; // rows in both frames
+	private int[] gone = new int[0]; // baseline rows of the projectiles that died
+	private long[] residuals = new long[0];
+	private final int[] lengths = new int[33]; // how many residuals have each bit length
+	private Table spawned;
+
+	public SnapshotCodec()
+	{
+		this(DEFAULT_POSITION_BITS, DEFAULT_VELOCITY_BITS);
+	}
+
+	public SnapshotCodec(int positionBits, int velocityBits)
+	{
+		if (positionBits < 8 || positionBits > 24 || velocityBits < 4 || velocityBits > 24)
+			throw new IllegalArgumentException("positions take 8 to 24 bits and velocities 4 to 24");
+		this.positionBits = positionBits;
+		this.velocityBits = velocityBits;
+		this.xScale = (float)(1 << positionBits) / GameWorld.PWIDTH;
+		this.yScale = (float)(1 << positionBits) / GameWorld.PHEIGHT;
+		this.velocityScale = (1 << (velocityBits - 1)) / MAX_VELOCITY;
+		int p = positionBits, v = velocityBits;
+		planetBits = new int[] {p, p, v, v};
+		shipBits = new int[] {p, p, v, v, 4, 8, 8, 2};
+		projectileBits = new int[] {p, p, v, v, 4, 1, 8};
+		animationBits = new int[] {p, p, 1, 9, 8}; // ship is its index + 1, up to GameWorld.MAX_SHIPS
+		spawned = new Table(projectileBits, true, true);
+	}
+
+	// accessors
+	public int getPositionBits() { return this.positionBits; }
+	public int getVelocityBits() { return this.velocityBits; }
+
+	public Frame newFrame()
+	{
+		return new Frame(this);
+	}
+
+	public History newHistory()
+	{
+		return new History(this, HISTORY);
+	}
+
+	/* Quantise what a client would draw of the world into frame.  Animation
+	 * ages are worked out from the tick, so the world should be deterministic.
+	 */
+	public void capture(GameWorld world, Frame frame)
+	{
+		frame.tick = world.getTicks();
+		frame.gameState = world.getGameState().ordinal();
+		if (frame.wins.length != world.getTeams())
+			frame.wins = new int[world.getTeams()];
+		for (int j = 0; j < frame.wins.length; j++)
+			frame.wins[j] = world.getWins(j);
+
+		Table t = frame.planets;
+		t.clear();
+		for (StaticSprite p : world.getPlanets())
+		{
+			int r = t.add();
+			t.column[X][r] = quantiseX(p.getX());
+			t.column[Y][r] = quantiseY(p.getY());
+			boolean mobile = p instanceof DynamicSprite;
+			t.column[VX][r] = quantiseVelocity(mobile ? ((DynamicSprite)p).getHVelocity() : 0);
+			t.column[VY][r] = quantiseVelocity(mobile ? ((DynamicSprite)p).getVVelocity() : 0);
+		}
+
+		t = frame.ships;
+		t.clear();
+		for (IntelligentSprite i : world.getShips())
+		{
+			int r = t.add();
+			t.column[X][r] = quantiseX(i.getX());
+			t.column[Y][r] = quantiseY(i.getY());
+			t.column[VX][r] = quantiseVelocity(i.getHVelocity());
+			t.column[VY][r] = quantiseVelocity(i.getVVelocity());
+			t.column[SHIP_ROTATION][r] = Math.floorMod(i.getRotation(), 16);
+			t.column[SHIP_WEAPON][r] = Math.max(0, Math.min(i.getWeaponEnergy(), 255));
+			t.column[SHIP_SHIELD][r] = Math.max(0, Math.min(i.getShieldEnergy(), 255)); // a dead ship's can be below 0
+			t.column[SHIP_FLAGS][r] = (i.getAlive() ? 1 : 0) | (i.getVisible() ? 2 : 0);
+		}
+
+		ProjectileStore ps = world.getProjectiles();
+		int n = ps.size;
+		if (order.length < n)
+			order = new long[Math.max(n, order.length * 2)];
+		for (int j = 0; j < n; j++)
+			order[j] = (long)ps.id[j] << 32 | j;
+		Arrays.sort(order, 0, n);
+		t = frame.projectiles;
+		t.clear();
+		t.ensureCapacity(n);
+		for (int k = 0; k < n; k++)
+		{
+			int j = (int)order[k];
+			int r = t.add();
+			t.id[r] = ps.id[j];
+			t.column[X][r] = quantiseX(ps.x[j]);
+			t.column[Y][r] = quantiseY(ps.y[j]);
+			t.column[VX][r] = quantiseVelocity(ps.vx[j]);
+			t.column[VY][r] = quantiseVelocity(ps.vy[j]);
+			t.column[PROJECTILE_ROTATION][r] = ps.rotation[j];
+			t.column[PROJECTILE_KIND][r] = ps.kind[j];
+			t.column[PROJECTILE_OWNER][r] = ps.owner[j] & 0xFF;
+		}
+
+		t = frame.animations;
+		t.clear();
+		double now = world.getTicks() * 1e3d / GameWorld.TICKS_PER_SECOND;
+		for (SpriteAnimation a : world.getSpriteAnimations())
+		{
+			int r = t.add();
+			t.column[X][r] = quantiseX(a.getX());
+			t.column[Y][r] = quantiseY(a.getY());
+			t.column[ANIMATION_EFFECT][r] = a.getEffect().ordinal();
+			t.column[ANIMATION_SHIP][r] = a.getSprite() == null ? 0 : ((IntelligentSprite)a.getSprite()).getIndex() + 1;
+			long age = Math.round((now - a.getStartTime()) * GameWorld.TICKS_PER_SECOND / 1e3d);
+			t.column[ANIMATION_AGE][r] = (int)Math.max(0, Math.min(age, 255));
+		}
+		frame.hash = frame.computeHash();
+	}
+
+	/* Show frame in a world on the same map, which is not ticked itself.  The
+	 * launches, torpedo explosions and ship deaths since the frame it last
+	 * showed go to the world's listener.
+	 */
+	public void apply(Frame frame, GameWorld world)
+	{
+		if (frame.planets.size != world.getPlanets().size() || frame.ships.size != world.getShips().size())
+			throw new IllegalArgumentException("frame is of another map");
+		GameListener listener = world.getListener();
+		long since = frame.tick - world.getTicks();
+		world.setTicks(frame.tick);
+		world.setGameState(STATES[frame.gameState]);
+		for (int j = 0, n = Math.min(frame.wins.length, world.getTeams()); j < n; j++)
+			world.setWins(j, frame.wins[j]);
+
+		Table t = frame.planets;
+		ArrayList<StaticSprite> planets = world.getPlanets();
+		for (int r = 0; r < t.size; r++)
+		{
+			StaticSprite p = planets.get(r);
+			p.setX(t.column[X][r] / xScale);
+			p.setY(t.column[Y][r] / yScale);
+			if (p instanceof DynamicSprite)
+			{
+				((DynamicSprite)p).setHVelocity(velocity(t.column[VX][r]));
+				((DynamicSprite)p).setVVelocity(velocity(t.column[VY][r]));
+			}
+		}
+
+		t = frame.ships;
+		ArrayList<IntelligentSprite> ships = world.getShips();
+		for (int r = 0; r < t.size; r++)
+		{
+			IntelligentSprite i = ships.get(r);
+			i.setX(t.column[X][r] / xScale);
+			i.setY(t.column[Y][r] / yScale);
+			i.setHVelocity(velocity(t.column[VX][r]));
+			i.setVVelocity(velocity(t.column[VY][r]));
+			if (Math.floorMod(i.getRotation(), 16) != t.column[SHIP_ROTATION][r])
+			{
+				i.setRotation(t.column[SHIP_ROTATION][r]);
+				i.rotate(0); // bring the rotated image up to date
+			}
+			i.setWeaponEnergy(t.column[SHIP_WEAPON][r]);
+			i.setShieldEnergy(t.column[SHIP_SHIELD][r]);
+			int flags = t.column[SHIP_FLAGS][r];
+			if (i.getAlive() && (flags & 1) == 0)
+				listener.shipExploded(i);
+			i.setAlive((flags & 1) != 0);
+			i.setVisible((flags & 2) != 0);
+		}
+
+		t = frame.projectiles;
+		ProjectileStore ps = world.getProjectiles();
+		int newest = ps.nextId;
+		ps.ensureCapacity(t.size);
+		ps.size = t.size;
+		for (int r = 0; r < t.size; r++)
+		{
+			ps.x[r] = t.column[X][r] / xScale;
+			ps.y[r] = t.column[Y][r] / yScale;
+			ps.vx[r] = velocity(t.column[VX][r]);
+			ps.vy[r] = velocity(t.column[VY][r]);
+			ps.lifetime[r] = 0;
+			ps.rotation[r] = (byte)t.column[PROJECTILE_ROTATION][r];
+			ps.kind[r] = (byte)t.column[PROJECTILE_KIND][r];
+			ps.owner[r] = (byte)t.column[PROJECTILE_OWNER][r];
+			ps.alive[r] = true;
+			ps.id[r] = t.id[r];
+			if (t.id[r] - newest >= 0)
+			{
+				ps.nextId = t.id[r] + 1;
+				IntelligentSprite i = ships.get(ps.owner[r] & 0xFF);
+				if (ps.kind[r] == ProjectileStore.TORPEDO)
+					listener.torpedoLaunched(i);
+				else
+					listener.slugLaunched(i);
+			}
+		}
+
+		t = frame.animations;
+		ArrayList<SpriteAnimation> animations = world.getSpriteAnimations();
+		animations.clear();
+		double now = frame.tick * 1e3d / GameWorld.TICKS_PER_SECOND;
+		for (int r = 0; r < t.size; r++)
+		{
+			Effect effect = EFFECTS[t.column[ANIMATION_EFFECT][r]];
+			int age = t.column[ANIMATION_AGE][r];
+			SpriteAnimation a = new SpriteAnimation(effect, false, t.column[X][r] / xScale, t.column[Y][r] / yScale,
+				now - age * 1e3d / GameWorld.TICKS_PER_SECOND);
+			int ship = t.column[ANIMATION_SHIP][r];
+			if (ship > 0)
+				a.setSprite(ships.get(ship - 1));
+			a.updateFrame(now);
+			if (a.getCurrentFrame() < 0)
+				continue;
+			animations.add(a);
+			if (effect == Effect.EXPLOSION && ship == 0 && age < since)
+				listener.torpedoExploded(a.getX(), a.getY());
+		}
+	}
+
+	/* Move what apply() put in the world from frame a the fraction f of the
+	 * way to where frame b, a later one, has it: planets, ships but the one at
+	 * index keep (-1 for none), and the projectiles in both.  Anything that
+	 * jumped further than it could have flown, like a ship through
+	 * hyperspace, stays put until b is shown.
+	 */
+	public void blend(Frame a, Frame b, float f, GameWorld world, int keep)
+	{
+		float reach = MAX_VELOCITY * (b.tick - a.tick);
+		Table ta = a.planets, tb = b.planets;
+		ArrayList<StaticSprite> planets = world.getPlanets();
+		for (int r = 0; r < ta.size && r < tb.size; r++)
+		{
+			StaticSprite p = planets.get(r);
+			p.setX(blendX(ta.column[X][r], tb.column[X][r], f, reach));
+			p.setY(blendY(ta.column[Y][r], tb.column[Y][r], f, reach));
+		}
+
+		ta = a.ships;
+		tb = b.ships;
+		ArrayList<IntelligentSprite> ships = world.getShips();
+		for (int r = 0; r < ta.size && r < tb.size; r++)
+		{
+			if (r == keep)
+				continue;
+			IntelligentSprite i = ships.get(r);
+			i.setX(blendX(ta.column[X][r], tb.column[X][r], f, reach));
+			i.setY(blendY(ta.column[Y][r], tb.column[Y][r], f, reach));
+		}
+
+		// both sorted by id, as the world's are after apply(a)
+		ta = a.projectiles;
+		tb = b.projectiles;
+		ProjectileStore ps = world.getProjectiles();
+		for (int r = 0, k = 0; r < ta.size && k < tb.size; )
+		{
+			int order = ta.id[r] - tb.id[k];
+			if (order < 0)
+				r++;
+			else if (order > 0)
+				k++;
+			else
+			{
+				ps.x[r] = blendX(ta.column[X][r], tb.column[X][k], f, reach);
+				ps.y[r] = blendY(ta.column[Y][r], tb.column[Y][k], f, reach);
+				r++;
+				k++;
+			}
+		}
+	}
+
+	// the dequantised state of one ship in frame, into ship
+	public void ship(Frame frame, int index, IntelligentSprite ship)
+	{
+		Table t = frame.ships;
+		ship.setX(t.column[X][index] / xScale);
+		ship.setY(t.column[Y][index] / yScale);
+		ship.setHVelocity(velocity(t.column[VX][index]));
+		ship.setVVelocity(velocity(t.column[VY][index]));
+		ship.setRotation(t.column[SHIP_ROTATION][index]);
+		ship.setAlive((t.column[SHIP_FLAGS][index] & 1) != 0);
+	}
+
+	// the shorter way round the playfield from a to b, a fraction f along
+	private float blendX(int a, int b, float f, float reach)
+	{
+		int shift = 32 - positionBits;
+		int d = (b - a) << shift >> shift;
+		if (Math.abs(d) > reach * xScale)
+			d = 0;
+		return Math.floorMod(a + Math.round(d * f), 1 << positionBits) / xScale;
+	}
+
+	private float blendY(int a, int b, float f, float reach)
+	{
+		int shift = 32 - positionBits;
+		int d = (b - a) << shift >> shift;
+		if (Math.abs(d) > reach * yScale)
+			d = 0;
+		return Math.floorMod(a + Math.round(d * f), 1 << positionBits) / yScale;
+	}
+
+	/* Write frame into out as its change from base, which may be null to
+	 * write it whole.  Throws BufferOverflowException if it does not fit.
+	 */
+	public void encode(Frame base, Frame frame, ByteBuffer out)
+	{
+		out.order(ByteOrder.LITTLE_ENDIAN);
+		out.putLong(frame.tick).putLong(base == null ? -1 : base.tick).putLong(frame.hash);
+		BitWriter w = writer;
+		w.start(out);
+		w.write(frame.gameState, 2);
+		w.writeGolomb(frame.wins.length);
+		for (int j = 0; j < frame.wins.length; j++)
+			w.writeGolomb(frame.wins[j]);
+		int dt = base == null ? 0 : (int)(frame.tick - base.tick);
+		encodeRows(base == null ? null : base.planets, frame.planets, dt, w);
+		encodeRows(base == null ? null : base.ships, frame.ships, dt, w);
+		encodeProjectiles(base == null ? null : base.projectiles, frame.projectiles, dt, w);
+		encodeRows(null, frame.animations, 0, w);
+		w.finish();
+	}
+
+	/* Read what encode() wrote into the next frame of history, against the
+	 * baseline history still holds.  Returns that frame, or null if the
+	 * baseline has gone; throws IllegalArgumentException if what comes out is
+	 * not what was sent.
+	 */
+	public Frame decode(ByteBuffer in, History history)
+	{
+		in.order(ByteOrder.LITTLE_ENDIAN);
+		long tick = in.getLong(), baseTick = in.getLong(), hash = in.getLong();
+		Frame base = null;
+		if (baseTick != -1)
+		{
+			base = history.get(baseTick);
+			if (base == null || tick - baseTick >= history.frames.length || tick <= baseTick)
+				return null;
+		}
+		Frame frame = history.claim(tick);
+		BitReader r = reader;
+		r.start(in);
+		frame.gameState = r.read(2);
+		int teams = (int)r.readGolomb();
+		if (teams > GameWorld.MAX_SHIPS)
+			throw new IllegalArgumentException("more teams than ships");
+		if (frame.wins.length != teams)
+			frame.wins = new int[teams];
+		for (int j = 0; j < frame.wins.length; j++)
+			frame.wins[j] = (int)r.readGolomb();
+		int dt = base == null ? 0 : (int)(tick - baseTick);
+		decodeRows(r, base == null ? null : base.planets, frame.planets, dt);
+		decodeRows(r, base == null ? null : base.ships, frame.ships, dt);
+		decodeProjectiles(r, base == null ? null : base.projectiles, frame.projectiles, dt);
+		decodeRows(r, null, frame.animations, 0);
+		r.finish();
+		frame.hash = frame.computeHash();
+		if (frame.hash != hash)
+			throw new IllegalArgumentException("frame does not match its hash");
+		frame.tick = tick;
+		return frame;
+	}
+
+	// rows that line up by index: planets, ships and animations
+	private void encodeRows(Table base, Table t, int dt, BitWriter w)
+	{
+		w.writeGolomb(t.size);
+		int paired = base == null ? 0 : Math.min(base.size, t.size);
+		ensurePairs(paired);
+		for (int r = 0; r < paired; r++)
+			pairBase[r] = pairRow[r] = r;
+		writeDeltas(base, t, paired, dt, w);
+		writeRows(t, paired, t.size, w);
+	}
+
+	private void decodeRows(BitReader r, Table base, Table t, int dt)
+	{
+		t.clear();
+		int n = r.readCount();
+		t.ensureCapacity(n);
+		t.size = n;
+		int paired = base == null ? 0 : Math.min(base.size, n);
+		ensurePairs(paired);
+		for (int row = 0; row < paired; row++)
+			pairBase[row] = pairRow[row] = row;
+		readDeltas(r, base, t, paired, dt);
+		readRows(r, t, paired, n);
+	}
+
+	private void encodeProjectiles(Table base, Table t, int dt, BitWriter w)
+	{
+		// pair up the two frames' rows, both sorted by id
+		ensurePairs(t.size);
+		int baseSize = base == null ? 0 : base.size;
+		if (gone.length < baseSize)
+			gone = new int[Math.max(baseSize, gone.length * 2)];
+		int deaths = 0, paired = 0, b = 0;
+		for (int r = 0; r < t.size; r++)
+		{
+			int id = t.id[r];
+			while (b < baseSize && base.id[b] - id < 0)
+				gone[deaths++] = b++;
+			if (b < baseSize && base.id[b] == id)
+			{
+				pairBase[paired] = b++;
+				pairRow[paired++] = r;
+			}
+		}
+		while (b < baseSize)
+			gone[deaths++] = b++;
+
+		w.writeGolomb(deaths);
+		for (int k = 0, last = -1; k < deaths; k++)
+		{
+			w.writeGolomb(gone[k] - last - 1);
+			last = gone[k];
+		}
+		writeDeltas(base, t, paired, dt, w);
+
+		// the spawns, gathered together to write whole
+		Table s = spawned;
+		s.clear();
+		s.ensureCapacity(t.size - paired);
+		for (int r = 0, k = 0; r < t.size; r++)
+		{
+			if (k < paired && pairRow[k] == r)
+				k++;
+			else
+				s.copyRow(t, r, s.add());
+		}
+		w.writeGolomb(s.size);
+		int last = baseSize > 0 ? base.id[baseSize - 1] : -1;
+		for (int r = 0; r < s.size; r++)
+		{
+			w.writeGolomb(zigzag(s.id[r] - last - 1));
+			last = s.id[r];
+		}
+		writeRows(s, 0, s.size, w);
+	}
+
+	private void decodeProjectiles(BitReader r, Table base, Table t, int dt)
+	{
+		t.clear();
+		int baseSize = base == null ? 0 : base.size;
+		int deaths = r.readCount();
+		if (deaths > baseSize)
+			throw new IllegalArgumentException("more projectiles died than there were");
+		if (gone.length < deaths)
+			gone = new int[Math.max(deaths, gone.length * 2)];
+		for (int k = 0, last = -1; k < deaths; k++)
+		{
+			last += r.readCount() + 1;
+			if (last >= baseSize)
+				throw new IllegalArgumentException("no such projectile");
+			gone[k] = last;
+		}
+		// the survivors come first, in the baseline's order
+		int paired = baseSize - deaths;
+		ensurePairs(paired);
+		t.ensureCapacity(paired);
+		t.size = paired;
+		for (int b = 0, k = 0, row = 0; b < baseSize; b++)
+		{
+			if (k < deaths && gone[k] == b)
+				k++;
+			else
+			{
+				t.id[row] = base.id[b];
+				pairBase[row] = b;
+				pairRow[row] = row++;
+			}
+		}
+		readDeltas(r, base, t, paired, dt);
+
+		Table s = spawned;
+		s.clear();
+		int spawns = r.readCount();
+		s.ensureCapacity(spawns);
+		s.size = spawns;
+		int last = baseSize > 0 ? base.id[baseSize - 1] : -1;
+		for (int k = 0; k < spawns; k++)
+		{
+			last += unzigzag(r.readGolomb()) + 1;
+			s.id[k] = last;
+		}
+		readRows(r, s, 0, spawns);
+
+		// then the spawns go in by id; as ids only grow that is nearly always on the end
+		int n = t.size;
+		t.ensureCapacity(n + spawns);
+		t.size = n + spawns;
+		for (int i = n - 1, j = spawns - 1, to = n + spawns - 1; j >= 0; to--)
+		{
+			if (i >= 0 && t.id[i] - s.id[j] > 0)
+				t.copyRow(t, i--, to);
+			else
+				t.copyRow(s, j--, to);
+		}
+	}
+
+	// rows from up to to whole, a column at a time
+	private void writeRows(Table t, int from, int to, BitWriter w)
+	{
+		for (int c = 0; c < t.bits.length; c++)
+		{
+			int[] values = t.column[c];
+			int bits = t.bits[c];
+			for (int r = from; r < to; r++)
+				w.write(values[r], bits);
+		}
+	}
+
+	private void readRows(BitReader r, Table t, int from, int to)
+	{
+		for (int c = 0; c < t.bits.length; c++)
+		{
+			int[] values = t.column[c];
+			int bits = t.bits[c];
+			for (int row = from; row < to; row++)
+				values[row] = r.read(bits);
+		}
+	}
+
+	/* The paired rows' residuals from what the baseline predicts, a column at
+	 * a time: a bit for a column with nothing to say, or else the Exp-Golomb
+	 * order that suits the column best and each residual in it.  Velocities go
+	 * first, so that positions can be predicted from both the old and the new
+	 * one.
+	 */
+	private void writeDeltas(Table base, Table t, int paired, int dt, BitWriter w)
+	{
+		if (paired == 0)
+			return;
+		if (residuals.length < paired)
+			residuals = new long[Math.max(paired, residuals.length * 2)];
+		for (int c : t.moving ? MOVING_ORDER[t.bits.length] : STILL_ORDER[t.bits.length])
+		{
+			int[] values = t.column[c];
+			int shift = 32 - t.bits[c];
+			long any = 0;
+			for (int k = 0; k < paired; k++)
+			{
+				int residual = (values[pairRow[k]] - predict(base, pairBase[k], t, pairRow[k], c, dt)) << shift >> shift;
+				any |= residuals[k] = zigzag(residual);
+			}
+			if (any == 0)
+			{
+				w.write(0, 1);
+				continue;
+			}
+			int order = golombOrder(residuals, paired);
+			w.write(1 | order << 1, 6);
+			for (int k = 0; k < paired; k++)
+				w.writeGolomb(residuals[k], order);
+		}
+	}
+
+	private void readDeltas(BitReader r, Table base, Table t, int paired, int dt)
+	{
+		if (paired == 0)
+			return;
+		for (int c : t.moving ? MOVING_ORDER[t.bits.length] : STILL_ORDER[t.bits.length])
+		{
+			int[] values = t.column[c];
+			int mask = (int)((1L << t.bits[c]) - 1);
+			int header = r.read(1);
+			int order = header == 0 ? 0 : r.read(5);
+			for (int k = 0; k < paired; k++)
+			{
+				int value = predict(base, pairBase[k], t, pairRow[k], c, dt);
+				if (header != 0)
+					value += unzigzag(r.readGolomb(order));
+				values[pairRow[k]] = value & mask;
+			}
+		}
+	}
+
+	/* Where a column of row should be dt ticks on from the baseline's row b:
+	 * positions move by the average of the old and new velocities, and
+	 * everything else stays as it was.
+	 */
+	private int predict(Table base, int b, Table t, int row, int c, int dt)
+	{
+		int value = base.column[c][b];
+		if (t.moving && c <= Y)
+		{
+			int v = c + VX;
+			float move = (velocity(base.column[v][b]) + velocity(t.column[v][row])) * 0.5f * dt * (c == X ? xScale : yScale);
+			value = (value + Math.round(move)) & ((1 << positionBits) - 1);
+		}
+		return value;
+	}
+
+	// the Exp-Golomb order that writes these zigzagged residuals in the fewest bits
+	private int golombOrder(long[] residuals, int n)
+	{
+		int[] lengths = this.lengths;
+		Arrays.fill(lengths, 0);
+		int longest = 0;
+		for (int k = 0; k < n; k++)
+		{
+			int length = 64 - Long.numberOfLeadingZeros(residuals[k]);
+			lengths[length]++;
+			longest = Math.max(longest, length);
+		}
+		int best = 0;
+		long bestBits = Long.MAX_VALUE;
+		for (int order = 0; order <= longest; order++)
+		{
+			// roughly: a one and order bits, then twice the length of what is left over
+			long bits = 0;
+			for (int length = 0; length <= longest; length++)
+				bits += (long)lengths[length] * (order + 1 + 2 * Math.max(0, length - order));
+			if (bits < bestBits)
+			{
+				bestBits = bits;
+				best = order;
+			}
+		}
+		return best;
+	}
+
+	private void ensurePairs(int n)
+	{
+		if (pairBase.length < n)
+		{
+			pairBase = new int[Math.max(n, pairBase.length * 2)];
+			pairRow = new int[pairBase.length];
+		}
+	}
+
+	private int quantiseX(float X)
+	{
+		return Math.round(X * xScale) & ((1 << positionBits) - 1);
+	}
+
+	private int quantiseY(float Y)
+	{
+		return Math.round(Y * yScale) & ((1 << positionBits) - 1);
+	}
+
+	private int quantiseVelocity(float v)
+	{
+		int half = 1 << (velocityBits - 1);
+		return Math.max(-half, Math.min(Math.round(v * velocityScale), half - 1)) & ((1 << velocityBits) - 1);
+	}
+
+	private float velocity(int q)
+	{
+		return (q << (32 - velocityBits) >> (32 - velocityBits)) / velocityScale;
+	}
+
+	// the order delta columns go in, by column count: velocities first for things that move
+	private static int[][] columnOrders(boolean moving)
+	{
+		int[][] orders = new int[9][];
+		for (int n = 0; n < orders.length; n++)
+		{
+			orders[n] = new int[n];
+			for (int c = 0; c < n; c++)
+				orders[n][c] = moving && n > VY && c < 4 ? (c + 2) % 4 : c;
+		}
+		return orders;
+	}
+
+	private static long zigzag(int v)
+	{
+		return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+	}
+
+	private static int unzigzag(long v)
+	{
+		return (int)(v >>> 1) ^ -(int)(v & 1);
+	}
+
+	/* One kind of row as parallel int columns, quantised; projectiles also
+	 * have ids, and rows of things that move are predicted from their
+	 * velocity.
+	 */
+	static final class Table
+	{
+		final int[] bits; // per column
+		final boolean moving;
+		int size;
+		int[] id;
+		int[][] column;
+
+		Table(int[] bits, boolean moving, boolean ids)
+		{
+			this.bits = bits;
+			this.moving = moving;
+			this.id = ids ? new int[16] : null;
+			this.column = new int[bits.length][16];
+		}
+
+		void clear()
+		{
+			size = 0;
+		}
+
+		int add()
+		{
+			if (size == column[0].length)
+				ensureCapacity(size * 2);
+			return size++;
+		}
+
+		void ensureCapacity(int capacity)
+		{
+			if (capacity <= column[0].length)
+				return;
+			for (int c = 0; c < column.length; c++)
+				column[c] = Arrays.copyOf(column[c], capacity);
+			if (id != null)
+				id = Arrays.copyOf(id, capacity);
+		}
+
+		void copyRow(Table from, int r, int to)
+		{
+			for (int c = 0; c < column.length; c++)
+				column[c][to] = from.column[c][r];
+			if (id != null)
+				id[to] = from.id[r];
+		}
+
+		boolean sameAs(Table t)
+		{
+			if (size != t.size)
+				return false;
+			for (int c = 0; c < column.length; c++)
+			{
+				for (int r = 0; r < size; r++)
+				{
+					if (column[c][r] != t.column[c][r])
+						return false;
+				}
+			}
+			for (int r = 0; id != null && r < size; r++)
+			{
+				if (id[r] != t.id[r])
+					return false;
+			}
+			return true;
+		}
+
+		long hash(long h)
+		{
+			h = h * 31 + size;
+			for (int c = 0; c < column.length; c++)
+			{
+				int[] values = column[c];
+				for (int r = 0; r < size; r++)
+					h = h * 31 + values[r];
+			}
+			for (int r = 0; id != null && r < size; r++)
+				h = h * 31 + id[r];
+			return h;
+		}
+	}
+
+	// a world as a client sees it, quantised
+	public static final class Frame
+	{
+		long tick = -1;
+		int gameState;
+		int[] wins = new int[0]; // by team
+		long hash;
+		final Table planets, ships, projectiles, animations;
+
+		Frame(SnapshotCodec codec)
+		{
+			planets = new Table(codec.planetBits, true, false);
+			ships = new Table(codec.shipBits, true, false);
+			projectiles = new Table(codec.projectileBits, true, true);
+			animations = new Table(codec.animationBits, false, false);
+		}
+
+		// accessors
+		public long getTick() { return this.tick; }
+		public long getHash() { return this.hash; }
+		public GameWorld.GameState getGameState() { return STATES[this.gameState]; }
+		public int getProjectiles() { return this.projectiles.size; }
+
+		public boolean sameAs(Frame f)
+		{
+			return tick == f.tick && gameState == f.gameState && Arrays.equals(wins, f.wins)
+				&& planets.sameAs(f.planets) && ships.sameAs(f.ships)
+				&& projectiles.sameAs(f.projectiles) && animations.sameAs(f.animations);
+		}
+
+		long computeHash()
+		{
+			long h = gameState;
+			for (int w : wins)
+				h = h * 31 + w;
+			h = planets.hash(h);
+			h = ships.hash(h);
+			h = projectiles.hash(h);
+			return animations.hash(h);
+		}
+	}
+
+	/* The last HISTORY ticks' frames, by tick, for either end to delta
+	 * against.  A tick's frame takes the place of the one HISTORY ticks older.
+	 */
+	public static final class History
+	{
+		final Frame[] frames;
+
+		History(SnapshotCodec codec, int size)
+		{
+			frames = new Frame[size];
+			for (int j = 0; j < size; j++)
+				frames[j] = codec.newFrame();
+		}
+
+		// the frame for tick, or null if it is not kept
+		public Frame get(long tick)
+		{
+			Frame f = frames[(int)Math.floorMod(tick, (long)frames.length)];
+			return f.tick == tick ? f : null;
+		}
+
+		// the frame to fill for tick; it is not in get() until its tick is set
+		public Frame claim(long tick)
+		{
+			Frame f = frames[(int)Math.floorMod(tick, (long)frames.length)];
+			f.tick = -1;
+			return f;
+		}
+	}
+
+	/* Packs values least significant bit first, 32 bits at a time. */
+	static final class BitWriter
+	{
+		private ByteBuffer out;
+		private long bits; // waiting to go out, from bit 0
+		private int count; // always under 32 between calls
+
+		void start(ByteBuffer out)
+		{
+			this.out = out;
+			bits = 0;
+			count = 0;
+		}
+
+		// the low n bits of value, n up to 33
+		void write(long value, int n)
+		{
+			bits |= (value & ((1L << n) - 1)) << count;
+			count += n;
+			if (count >= 32)
+			{
+				out.putInt((int)bits);
+				bits >>>= 32;
+				count -= 32;
+			}
+		}
+
+		void writeGolomb(long value)
+		{
+			writeGolomb(value, 0);
+		}
+
+		/* Exp-Golomb of the given order: as many zeros as (value >> order) + 1
+		 * has bits after its top one, a one, those bits, then value's low order
+		 * bits.
+		 */
+		void writeGolomb(long value, int order)
+		{
+			long v = (value >>> order) + 1;
+			int length = 63 - Long.numberOfLeadingZeros(v);
+			count += length; // the zeros are already there
+			if (count >= 32)
+			{
+				out.putInt((int)bits);
+				bits >>>= 32;
+				count -= 32;
+			}
+			write(v << 1 | 1, length + 1);
+			if (order > 0)
+				write(value, order);
+		}
+
+		void finish()
+		{
+			for (; count > 0; count -= 8, bits >>>= 8)
+				out.put((byte)bits);
+			out = null;
+		}
+	}
+
+	static final class BitReader
+	{
+		private ByteBuffer in;
+		private long bits;
+		private int count;
+
+		void start(ByteBuffer in)
+		{
+			this.in = in;
+			bits = 0;
+			count = 0;
+		}
+
+		private void fill()
+		{
+			if (count <= 32 && in.remaining() >= 4)
+			{
+				bits |= (in.getInt() & 0xFFFFFFFFL) << count;
+				count += 32;
+			}
+			while (count <= 56 && in.hasRemaining())
+			{
+				bits |= (in.get() & 0xFFL) << count;
+				count += 8;
+			}
+		}
+
+		int read(int n)
+		{
+			return (int)readBits(n);
+		}
+
+		private long readBits(int n)
+		{
+			if (count < n)
+			{
+				fill();
+				if (count < n)
+					throw new IllegalArgumentException("frame is cut short");
+			}
+			long value = bits & ((1L << n) - 1);
+			bits >>>= n;
+			count -= n;
+			return value;
+		}
+
+		long readGolomb()
+		{
+			return readGolomb(0);
+		}
+
+		long readGolomb(int order)
+		{
+			if (count < 33)
+				fill();
+			int length = Long.numberOfTrailingZeros(bits);
+			if (length >= count || length > 32)
+				throw new IllegalArgumentException("bad Exp-Golomb code");
+			bits >>>= length + 1;
+			count -= length + 1;
+			long v = (1L << length | readBits(length)) - 1;
+			return order == 0 ? v : v << order | readBits(order);
+		}
+
+		// a count of rows, which no packet could hold a million of
+		int readCount()
+		{
+			long n = readGolomb();
+			if (n > 1 << 20)
+				throw new IllegalArgumentException("frame has too many rows");
+			return (int)n;
+		}
+
+		void finish()
+		{
+			in = null;
+		}
+	}
+}
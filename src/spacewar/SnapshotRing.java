@@ -0,0 +1,96 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.nio.ByteBuffer;
+
+/* Snapshots of the last few ticks of a match, each in its own direct
+ * ByteBuffer so that none of it is on the Java heap for the collector to
+ * walk.  Saving over a slot reuses its buffer unless the match has outgrown
+ * it.  Rolling back to a held tick and playing on makes the snapshots after it
+ * stale; the next save() drops them.
+ */
+public class SnapshotRing
+{
+	private final ByteBuffer[] slots;
+	private final long[] ticks;
+	private int newest = -1; // slot of the newest snapshot
+	private int count;
+
+	public SnapshotRing(int length)
+	{
+		slots = new ByteBuffer[length];
+		ticks = new long[length];
+	}
+
+	// accessors
+	public int getLength() { return this.slots.length; }
+	public int getCount() { return this.count; }
+	public long getNewestTick() { return this.count == 0 ? -1 : this.ticks[this.newest]; }
+	public long getOldestTick() { return this.count == 0 ? -1 : this.ticks[slot(this.count - 1)]; }
+
+	// snapshot the world as it is at its current tick, over the oldest if the ring is full
+	public void save(GameWorld world)
+	{
+		long tick = world.getTicks();
+		while (count > 0 && ticks[newest] >= tick)
+		{
+			newest = slot(1);
+			count--;
+		}
+
+		int slot = (newest + 1) % slots.length;
+		int size = world.snapshotSize();
+		if (slots[slot] == null || slots[slot].capacity() < size)
+			slots[slot] = ByteBuffer.allocateDirect(size + size / 2); // room for the match to grow a little
+		ByteBuffer buffer = slots[slot];
+		buffer.clear();
+		world.snapshot(buffer);
+		buffer.flip();
+		ticks[slot] = tick;
+		newest = slot;
+		count = Math.min(count + 1, slots.length);
+	}
+
+	// put the world back as it was at the given tick; false if that tick isn't held
+	public boolean restore(GameWorld world, long tick)
+	{
+		for (int k = 0; k < count; k++)
+		{
+			int slot = slot(k);
+			if (ticks[slot] == tick)
+			{
+				slots[slot].rewind();
+				world.restore(slots[slot]);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// the slot k snapshots older than the newest
+	private int slot(int k)
+	{
+		return Math.floorMod(newest - k, slots.length);
+	}
+}
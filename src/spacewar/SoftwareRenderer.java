@@ -0,0 +1,280 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/* Draws a frame in plain Java, straight into the int[] behind a
+ * TYPE_INT_ARGB_PRE BufferedImage, for when there is no screen, as in a
+ * recording, or when the Java2D pipeline is slow on the machine.  The frame
+ * is then a single image to copy to the screen or to save.
+ *
+ * It does what the game draws and no more: copies of whole opaque layers,
+ * images blended source over, nearest neighbour or bilinear scaled, and
+ * rectangles of a colour.  Sources are read into premultiplied int[]s the
+ * first time they are drawn and kept, by identity, so an image must not
+ * change once it has been drawn, or must be forgotten when it does.
+ * Blending rounds the way Java2D's own loops do, so that a nearest
+ * neighbour frame comes out as Java2D would have drawn it.
+ */
+public class SoftwareRenderer
+{
+	private final BufferedImage frame;
+	private final int[] pixels;
+	private final int width, height;
+	private boolean bilinear;
+	private final IdentityHashMap<BufferedImage, int[]> sources = new IdentityHashMap<BufferedImage, int[]>();
+
+	public SoftwareRenderer(int width, int height)
+	{
+		this.frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		// no longer accelerated once its data is taken, but it is drawn by hand anyway
+		this.pixels = ((DataBufferInt)frame.getRaster().getDataBuffer()).getData();
+		this.width = width;
+		this.height = height;
+	}
+
+	// accessors
+	public BufferedImage getFrame() { return this.frame; }
+	public int[] getPixels() { return this.pixels; }
+	public int getWidth() { return this.width; }
+	public int getHeight() { return this.height; }
+	public boolean getBilinear() { return this.bilinear; }
+	public void setBilinear(boolean bilinear) { this.bilinear = bilinear; }
+
+	// an image's premultiplied pixels, read the first time it is drawn
+	private int[] pixels(BufferedImage image)
+	{
+		int[] p = sources.get(image);
+		if (p == null)
+		{
+			int w = image.getWidth(), h = image.getHeight();
+			p = new int[w * h];
+			if (image.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
+				image.getRaster().getDataElements(0, 0, w, h, p); // a copy, so the image stays accelerated
+			else
+			{
+				image.getRGB(0, 0, w, h, p, 0, w);
+				for (int i = 0; i < p.length; i++)
+					p[i] = premultiply(p[i]);
+			}
+			sources.put(image, p);
+		}
+		return p;
+	}
+
+	// drop what was read from an image that has since changed
+	public void forget(BufferedImage image)
+	{
+		sources.remove(image);
+	}
+
+	// copy a whole frame of opaque pixels, such as a background
+	public void copy(int[] from)
+	{
+		System.arraycopy(from, 0, pixels, 0, pixels.length);
+	}
+
+	// fill the whole frame with a colour, replacing what is there
+	public void clear(int argb)
+	{
+		Arrays.fill(pixels, premultiply(argb));
+	}
+
+	// blend a rectangle of a colour over the frame
+	public void fillRect(int x, int y, int w, int h, int argb)
+	{
+		int x0 = Math.max(x, 0), y0 = Math.max(y, 0);
+		int x1 = Math.min(x + w, width), y1 = Math.min(y + h, height);
+		if (x0 >= x1 || y0 >= y1)
+			return;
+		int c = premultiply(argb);
+		int a = c >>> 24;
+		for (int row = y0; row < y1; row++)
+		{
+			int d = row * width + x0, end = row * width + x1;
+			if (a == 255)
+				Arrays.fill(pixels, d, end, c);
+			else if (a != 0)
+			{
+				for (; d < end; d++)
+					pixels[d] = over(c, pixels[d]);
+			}
+		}
+	}
+
+	// blend an image over the frame with its top left at x, y
+	public void drawImage(BufferedImage image, int x, int y)
+	{
+		drawImage(image, 0, 0, image.getWidth(), image.getHeight(), x, y, image.getWidth(), image.getHeight());
+	}
+
+	// blend an image over the frame, scaled to w by h, with its top left at x, y
+	public void drawImage(BufferedImage image, int x, int y, int w, int h)
+	{
+		drawImage(image, 0, 0, image.getWidth(), image.getHeight(), x, y, w, h);
+	}
+
+	// blend a region of an atlas over the frame, scaled to w by h, with its top left at x, y
+	public void draw(SpriteAtlas atlas, SpriteAtlas.Region r, int x, int y, int w, int h)
+	{
+		drawImage(atlas.getPage(r.getPage()), r.getX(), r.getY(), r.getWidth(), r.getHeight(), x, y, w, h);
+	}
+
+	/* Blend the sw by sh rectangle at sx, sy of an image over the dw by dh
+	 * one at dx, dy of the frame.  Each frame pixel samples the source at its
+	 * centre, as Java2D does, in 32.32 fixed point.
+	 */
+	public void drawImage(BufferedImage image, int sx, int sy, int sw, int sh, int dx, int dy, int dw, int dh)
+	{
+		if (sw <= 0 || sh <= 0 || dw <= 0 || dh <= 0)
+			return;
+		int x0 = Math.max(dx, 0), y0 = Math.max(dy, 0);
+		int x1 = Math.min(dx + dw, width), y1 = Math.min(dy + dh, height);
+		if (x0 >= x1 || y0 >= y1)
+			return;
+		int[] src = pixels(image);
+		int scan = image.getWidth();
+		if (sw == dw && sh == dh)
+		{
+			// no scaling, the usual case for the HUD, the slugs and the torpedoes
+			for (int row = y0; row < y1; row++)
+			{
+				int s = (sy + row - dy) * scan + sx + x0 - dx;
+				int d = row * width + x0, end = row * width + x1;
+				for (; d < end; d++, s++)
+				{
+					int c = src[s];
+					int a = c >>> 24;
+					if (a == 255)
+						pixels[d] = c;
+					else if (a != 0)
+						pixels[d] = over(c, pixels[d]);
+				}
+			}
+			return;
+		}
+		if (bilinear)
+		{
+			drawBilinear(src, scan, sx, sy, sw, sh, dx, dy, dw, dh, x0, y0, x1, y1);
+			return;
+		}
+		long stepX = ((long)sw << 32) / dw, stepY = ((long)sh << 32) / dh;
+		long u0 = ((long)sx << 32) + stepX / 2 + stepX * (x0 - dx);
+		long v = ((long)sy << 32) + stepY / 2 + stepY * (y0 - dy);
+		for (int row = y0; row < y1; row++, v += stepY)
+		{
+			int line = (int)(v >> 32) * scan;
+			long u = u0;
+			int d = row * width + x0, end = row * width + x1;
+			for (; d < end; d++, u += stepX)
+			{
+				int c = src[line + (int)(u >> 32)];
+				int a = c >>> 24;
+				if (a == 255)
+					pixels[d] = c;
+				else if (a != 0)
+					pixels[d] = over(c, pixels[d]);
+			}
+		}
+	}
+
+	/* The same, weighing the four source pixels around each sample point.
+	 * Samples are clamped to the source rectangle, so nothing next to it on
+	 * an atlas page bleeds in at the edges.  Positions are 16.16 fixed point
+	 * and the weights 8 bits.
+	 */
+	private void drawBilinear(int[] src, int scan, int sx, int sy, int sw, int sh, int dx, int dy, int dw, int dh,
+		int x0, int y0, int x1, int y1)
+	{
+		int stepX = (int)(((long)sw << 16) / dw), stepY = (int)(((long)sh << 16) / dh);
+		int lastX = sx + sw - 1, lastY = sy + sh - 1;
+		// the centre of the first pixel, back half a source pixel to the one it starts between
+		int u0 = (sx << 16) + stepX / 2 - 0x8000 + stepX * (x0 - dx);
+		int v = (sy << 16) + stepY / 2 - 0x8000 + stepY * (y0 - dy);
+		for (int row = y0; row < y1; row++, v += stepY)
+		{
+			int ty = v >> 16, fy = (v >> 8) & 0xFF;
+			if (ty < sy)
+			{
+				ty = sy;
+				fy = 0;
+			}
+			int top = Math.min(ty, lastY) * scan, bottom = Math.min(ty + 1, lastY) * scan;
+			int u = u0;
+			int d = row * width + x0, end = row * width + x1;
+			for (; d < end; d++, u += stepX)
+			{
+				int tx = u >> 16, fx = (u >> 8) & 0xFF;
+				if (tx < sx)
+				{
+					tx = sx;
+					fx = 0;
+				}
+				int left = Math.min(tx, lastX), right = Math.min(tx + 1, lastX);
+				int c = lerp(lerp(src[top + left], src[top + right], fx), lerp(src[bottom + left], src[bottom + right], fx), fy);
+				int a = c >>> 24;
+				if (a == 255)
+					pixels[d] = c;
+				else if (a != 0)
+					pixels[d] = over(c, pixels[d]);
+			}
+		}
+	}
+
+	// p * (256 - f) / 256 + q * f / 256, a channel pair at a time; premultiplied pixels stay premultiplied
+	private static int lerp(int p, int q, int f)
+	{
+		if (p == q || f == 0)
+			return p;
+		int g = 256 - f;
+		int rb = (((p & 0xFF00FF) * g + (q & 0xFF00FF) * f) >>> 8) & 0xFF00FF;
+		int ag = ((((p >>> 8) & 0xFF00FF) * g + ((q >>> 8) & 0xFF00FF) * f) >>> 8) & 0xFF00FF;
+		return ag << 8 | rb;
+	}
+
+	// source over destination, both premultiplied, two channels at a time
+	private static int over(int s, int d)
+	{
+		int na = 255 - (s >>> 24);
+		return s + (mul(d & 0xFF00FF, na) | mul((d >>> 8) & 0xFF00FF, na) << 8);
+	}
+
+	// each of a pair of 8 bit channels times n / 255, rounded, as Java2D's tables have it
+	private static int mul(int pair, int n)
+	{
+		int t = pair * n + 0x800080;
+		return ((t + ((t >>> 8) & 0xFF00FF)) >>> 8) & 0xFF00FF;
+	}
+
+	private static int premultiply(int argb)
+	{
+		int a = argb >>> 24;
+		if (a == 255)
+			return argb;
+		return a << 24 | mul(argb & 0xFF00FF, a) | mul((argb >>> 8) & 0xFF, a) << 8;
+	}
+}
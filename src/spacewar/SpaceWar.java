@@ -23,25 +23,176 @@
 package spacewar;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.DisplayMode;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.GridBagLayout;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import javax.swing.*;
 
+/* With no arguments, a new match.  --record file saves its input as it is
+ * played; --replay file [speed] plays a recorded match back in the window,
+ * speed ticks to a frame; --verify file plays one back with no window as fast
+ * as it will go and prints how it ended.  --serve [port] [snapshots a second]
+ * [ships] [teams] runs a GameServer with no window, by default for two, and
+ * --connect host[:port] [ships] [teams] plays on one.
+ *
+ * Any of the windowed ones can be led by --fullscreen, to take the screen
+ * over and switch it to 800x600 if it can, by --repaint, to draw the way
+ * an applet does instead of actively, by --software, to draw each frame
+ * with a SoftwareRenderer rather than Java2D, by --fps n, to draw n frames
+ * a second however fast the game ticks, or as many as it can with 0, or by
+ * --stats, to print how drawing and input went when the game exits.
+ */
 public class SpaceWar
 {
-	public static void main(String[] args)
+	public static void main(String[] args) throws IOException
 	{
+		if (args.length >= 2 && args[0].equals("--verify"))
+		{
+			verify(new ReplayReader(Paths.get(args[1])));
+			return;
+		}
+		if (args.length >= 1 && args[0].equals("--serve"))
+		{
+			GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		boolean fullScreen = false, activeRendering = true, softwareRendering = false, stats = false;
+		int frameRate = -1;
+		for (; args.length >= 1 && (args[0].equals("--fullscreen") || args[0].equals("--repaint") || args[0].equals("--software")
+			|| args[0].equals("--stats") || (args[0].equals("--fps") && args.length >= 2)); args = Arrays.copyOfRange(args, 1, args.length))
+		{
+			if (args[0].equals("--fullscreen"))
+				fullScreen = true;
+			else if (args[0].equals("--repaint"))
+				activeRendering = false;
+			else if (args[0].equals("--software"))
+				softwareRendering = true;
+			else if (args[0].equals("--stats"))
+				stats = true;
+			else
+			{
+				frameRate = Integer.parseInt(args[1]);
+				args = Arrays.copyOfRange(args, 1, args.length);
+			}
+		}
+
 		// Create a frame
 		JFrame frame = new JFrame("Applet is in the frame");
 		
 		// Create an instance of the applet
-		GamePanel gamePanel = new GamePanel();
+		GamePanel gamePanel;
+		if (args.length >= 2 && args[0].equals("--connect"))
+		{
+			String[] hostPort = args[1].split(":");
+			int port = hostPort.length > 1 ? Integer.parseInt(hostPort[1]) : GameServer.DEFAULT_PORT;
+			int ships = args.length >= 3 ? Integer.parseInt(args[2]) : 2;
+			int teams = args.length >= 4 ? Integer.parseInt(args[3]) : ships;
+			gamePanel = new GamePanel(new GameClient(GameMap.CLASSIC, ships, teams, new InetSocketAddress(hostPort[0], port)));
+		}
+		else if (args.length >= 2 && args[0].equals("--replay"))
+			gamePanel = new GamePanel(new ReplayReader(Paths.get(args[1])), args.length >= 3 ? Integer.parseInt(args[2]) : 1);
+		else
+		{
+			gamePanel = new GamePanel();
+			if (args.length >= 2 && args[0].equals("--record"))
+				gamePanel.setRecorder(new ReplayWriter(Paths.get(args[1]), gamePanel.getSeed(), GameMap.CLASSIC.getName(), GameMap.CLASSIC.getGravitySpacing()));
+		}
+		
+		gamePanel.setActiveRendering(activeRendering);
+		gamePanel.setSoftwareRendering(softwareRendering);
+		if (frameRate >= 0)
+			gamePanel.setFrameRate(frameRate);
+		if (stats)
+		{
+			// the game exits the JVM itself when it ends, so this is the last word either way
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> report(gamePanel)));
+		}
 		
 		// Add the applet to the frame
 		frame.add(gamePanel, BorderLayout.CENTER);
 		
 		// Display the frame
-		frame.setSize(800, 600);
-		frame.setLocationRelativeTo(null); // Center the frame
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		frame.setVisible(true);
+		GraphicsDevice device = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
+		if (fullScreen && device.isFullScreenSupported())
+			fullScreen(frame, gamePanel, device);
+		else
+		{
+			frame.setSize(800, 600);
+			frame.setLocationRelativeTo(null); // Center the frame
+			frame.setVisible(true);
+		}
+	}
+
+	/* Full-screen exclusive mode, at 800x600 if the display will change to it
+	 * and in the middle of whatever it is at if not.  The JVM puts the old
+	 * display mode back when it exits.
+	 */
+	private static void fullScreen(JFrame frame, GamePanel gamePanel, GraphicsDevice device)
+	{
+		frame.setUndecorated(true);
+		frame.setResizable(false);
+		frame.getContentPane().setBackground(Color.BLACK);
+		frame.getContentPane().setLayout(new GridBagLayout()); // centres the game at its own size
+		frame.getContentPane().removeAll();
+		frame.getContentPane().add(gamePanel);
+		device.setFullScreenWindow(frame);
+		if (device.isDisplayChangeSupported())
+		{
+			// the deepest colour at the fastest refresh rate
+			DisplayMode best = null;
+			for (DisplayMode mode : device.getDisplayModes())
+			{
+				if (mode.getWidth() != GameWorld.PWIDTH || mode.getHeight() != GameWorld.PHEIGHT)
+					continue;
+				if (best == null || mode.getBitDepth() > best.getBitDepth()
+					|| (mode.getBitDepth() == best.getBitDepth() && mode.getRefreshRate() > best.getRefreshRate()))
+					best = mode;
+			}
+			if (best != null)
+			{
+				try
+				{
+					device.setDisplayMode(best);
+				}
+				catch (IllegalArgumentException | UnsupportedOperationException e)
+				{
+					System.out.println("Staying at " + device.getDisplayMode().getWidth() + "x" + device.getDisplayMode().getHeight() + ": " + e.getMessage());
+				}
+			}
+		}
+		frame.validate();
+	}
+
+	private static void report(GamePanel gamePanel)
+	{
+		System.out.println(String.format("%s rendering: %d frames drawn, %d presented, %.2f ms from drawn to presented on average, %.2f at most",
+			gamePanel.getActiveRendering() ? "Active" : "Repaint", gamePanel.getRendered(), gamePanel.getPresented(),
+			gamePanel.getPresentLatency(), gamePanel.getPresentLatencyMax()));
+		InputQueue input = gamePanel.getInputQueue();
+		System.out.println(String.format("Input: %d commands taken, %d dropped, %.2f ms queued on average, %.2f at most",
+			input.getTaken(), input.getDropped(), input.getWait(), input.getWaitMax()));
+	}
+
+	private static void verify(ReplayReader replay)
+	{
+		GameWorld world = replay.newWorld(GameMap.CLASSIC);
+		long start = System.nanoTime();
+		while (replay.advance(world, Integer.MAX_VALUE) == Integer.MAX_VALUE)
+			;
+		double seconds = (System.nanoTime() - start) / 1e9;
+		StringBuilder wins = new StringBuilder();
+		for (int j = 0; j < world.getTeams(); j++)
+			wins.append(j == 0 ? "" : ":").append(world.getWins(j));
+		System.out.println(String.format("%d ticks (%.0f s of play) in %.3f s, wins %s, state %016x",
+			world.getTicks(), (double)world.getTicks() / GameWorld.TICKS_PER_SECOND, seconds,
+			wins, world.stateHash()));
 	}
 }
@@ -0,0 +1,143 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.Arrays;
+
+/* A uniform grid over the playfield, used to find which sprites are close
+ * enough to another to be worth a real collision test.  The playfield wraps
+ * around, so the cells off one edge are the cells on the other.  Sprites are
+ * referred to by their index in whatever list they came from, and each cell is
+ * a linked list threaded through next[], so clearing and refilling the grid
+ * every tick allocates nothing once it has grown to fit.
+ */
+public class SpatialGrid
+{
+	private final int width;
+	private final int height;
+	private final int columns;
+	private final int rows;
+	private final float cellWidth;
+	private final float cellHeight;
+	private final int[] head; // first index in each cell, -1 if empty
+	private int[] next = new int[64]; // next index in the same cell, -1 at the end
+	private int[] found = new int[64];
+	private float maxRadius;
+
+	/* The cells are as close to cellSize as will divide the playfield evenly,
+	 * so that wrapping a cell column or row is just a modulus.
+	 */
+	public SpatialGrid(int width, int height, int cellSize)
+	{
+		this.width = width;
+		this.height = height;
+		this.columns = Math.max(1, width / cellSize);
+		this.rows = Math.max(1, height / cellSize);
+		this.cellWidth = (float)width / columns;
+		this.cellHeight = (float)height / rows;
+		this.head = new int[columns * rows];
+		clear();
+	}
+
+	// accessors
+	public int getWidth() { return this.width; }
+	public int getHeight() { return this.height; }
+	public float getMaxRadius() { return this.maxRadius; }
+	public int getFound(int k) { return this.found[k]; }
+
+	public void clear()
+	{
+		Arrays.fill(head, -1);
+		maxRadius = 0;
+	}
+
+	public void insert(int index, float X, float Y, float radius)
+	{
+		if (index >= next.length)
+			next = Arrays.copyOf(next, Math.max(index + 1, next.length * 2));
+		int cell = row(Y) * columns + column(X);
+		next[index] = head[cell];
+		head[cell] = index;
+		if (radius > maxRadius)
+			maxRadius = radius;
+	}
+
+	/* Collect the index of every sprite in a cell that the square of half-size
+	 * reach around X, Y touches, wrapping at the edges, and return how many
+	 * there are; getFound() then gives each one.  Callers pass their own radius
+	 * plus getMaxRadius() so that nothing that could touch them is missed.
+	 */
+	public int query(float X, float Y, float reach)
+	{
+		int count = query(X, Y, reach, found);
+		if (count > found.length)
+		{
+			found = new int[Math.max(count, found.length * 2)];
+			query(X, Y, reach, found);
+		}
+		return count;
+	}
+
+	/* The same, but into the caller's own array, so that several threads can
+	 * query the grid at once once it is filled.  Only as many as fit are stored;
+	 * if the count returned is larger, grow the array and ask again.
+	 */
+	public int query(float X, float Y, float reach, int[] found)
+	{
+		int c0 = (int)Math.floor((X - reach) / cellWidth);
+		int c1 = (int)Math.floor((X + reach) / cellWidth);
+		int r0 = (int)Math.floor((Y - reach) / cellHeight);
+		int r1 = (int)Math.floor((Y + reach) / cellHeight);
+		// a reach wider than the playfield would otherwise visit cells twice
+		if (c1 - c0 >= columns)
+			c1 = c0 + columns - 1;
+		if (r1 - r0 >= rows)
+			r1 = r0 + rows - 1;
+
+		int count = 0;
+		for (int r = r0; r <= r1; r++)
+		{
+			int rowStart = Math.floorMod(r, rows) * columns;
+			for (int c = c0; c <= c1; c++)
+			{
+				for (int i = head[rowStart + Math.floorMod(c, columns)]; i != -1; i = next[i])
+				{
+					if (count < found.length)
+						found[count] = i;
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private int column(float X)
+	{
+		return Math.floorMod((int)Math.floor(X / cellWidth), columns);
+	}
+
+	private int row(float Y)
+	{
+		return Math.floorMod((int)Math.floor(Y / cellHeight), rows);
+	}
+}
@@ -22,18 +22,15 @@
 
 package spacewar;
 
-import java.awt.Graphics;
-import java.awt.image.BufferedImage;
-import java.awt.image.ImageObserver;
-
 /* If an X, Y is passed in, that will be the center of the SpriteAnimation.
  * If a StaticSprite pointer is passed in, instead, the X, Y will be taken from the attached sprite.
+ * The animation only keeps time; the view supplies the frames for its Effect when drawing it.
  */
 public class SpriteAnimation
 {
 	private float X;
 	private float Y;
-	private BufferedImage[] frames = null;
+	private Effect effect;
 	private double duration; // seconds, what the user enters
 	private double period; // milliseconds, what the computer uses derived from duration
 	private boolean loop; // replay when finished
@@ -42,28 +39,38 @@ public class SpriteAnimation
 	private double timeElapsed; // milliseconds
 	private int currentFrame;
 	private StaticSprite sprite;
-	
-	SpriteAnimation(BufferedImage[] frames, double duration, boolean loop, float X, float Y)
+	public static enum Effect
+	{
+		EXPLOSION(10, 1.0), SHIELD(1, 0.1);
+
+		private final int frameCount;
+		private final double duration; // seconds
+
+		Effect(int frameCount, double duration)
+		{
+			this.frameCount = frameCount;
+			this.duration = duration;
+		}
+
+		public int getFrameCount() { return this.frameCount; }
+		public double getDuration() { return this.duration; }
+	}
+
+	SpriteAnimation(Effect effect, boolean loop, float X, float Y, double startTime)
 	{
 		this.X = X;
 		this.Y = Y;
-		this.frames = frames;
-		this.duration = duration;
+		this.effect = effect;
+		this.duration = effect.getDuration();
 		this.loop = loop;
-		period = (1e3d / duration) / frames.length;
-		startTime = System.nanoTime() / 1e6d;
+		period = (1e3d / duration) / effect.getFrameCount();
+		this.startTime = startTime;
 		this.sprite = null;
 	}
 
-	SpriteAnimation(BufferedImage[] frames, double duration, boolean loop, StaticSprite sprite)
+	SpriteAnimation(Effect effect, boolean loop, StaticSprite sprite, double startTime)
 	{
-		this.X = sprite.getX();
-		this.Y = sprite.getY();
-		this.frames = frames;
-		this.duration = duration;
-		this.loop = loop;
-		period = (1e3d / duration) / frames.length;
-		startTime = System.nanoTime() / 1e6d;
+		this(effect, loop, sprite.getX(), sprite.getY(), startTime);
 		this.sprite = sprite;
 	}
 
@@ -71,16 +78,26 @@ public class SpriteAnimation
 	public float getY() { return this.Y; }
 	void setX(float X) { this.X = X; }
 	void setY(float Y) { this.Y = Y; }
+	public Effect getEffect() { return this.effect; }
+	public boolean getLoop() { return this.loop; }
+	public double getStartTime() { return this.startTime; }
+	public double getCurrentTime() { return this.currentTime; }
 	public int getCurrentFrame() { return this.currentFrame; }
+	void setCurrentFrame(int currentFrame) { this.currentFrame = currentFrame; }
+	void setCurrentTime(double currentTime)
+	{
+		this.currentTime = currentTime;
+		this.timeElapsed = currentTime - startTime;
+	}
 	public StaticSprite getSprite() { return this.sprite; }
 	void setSprite(StaticSprite sprite) { this.sprite = sprite; }
 
-	// drawing always updates the frame, but we update it manually in the game
-	// loop to see if the currentFrame goes to -1, at which point it can be
-	// disposed of (i.e. by removing it from the SpriteAnimation ArrayList)
-	public void updateFrame()
+	// the game loop updates the frame to see if the currentFrame goes to -1,
+	// at which point it can be disposed of (i.e. by removing it from the
+	// SpriteAnimation ArrayList); currentTime is in milliseconds
+	public void updateFrame(double currentTime)
 	{
-		currentTime = System.nanoTime() / 1e6d;
+		this.currentTime = currentTime;
 		timeElapsed = currentTime - startTime;
 		if (timeElapsed > (duration * 1e3d) && loop == false)
 		{
@@ -89,14 +106,8 @@ public class SpriteAnimation
 		}
 		else
 		{
-			currentFrame = (int)(timeElapsed / period) % frames.length;
+			currentFrame = (int)(timeElapsed / period) % effect.getFrameCount();
 		}
 		return;
 	}
-	
-	void draw(Graphics g, ImageObserver imOb)
-	{
-		// this.updateFrame();
-		g.drawImage(frames[currentFrame], (int)(X - 10), (int)(Y - 10), 20, 20, imOb);
-	}
 }
@@ -0,0 +1,225 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+
+/* Packs the sprite images, every rotation of the ones that turn and every
+ * frame of the animation strips, into a few large texture pages, so that
+ * drawing a sprite copies a rectangle out of a page rather than out of an
+ * image of its own.  Java2D then keeps one accelerated surface per page
+ * instead of one per image and rotation, and draws from the same page one
+ * after the other never switch surfaces.
+ *
+ * Images are added, then pack() lays them out once, tallest first in rows
+ * across each page, with a pixel of space between them so that scaling
+ * never bleeds one into the next.  After that the Regions are looked up by
+ * the image they were made from.  Strip frames are cut straight out of
+ * their strip, and rotations are made with ImagesOperator and thrown away
+ * once they are on a page.
+ */
+public class SpriteAtlas
+{
+	public static final int PAGE_SIZE = 512;
+	public static final int ROTATIONS = RotationCache.SPRITE_STEPS; // of 22.5 degrees, as sprites turn
+	private static final int PADDING = 1;
+
+	// where a sprite is on its page
+	public static final class Region
+	{
+		private final int page;
+		private final int x, y, width, height;
+
+		Region(int page, int x, int y, int width, int height)
+		{
+			this.page = page;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		// accessors
+		public int getPage() { return this.page; }
+		public int getX() { return this.x; }
+		public int getY() { return this.y; }
+		public int getWidth() { return this.width; }
+		public int getHeight() { return this.height; }
+	}
+
+	// something to place: a rectangle of an image, and where its Region goes
+	private static final class Piece implements Comparable<Piece>
+	{
+		final BufferedImage image;
+		final int sx, sy, width, height;
+		final Region[] into;
+		final int index;
+
+		Piece(BufferedImage image, int sx, int sy, int width, int height, Region[] into, int index)
+		{
+			this.image = image;
+			this.sx = sx;
+			this.sy = sy;
+			this.width = width;
+			this.height = height;
+			this.into = into;
+			this.index = index;
+		}
+
+		public int compareTo(Piece p)
+		{
+			return p.height != height ? p.height - height : p.width - width;
+		}
+	}
+
+	private final ArrayList<Piece> pieces = new ArrayList<Piece>();
+	private final IdentityHashMap<BufferedImage, Region[]> images = new IdentityHashMap<BufferedImage, Region[]>();
+	private final IdentityHashMap<BufferedImage, Region[]> rotations = new IdentityHashMap<BufferedImage, Region[]>();
+	private final IdentityHashMap<BufferedImage, Region[]> strips = new IdentityHashMap<BufferedImage, Region[]>();
+	private BufferedImage[] pages = new BufferedImage[0];
+
+	// accessors
+	public int getPages() { return this.pages.length; }
+	public BufferedImage getPage(int page) { return this.pages[page]; }
+
+	// the image as it is
+	public void add(BufferedImage image)
+	{
+		if (image == null || images.containsKey(image))
+			return;
+		Region[] into = new Region[1];
+		images.put(image, into);
+		pieces.add(new Piece(image, 0, 0, image.getWidth(), image.getHeight(), into, 0));
+	}
+
+	// the image at each of the ROTATIONS angles a sprite can be turned to
+	public void addRotations(BufferedImage image)
+	{
+		if (image == null || rotations.containsKey(image))
+			return;
+		Region[] into = new Region[ROTATIONS];
+		rotations.put(image, into);
+		for (int step = 0; step < ROTATIONS; step++)
+		{
+			BufferedImage rotated = ImagesOperator.getRotatedImage(image, step * 360.0 / ROTATIONS);
+			pieces.add(new Piece(rotated, 0, 0, rotated.getWidth(), rotated.getHeight(), into, step));
+		}
+	}
+
+	// the frames of a strip of equally wide ones, left to right
+	public void addStrip(BufferedImage strip, int frames)
+	{
+		if (strip == null || frames <= 0 || strips.containsKey(strip))
+			return;
+		Region[] into = new Region[frames];
+		strips.put(strip, into);
+		int width = strip.getWidth() / frames;
+		for (int i = 0; i < frames; i++)
+			pieces.add(new Piece(strip, i * width, 0, width, strip.getHeight(), into, i));
+	}
+
+	// lay out everything added since the last pack() on pages of its own
+	public void pack()
+	{
+		if (pieces.isEmpty())
+			return;
+		Collections.sort(pieces);
+		ArrayList<BufferedImage> made = new ArrayList<BufferedImage>();
+		for (BufferedImage page : pages)
+			made.add(page);
+		int page = -1, x = PAGE_SIZE, y = 0, rowHeight = 0;
+		Graphics2D g = null;
+		for (Piece p : pieces)
+		{
+			if (p.width > PAGE_SIZE || p.height > PAGE_SIZE)
+				throw new IllegalArgumentException(p.width + "x" + p.height + " is bigger than a page");
+			if (x + p.width > PAGE_SIZE)
+			{
+				// a new row, or a new page if it won't fit
+				x = 0;
+				y += rowHeight;
+				rowHeight = 0;
+			}
+			if (page == -1 || y + p.height > PAGE_SIZE)
+			{
+				if (g != null)
+					g.dispose();
+				made.add(newPage());
+				page = made.size() - 1;
+				g = made.get(page).createGraphics();
+				x = 0;
+				y = 0;
+				rowHeight = 0;
+			}
+			g.drawImage(p.image, x, y, x + p.width, y + p.height, p.sx, p.sy, p.sx + p.width, p.sy + p.height, null);
+			p.into[p.index] = new Region(page, x, y, p.width, p.height);
+			x += p.width + PADDING;
+			rowHeight = Math.max(rowHeight, p.height + PADDING);
+		}
+		g.dispose();
+		pieces.clear();
+		pages = made.toArray(new BufferedImage[made.size()]);
+	}
+
+	private static BufferedImage newPage()
+	{
+		if (GraphicsEnvironment.isHeadless())
+			return new BufferedImage(PAGE_SIZE, PAGE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+		return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration()
+			.createCompatibleImage(PAGE_SIZE, PAGE_SIZE, Transparency.TRANSLUCENT);
+	}
+
+	// where an image added whole ended up, or null
+	public Region get(BufferedImage image)
+	{
+		Region[] r = images.get(image);
+		return r == null ? null : r[0];
+	}
+
+	// where an image turned to rotation, in steps of 22.5 degrees clockwise, ended up, or null
+	public Region getRotation(BufferedImage image, int rotation)
+	{
+		Region[] r = rotations.get(image);
+		return r == null ? null : r[Math.floorMod(rotation, ROTATIONS)];
+	}
+
+	// where each frame of a strip ended up, or null
+	public Region[] getStrip(BufferedImage strip)
+	{
+		return strips.get(strip);
+	}
+
+	// draw a region scaled to width by height with its top left at x, y
+	public void draw(Graphics g, Region r, int x, int y, int width, int height, ImageObserver observer)
+	{
+		g.drawImage(pages[r.page], x, y, x + width, y + height, r.x, r.y, r.x + r.width, r.y + r.height, observer);
+	}
+}
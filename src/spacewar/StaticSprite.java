@@ -22,10 +22,8 @@
  
 package spacewar;
 
-import java.awt.Graphics;
 import java.awt.Shape;
 import java.awt.image.BufferedImage;
-import java.awt.image.ImageObserver;
 
 /* The basic sprite has only an image, location, size, and collision polygon */
 public class StaticSprite
@@ -34,14 +32,26 @@ public class StaticSprite
 	protected float Y;
 	protected int width;
 	protected int height;
+	protected float mass; // times the gravitational constant, only planets have any
 	protected BufferedImage bufImg;
 	protected boolean visible;
 	private Shape collisionPolygon;
 	private Level existsOnLevel;
 	private Level collidesWithLevels[];
+	private int collidesWithMask;
 	public static enum Level
 	{
-		PLANET, PLAYER1, PLAYER2, SLUG, TORPEDO;
+		PLANET, SHIP, SLUG, TORPEDO;
+
+		public int mask() { return 1 << this.ordinal(); }
+
+		public static int mask(Level... levels)
+		{
+			int mask = 0;
+			for (Level level : levels)
+				mask |= level.mask();
+			return mask;
+		}
 	}
 
 	// accessors
@@ -53,6 +63,8 @@ public class StaticSprite
 	public int getHeight() { return this.height; }
 	void setWidth(int width) { this.width = width; }
 	void setHeight(int height) { this.height = height; }
+	public float getMass() { return this.mass; }
+	void setMass(float mass) { this.mass = mass; }
 	public BufferedImage getBufImg() { return this.bufImg; };
 	public void setBufImg(BufferedImage bufImg) { this.bufImg = bufImg; };
 	public boolean getVisible() { return this.visible; }
@@ -62,18 +74,17 @@ public class StaticSprite
 	public Level getExistsOnLevel() { return this.existsOnLevel; }
 	void setExistsOnLevel(Level existsOnLevel) { this.existsOnLevel = existsOnLevel; }
 	public Level[] getCollidesWithLevels() { return this.collidesWithLevels; }
-	void setCollidesWithLevels(Level[] collidesWithLevels) { this.collidesWithLevels = collidesWithLevels; }
+	void setCollidesWithLevels(Level[] collidesWithLevels)
+	{
+		this.collidesWithLevels = collidesWithLevels;
+		this.collidesWithMask = Level.mask(collidesWithLevels);
+	}
+	public int getCollidesWithMask() { return this.collidesWithMask; }
 
 	// constructors
 	StaticSprite() { }
 	StaticSprite(BufferedImage bufImg) { this.bufImg = bufImg; }
 
-	// draw method
-	void draw(Graphics g, ImageObserver imOb)
-	{
-		if (this.visible == true) g.drawImage(this.bufImg, Math.round(this.X) - this.width/2, Math.round(this.Y) - this.height/2, this.width, this.height, imOb);
-	}
-	
 	// collision detection method (stub)
 	boolean collision(StaticSprite otherSprite)
 	{
@@ -0,0 +1,82 @@
+/****************************************************************************
+ * Copyright (c) 2012-2015 Zachary L. Stauber
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS
+ * OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ ****************************************************************************/
+
+package spacewar;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Hands the newest of a stream of values from one writing thread to one
+ * reading thread without either ever waiting on the other.  There are three
+ * slots: the writer fills its back one and publishes it by swapping it with
+ * the middle one, and the reader takes the middle one, when there is a new
+ * one, by swapping it with its front one.  The swaps are a single atomic
+ * exchange of the middle slot's index, which also makes everything written
+ * to a slot before it is published visible to the reader that takes it.
+ * The writer never blocks on a slow reader, it just publishes over frames
+ * that were never taken, and the reader keeps its front slot for as long as
+ * nothing newer comes along.
+ */
+public class TripleBuffer<T>
+{
+	private static final int FRESH = 4; // in middle, set when it holds a slot the reader hasn't taken
+	private static final int SLOT = 3;
+
+	private final Object[] slots;
+	private final AtomicInteger middle = new AtomicInteger(1);
+	private int back = 0; // the writer's
+	private int front = 2; // the reader's
+	private long published, taken;
+
+	public TripleBuffer(T back, T middle, T front)
+	{
+		this.slots = new Object[] {back, middle, front};
+	}
+
+	// accessors
+	public long getPublished() { return this.published; } // on the writer's thread
+	public long getTaken() { return this.taken; } // on the reader's
+
+	// the slot the writer fills
+	@SuppressWarnings("unchecked")
+	public T getBack() { return (T)this.slots[this.back]; }
+
+	// the slot the reader draws from
+	@SuppressWarnings("unchecked")
+	public T getFront() { return (T)this.slots[this.front]; }
+
+	// make the back slot the newest, and take the middle one to fill next
+	public void publish()
+	{
+		back = middle.getAndSet(back | FRESH) & SLOT;
+		published++;
+	}
+
+	// move the newest published slot to the front, if there is one newer than it; true if there was
+	public boolean take()
+	{
+		if ((middle.get() & FRESH) == 0)
+			return false;
+		front = middle.getAndSet(front) & SLOT;
+		taken++;
+		return true;
+	}
+}